@@ -1,15 +1,17 @@
 package GUI;
 
 import backend.Controller;
+import backend.ThumbnailCache;
+import javafx.application.Platform;
 import javafx.beans.property.SimpleStringProperty;
 import javafx.beans.property.StringProperty;
+import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXMLLoader;
 import javafx.fxml.Initializable;
-import javafx.geometry.HPos;
 import javafx.geometry.Insets;
-import javafx.geometry.VPos;
+import javafx.geometry.Pos;
 import javafx.scene.Node;
 import javafx.scene.Parent;
 import javafx.scene.Scene;
@@ -18,10 +20,8 @@ import javafx.scene.control.Button;
 import javafx.scene.control.Label;
 import javafx.scene.control.ScrollPane;
 import javafx.scene.control.TextField;
-import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
 import javafx.scene.input.MouseEvent;
-import javafx.scene.layout.GridPane;
 import javafx.scene.layout.HBox;
 import javafx.scene.layout.VBox;
 import javafx.scene.text.Text;
@@ -31,9 +31,9 @@ import javafx.stage.Stage;
 import java.awt.*;
 import java.io.File;
 import java.io.IOException;
-import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.ResourceBundle;
 
 public class GuiLayout implements Initializable {
@@ -47,11 +47,19 @@ public class GuiLayout implements Initializable {
             deleteButton, revertToPrevButton, sortButton;
     public TextField newTagToList, keyWordEntry;
 
-    private GridPane gridPane = new GridPane();
+    // the grid of pictures is a list of rows of cols pictures each. Only the rows that are visible get
+    // a cell, and the cells are reused for other rows as the list is scrolled, so the number of nodes
+    // and decoded images depends on the size of the window and not the number of pictures
+    private ListView<ArrayList<String>> pictureGrid = new ListView<>();
+    private ObservableList<ArrayList<String>> pictureRows = FXCollections.observableArrayList();
     private int cols = 4;
 
     private ArrayList<String> pictureLocations;
 
+    // the pictures currently shown in the grid pane, so pictures found by the directory search
+    // that are already shown are not added twice
+    private HashSet<String> displayedPictureLocations = new HashSet<>();
+
     static StringProperty dir = new SimpleStringProperty();
     static StringProperty selectedPicturePath = new SimpleStringProperty("");
     private StringProperty bottomLabelText = new SimpleStringProperty();
@@ -59,6 +67,31 @@ public class GuiLayout implements Initializable {
     private String logFileLocation = "./src/serial_files/log.ser";
     private String tagFileLocation = "./src/serial_files/tag.ser";
     private String pictureManagerFileLocation = "./src/serial_files/picMan.ser";
+    private String scanCacheFileLocation = "./src/serial_files/scanCache.ser";
+    private String thumbnailCacheLocation = "./src/serial_files/thumbnails";
+
+    // the width of the pictures in the grid pane, and the most bytes their cached thumbnails may take
+    private static final int THUMBNAIL_WIDTH = 200;
+    private long thumbnailCacheBytes = 256L * 1024 * 1024;
+
+    // downscaled copies of the pictures, so the grid pane does not decode every picture at full size
+    private ThumbnailCache thumbnailCache;
+
+    // loads thumbnails and larger pictures in the background, the visible ones first
+    private ImageLoader imageLoader;
+    private static final int DECODE_THREADS = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+
+    // the number of rows above and below the visible rows whose thumbnails are created ahead of time
+    private static final int OVERSCAN_ROWS = 2;
+
+    // the number of most recent changes shown in the log view
+    private static final int LOG_ENTRIES_SHOWN = 50;
+
+    // the number of existing tags shown for the keyword being typed
+    private static final int TAG_MATCHES_SHOWN = 50;
+
+    // the request loading the larger view of a picture, if it is shown
+    private ImageLoader.Request largeImageRequest;
 
     private Controller controller;
 
@@ -71,6 +104,8 @@ public class GuiLayout implements Initializable {
             this.logFileLocation = "./serial_files/log.ser";
             this.tagFileLocation = "./serial_files/tag.ser";
             this.pictureManagerFileLocation = "./serial_files/picMan.ser";
+            this.scanCacheFileLocation = "./serial_files/scanCache.ser";
+            this.thumbnailCacheLocation = "./serial_files/thumbnails";
         }
 
         extPrefs.add("jpg");
@@ -88,63 +123,127 @@ public class GuiLayout implements Initializable {
         selectedPictureText.textProperty().bind(selectedPicturePath);
         bottomLabel.textProperty().bind(bottomLabelText);
 
+        thumbnailCache = new ThumbnailCache(thumbnailCacheLocation, THUMBNAIL_WIDTH, thumbnailCacheBytes);
+        imageLoader = new ImageLoader(thumbnailCache, THUMBNAIL_WIDTH, DECODE_THREADS);
+        // hovering over the bottom label shows the queue depth and decode latencies of the image loader
+        Tooltip loaderMetrics = new Tooltip();
+        loaderMetrics.setOnShowing(event -> loaderMetrics.setText("Image loader - " + imageLoader.getMetrics()));
+        bottomLabel.setTooltip(loaderMetrics);
+
+        pictureGrid.setItems(pictureRows);
+        pictureGrid.setCellFactory(list -> new PictureRowCell());
+        // every row has the same height, so the list does not have to measure rows to scroll
+        pictureGrid.setFixedCellSize(THUMBNAIL_WIDTH + 20);
+        // the list scrolls by itself, so it fills the scroll pane instead of growing inside of it
+        scrollPane.setFitToHeight(true);
+
         try {
-            controller = new Controller(dir.get(), extPrefs, logFileLocation, tagFileLocation, pictureManagerFileLocation);
+            // pictures are searched for in the background, and each batch found is added to the grid as it arrives.
+            // Pictures copied in or deleted by other programs are shown once they have been applied.
+            controller = new Controller(dir.get(), extPrefs, logFileLocation, tagFileLocation,
+                    pictureManagerFileLocation, scanCacheFileLocation,
+                    dataPaths -> Platform.runLater(() -> addToGridPane(dataPaths)),
+                    () -> Platform.runLater(this::refreshGridPane));
 
         } catch (Exception e) {
             System.out.println("Error");
         }
 
+        // the existing tags matching the keyword are shown as it is typed
+        keyWordEntry.textProperty().addListener((observable, oldKeyword, newKeyword) -> updateExistingTagView());
+
         updateAll();
     }
 
 
     /**
-     * This method displays all photos in the list with picture datapaths
+     * Adds the pictures in dataPaths that are not already shown to the end of the grid.
+     * This method is called with each batch of pictures found by the directory search.
+     *
+     * @param dataPaths data paths of the pictures to add
      */
-    private void createAndSetImageViews() {
-
-        ArrayList<ImageView> imageViews = new ArrayList<>();
-
-        try {
-            for (String location : pictureLocations) {
+    private void addToGridPane(ArrayList<String> dataPaths) {
+        // the grid is replaced by a larger view of a picture, so the new pictures will be
+        // shown when the grid is rebuilt
+        if (scrollPane.getContent() != pictureGrid) {
+            return;
+        }
 
-                imageViews.add(createImageView(location));
+        ArrayList<String> newLocations = new ArrayList<>();
+        for (String location : dataPaths) {
+            if (displayedPictureLocations.add(location)) {
+                newLocations.add(location);
+                pictureLocations.add(location);
+            }
+        }
+        addRows(newLocations);
+    }
 
+    /**
+     * Adds locations to the end of the grid, first filling up the last row
+     *
+     * @param locations data paths of the pictures to add
+     */
+    private void addRows(ArrayList<String> locations) {
+        int next = 0;
+        if (!locations.isEmpty() && !pictureRows.isEmpty()
+                && pictureRows.get(pictureRows.size() - 1).size() < cols) {
+            // replace the last row instead of changing it, so its cell is updated
+            ArrayList<String> lastRow = new ArrayList<>(pictureRows.get(pictureRows.size() - 1));
+            while (lastRow.size() < cols && next < locations.size()) {
+                lastRow.add(locations.get(next));
+                next++;
             }
-        } catch (MalformedURLException e) {
-            System.out.println("Malformed URL exception!");
+            pictureRows.set(pictureRows.size() - 1, lastRow);
         }
+        pictureRows.addAll(splitIntoRows(locations, next));
+    }
 
-        setImagePositionOnGrid(imageViews, cols);
-        addImageViewsOnGrid(imageViews);
+    /**
+     * Splits the locations from index start on into rows of cols locations
+     *
+     * @param locations data paths of pictures
+     * @param start     the index of the first location to put in a row
+     * @return the rows of locations
+     */
+    private ArrayList<ArrayList<String>> splitIntoRows(ArrayList<String> locations, int start) {
+        ArrayList<ArrayList<String>> rows = new ArrayList<>();
+        for (int rowStart = start; rowStart < locations.size(); rowStart += cols) {
+            int rowEnd = Math.min(rowStart + cols, locations.size());
+            rows.add(new ArrayList<>(locations.subList(rowStart, rowEnd)));
+        }
+        return rows;
+    }
 
+    /**
+     * Rebuilds the grid after pictures were created or deleted by another program. Nothing is
+     * done while a larger view of a picture is shown, since the grid is rebuilt when it is closed.
+     */
+    private void refreshGridPane() {
+        if (scrollPane.getContent() == pictureGrid) {
+            updateGridPane();
+        }
     }
 
     /**
-     * Creates and returns and ImageView containing the image at imagePath
+     * Creates and returns an empty ImageView for the grid. Its id is set to the data path of the
+     * picture it shows, and clicking on it selects that picture.
      *
-     * @param imagePath path in which the image is located
-     * @return Returns ImageView containing the image at imagePath
-     * @throws MalformedURLException Throws when a Malformed URL is formed
+     * @return Returns an ImageView for showing a thumbnail in the grid
      */
-    private ImageView createImageView(String imagePath) throws MalformedURLException {
-        File file = new File(imagePath);
-        Image image = new Image(file.toURI().toURL().toExternalForm());
-
+    private ImageView createImageView() {
         ImageView imageView = new ImageView();
-        imageView.setImage(image);
-        imageView.setId(imagePath);
-        imageView.setFitWidth(200);
+        imageView.setFitWidth(THUMBNAIL_WIDTH);
+        imageView.setFitHeight(THUMBNAIL_WIDTH);
         imageView.setPreserveRatio(true);
         // we set this to false, so that we use faster, but lesser quality filtering.
         imageView.setSmooth(false);
 
-        // store the imageView as cache, which may increase performance (but uses more memory)
-        imageView.setCache(true);
-
         // add click event handler
         imageView.addEventHandler(MouseEvent.MOUSE_CLICKED, e -> {
+                    if (imageView.getId() == null) {
+                        return;
+                    }
                     selectedPicturePath.setValue(imageView.getId());
                     imageViewClicked();
                     updateCurrentTagView();
@@ -243,6 +342,10 @@ public class GuiLayout implements Initializable {
         Button returnButton = new Button("Back");
         returnButton.setStyle("-fx-font: 11 system;");
         returnButton.setOnAction(e -> {
+            if (largeImageRequest != null) {
+                largeImageRequest.cancel();
+                largeImageRequest = null;
+            }
             scrollPane.setContent(null);
             bottomButtonHBox.getChildren().remove(0);
             bottomButtonHBox.getChildren().remove(0);
@@ -261,14 +364,11 @@ public class GuiLayout implements Initializable {
     private void replaceGridPaneWithLargeImage() {
         scrollPane.setContent(null);
         ImageView imageView = new ImageView();
-        File file = new File(GuiLayout.selectedPicturePath.get());
-        Image image = null;
-        try {
-            image = new Image(file.toURI().toURL().toExternalForm());
-        } catch (MalformedURLException e) {
-            e.printStackTrace();
-        }
-        imageView.setImage(image);
+        // show the placeholder until the picture is loaded, only keeping it at the size it is shown at
+        imageView.setImage(imageLoader.getPlaceholder());
+        imageView.setPreserveRatio(true);
+        largeImageRequest = imageLoader.loadImage(GuiLayout.selectedPicturePath.get(), 800, 700,
+                imageView::setImage);
 //            imageView.setFitHeight(800);
         imageView.setFitWidth(800);
         imageView.setFitHeight(700);
@@ -277,63 +377,20 @@ public class GuiLayout implements Initializable {
 
 
     /**
-     * Adds the ImageViews inside imageViews into the GridPane
-     *
-     * @param imageViews The ArrayList in which the desired imageViews are located in
-     */
-    private void addImageViewsOnGrid(ArrayList<ImageView> imageViews) {
-        for (ImageView image : imageViews) {
-            gridPane.getChildren().add(image);
-        }
-    }
-
-    /**
-     * Sets the positioning of the imageView on the grid
-     *
-     * @param imageViews The list of ImageView files that we will add
-     * @param maxCols    Max number of columns
-     */
-    private void setImagePositionOnGrid(ArrayList<ImageView> imageViews, int maxCols) {
-        int i = 0;
-        int currentRow = 0;
-        int currentCol = 0;
-        while (i < imageViews.size()) {
-
-            if (currentCol == maxCols) {
-                currentRow++;
-                currentCol = 0;
-            }
-            GridPane.setConstraints(imageViews.get(i), currentCol, currentRow);
-            currentCol++;
-            i++;
-        }
-    }
-
-    /**
-     * Updates the GridPane by clearing the current GridPane and adds pictures that should be viewed onto
-     * the GridPane again.
+     * Updates the grid by replacing its rows with the pictures that should be viewed.
      * <p>
      * This method is useful when the user changes the directory of a picture into a directory that is
      * not under the current directory. This would mean that the picture that was moved, should not be
-     * visible in the current program. Therefore, the GridPane must be updated.
+     * visible in the current program. Therefore, the grid must be updated.
      */
     private void updateGridPane() {
-        gridPane.getChildren().clear();
         // we need pictureLocations to know which pictures to display
         pictureLocations = controller.getPictureDataPaths();
+        displayedPictureLocations = new HashSet<>(pictureLocations);
 
-        createAndSetImageViews();
-
-        for (Node imageView : gridPane.getChildren()) {
-            GridPane.setValignment(imageView, VPos.CENTER);
-            GridPane.setHalignment(imageView, HPos.CENTER);
-        }
-
-        gridPane.setVgap(20);
-        gridPane.setHgap(20);
-        gridPane.setPadding(new Insets(10, 10, 10, 10));
-        gridPane.setOpaqueInsets(new Insets(10, 10, 10, 10));
-        scrollPane.setContent(gridPane);
+        // replace the rows in one change, so the grid keeps its scroll position where it can
+        pictureRows.setAll(splitIntoRows(pictureLocations, 0));
+        scrollPane.setContent(pictureGrid);
     }
 
     /**
@@ -409,13 +466,24 @@ public class GuiLayout implements Initializable {
     }
 
     /**
-     * Updates the existing tag view in the GUI, so that relevant information is displayed.
+     * Updates the existing tag view in the GUI, so that relevant information is displayed. While a keyword
+     * is entered, only the tags starting with it are shown, or the tags closest to it if none do.
      */
     private void updateExistingTagView() {
         existingTagBox.getChildren().clear();
 
-        // get the currently existing tags
-        ArrayList<String> existingTags = controller.getAvailableTags();
+        // get the currently existing tags, or the ones matching the keyword
+        String keyword = keyWordEntry.getText().trim();
+        ArrayList<String> existingTags;
+        if (keyword.isEmpty()) {
+            existingTags = controller.getAvailableTags();
+        } else {
+            existingTags = controller.autocompleteTag(keyword, TAG_MATCHES_SHOWN);
+            if (existingTags.isEmpty()) {
+                // no tag starts with the keyword, so it may be misspelled
+                existingTags = controller.fuzzySearchTags(keyword, TAG_MATCHES_SHOWN);
+            }
+        }
 
         // create and add checkBox button for each tag
         for (String tag : existingTags) {
@@ -639,7 +707,7 @@ public class GuiLayout implements Initializable {
      */
     private void updateLog() {
         logBox.getChildren().clear();
-        ArrayList<String> logs = controller.getLog();
+        ArrayList<String> logs = controller.getRecentLog(LOG_ENTRIES_SHOWN);
         for (String l : logs) {
             Text text = new Text(l);
             logBox.getChildren().add(text);
@@ -647,7 +715,20 @@ public class GuiLayout implements Initializable {
     }
 
     /**
-     * Updates the GridPane (the picture display), the previous name view, current tag view, existing tag view
+     * Prints the metrics of the image loader, then saves every change that is still waiting to be saved
+     * and stops the background threads of the controller. This method is called when the window is closed.
+     */
+    public void close() {
+        if (imageLoader != null) {
+            System.out.println("Image loader - " + imageLoader.getMetrics());
+        }
+        if (controller != null) {
+            controller.close();
+        }
+    }
+
+    /**
+     * Updates the grid (the picture display), the previous name view, current tag view, existing tag view
      * and the log view.
      */
     private void updateAll() {
@@ -678,16 +759,93 @@ public class GuiLayout implements Initializable {
     }
 
     /**
-     * Connects to the controller to sort the list of existing tags
+     * Shows the existing tags that start with the keyword, or the ones closest to it if none do.
+     * The tags are also matched as the keyword is typed, so this only matches them again.
      */
     public void sortExistingTags() {
-        String keyword = keyWordEntry.getText();
-        try {
-            controller.sortTags(keyword);
-        } catch (Exception e) {
-            bottomLabelText.setValue("Unable to access previous list of tags! Something Went Wrong!");
-        }
         updateExistingTagView();
-        keyWordEntry.clear();
+    }
+
+    /**
+     * A row of the grid, showing up to cols thumbnails. The cell and its ImageViews are reused for
+     * other rows as the grid is scrolled; the thumbnails of a row that is scrolled away are cancelled
+     * if they have not been loaded yet. Each cell also has the thumbnails of the rows OVERSCAN_ROWS
+     * above and below it created ahead of time, so they are ready when they are scrolled to.
+     */
+    private class PictureRowCell extends ListCell<ArrayList<String>> {
+
+        // the ImageViews of the row, created once and given the thumbnails of whichever row the cell shows
+        private HBox row = new HBox(20);
+        private ArrayList<ImageView> imageViews = new ArrayList<>();
+
+        // the request loading the thumbnail of each ImageView, and the prefetches made for the row
+        private ArrayList<ImageLoader.Request> requests = new ArrayList<>();
+        private ArrayList<ImageLoader.Request> prefetches = new ArrayList<>();
+
+        private PictureRowCell() {
+            setPadding(Insets.EMPTY);
+            row.setPadding(new Insets(10, 10, 10, 10));
+            row.setAlignment(Pos.CENTER_LEFT);
+            for (int i = 0; i < cols; i++) {
+                ImageView imageView = createImageView();
+                imageViews.add(imageView);
+                requests.add(null);
+                row.getChildren().add(imageView);
+            }
+        }
+
+        @Override
+        protected void updateItem(ArrayList<String> locations, boolean empty) {
+            super.updateItem(locations, empty);
+            boolean changed = false;
+            for (int i = 0; i < cols; i++) {
+                ImageView imageView = imageViews.get(i);
+                String location = (empty || locations == null || i >= locations.size()) ? null : locations.get(i);
+                if (location != null && location.equals(imageView.getId())) {
+                    continue;
+                }
+                changed = true;
+                if (requests.get(i) != null) {
+                    requests.get(i).cancel();
+                    requests.set(i, null);
+                }
+                imageView.setId(location);
+                if (location == null) {
+                    imageView.setImage(null);
+                } else {
+                    imageView.setImage(imageLoader.getPlaceholder());
+                    requests.set(i, imageLoader.loadThumbnail(location, ImageLoader.Priority.VISIBLE,
+                            imageView::setImage));
+                }
+            }
+            if (changed) {
+                prefetchNeighbours(empty ? -1 : getIndex());
+            }
+            setText(null);
+            setGraphic(empty ? null : row);
+        }
+
+        /**
+         * Cancels the prefetches made for the previous row and prefetches the thumbnails of the rows
+         * OVERSCAN_ROWS above and below the row at index
+         *
+         * @param index the index of the row the cell shows, or -1 if it shows none
+         */
+        private void prefetchNeighbours(int index) {
+            for (ImageLoader.Request prefetch : prefetches) {
+                prefetch.cancel();
+            }
+            prefetches.clear();
+            if (index < 0) {
+                return;
+            }
+            for (int neighbour : new int[]{index - OVERSCAN_ROWS, index + OVERSCAN_ROWS}) {
+                if (neighbour >= 0 && neighbour < pictureRows.size()) {
+                    for (String location : pictureRows.get(neighbour)) {
+                        prefetches.add(imageLoader.prefetchThumbnail(location));
+                    }
+                }
+            }
+        }
     }
 }
@@ -0,0 +1,383 @@
+package GUI;
+
+import backend.ThumbnailCache;
+import javafx.application.Platform;
+import javafx.scene.image.Image;
+import javafx.scene.image.PixelWriter;
+import javafx.scene.image.WritableImage;
+import javafx.scene.paint.Color;
+
+import java.io.File;
+import java.net.MalformedURLException;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Loads the images shown by the GUI on a small pool of background threads, so the FX thread never
+ * waits for a picture to be read or decoded.
+ * <p>
+ * Requests are queued by priority: pictures that are visible are loaded before pictures that are only
+ * loaded in case they are scrolled to, and among requests of the same priority the newest is loaded
+ * first, since it is the most likely to still be on screen. A request that is cancelled before it
+ * runs is dropped, and one cancelled while it runs never delivers its image.
+ */
+public class ImageLoader {
+
+    /**
+     * How urgently an image is needed
+     */
+    public enum Priority {
+        /**
+         * The image is on screen
+         */
+        VISIBLE,
+
+        /**
+         * The image is just outside of the screen and may be scrolled to
+         */
+        PREFETCH
+    }
+
+    /**
+     * A light grey tile shown in place of an image that has not been loaded yet
+     */
+    private final Image placeholder;
+
+    /**
+     * The cache that thumbnails are read from and written to
+     */
+    private ThumbnailCache thumbnailCache;
+
+    /**
+     * The width and height in pixels of a thumbnail tile
+     */
+    private int thumbnailWidth;
+
+    /**
+     * The threads that decode images, taking the most urgent request from the queue first
+     */
+    private ThreadPoolExecutor decodePool;
+
+    /**
+     * Numbers the requests so that newer requests of the same priority run first
+     */
+    private AtomicLong nextSequence = new AtomicLong();
+
+    /**
+     * The number of images decoded so far
+     */
+    private AtomicLong numOfDecodes = new AtomicLong();
+
+    /**
+     * The total time in nanoseconds spent decoding images
+     */
+    private AtomicLong totalDecodeNanos = new AtomicLong();
+
+    /**
+     * The longest time in nanoseconds spent decoding one image
+     */
+    private AtomicLong maxDecodeNanos = new AtomicLong();
+
+    /**
+     * The number of requests cancelled before their image was delivered
+     */
+    private AtomicLong numOfCancelled = new AtomicLong();
+
+    /**
+     * Creates an ImageLoader which decodes images on numOfThreads background threads
+     *
+     * @param thumbnailCache the cache that thumbnails are read from and written to
+     * @param thumbnailWidth the width and height in pixels of a thumbnail tile
+     * @param numOfThreads   the number of threads that decode images
+     */
+    public ImageLoader(ThumbnailCache thumbnailCache, int thumbnailWidth, int numOfThreads) {
+        this.thumbnailCache = thumbnailCache;
+        this.thumbnailWidth = thumbnailWidth;
+        this.placeholder = createPlaceholder(thumbnailWidth);
+        AtomicInteger threadNumber = new AtomicInteger();
+        ThreadFactory threadFactory = runnable -> {
+            Thread thread = new Thread(runnable, "image-loader-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        this.decodePool = new ThreadPoolExecutor(numOfThreads, numOfThreads, 0, TimeUnit.MILLISECONDS,
+                new PriorityBlockingQueue<Runnable>(), threadFactory);
+    }
+
+    /**
+     * Loads the thumbnail of the picture at imagePath, creating the thumbnail if it is not cached yet.
+     * onLoaded is called on the FX thread with the thumbnail, unless the request is cancelled first.
+     *
+     * @param imagePath the path of the picture
+     * @param priority  how urgently the thumbnail is needed
+     * @param onLoaded  called on the FX thread with the loaded thumbnail
+     * @return the request, which can be cancelled
+     */
+    public Request loadThumbnail(String imagePath, Priority priority, Consumer<Image> onLoaded) {
+        return this.submit(new Request(priority, () -> {
+            // keep the thumbnail from being deleted by another thread's thumbnail while it is read
+            String thumbnailPath = this.thumbnailCache.acquireThumbnail(imagePath);
+            try {
+                return readImage(new File(thumbnailPath), this.thumbnailWidth, this.thumbnailWidth);
+            } finally {
+                this.thumbnailCache.releaseThumbnail(thumbnailPath);
+            }
+        }, onLoaded));
+    }
+
+    /**
+     * Creates the thumbnail of the picture at imagePath if it is not cached yet, without loading it,
+     * so it is ready when the picture is scrolled to. Runs after every visible request.
+     *
+     * @param imagePath the path of the picture
+     * @return the request, which can be cancelled
+     */
+    public Request prefetchThumbnail(String imagePath) {
+        return this.submit(new Request(Priority.PREFETCH, () -> {
+            this.thumbnailCache.getThumbnail(imagePath);
+            return null;
+        }, null));
+    }
+
+    /**
+     * Loads the picture at imagePath scaled down to fit into width by height pixels.
+     * onLoaded is called on the FX thread with the image, unless the request is cancelled first.
+     *
+     * @param imagePath the path of the picture
+     * @param width     the width in pixels the image must fit into
+     * @param height    the height in pixels the image must fit into
+     * @param onLoaded  called on the FX thread with the loaded image
+     * @return the request, which can be cancelled
+     */
+    public Request loadImage(String imagePath, int width, int height, Consumer<Image> onLoaded) {
+        return this.submit(new Request(Priority.VISIBLE,
+                () -> readImage(new File(imagePath), width, height), onLoaded));
+    }
+
+    /**
+     * Getter for the placeholder instance variable
+     *
+     * @return the tile shown in place of an image that has not been loaded yet
+     */
+    public Image getPlaceholder() {
+        return this.placeholder;
+    }
+
+    /**
+     * Returns the number of requests waiting for a decode thread
+     *
+     * @return the number of queued requests
+     */
+    public int getQueueDepth() {
+        return this.decodePool.getQueue().size();
+    }
+
+    /**
+     * Returns the number of images decoded so far
+     *
+     * @return number of decoded images
+     */
+    public long getNumOfDecodes() {
+        return this.numOfDecodes.get();
+    }
+
+    /**
+     * Returns the average time spent decoding an image
+     *
+     * @return the average decode latency in milliseconds, or 0 if nothing was decoded yet
+     */
+    public double getAverageDecodeMillis() {
+        long decodes = this.numOfDecodes.get();
+        return (decodes == 0) ? 0 : this.totalDecodeNanos.get() / 1e6 / decodes;
+    }
+
+    /**
+     * Returns the longest time spent decoding one image
+     *
+     * @return the largest decode latency in milliseconds
+     */
+    public double getMaxDecodeMillis() {
+        return this.maxDecodeNanos.get() / 1e6;
+    }
+
+    /**
+     * Returns the number of requests cancelled before their image was delivered
+     *
+     * @return number of cancelled requests
+     */
+    public long getNumOfCancelled() {
+        return this.numOfCancelled.get();
+    }
+
+    /**
+     * Returns a one line summary of the metrics of this ImageLoader
+     *
+     * @return the queue depth and decode latencies
+     */
+    public String getMetrics() {
+        return String.format("queued: %d, decoded: %d, cancelled: %d, decode avg: %.1f ms, max: %.1f ms",
+                this.getQueueDepth(), this.getNumOfDecodes(), this.getNumOfCancelled(),
+                this.getAverageDecodeMillis(), this.getMaxDecodeMillis());
+    }
+
+    /**
+     * Queues request on the decode pool
+     *
+     * @param request the request to queue
+     * @return request
+     */
+    private Request submit(Request request) {
+        this.decodePool.execute(request);
+        return request;
+    }
+
+    /**
+     * Reads and decodes the image in file on the calling thread, scaled down to fit into width by height pixels
+     *
+     * @param file   the image file
+     * @param width  the width in pixels the image must fit into
+     * @param height the height in pixels the image must fit into
+     * @return the decoded image
+     * @throws MalformedURLException when the path of file can not be turned into a URL
+     */
+    private static Image readImage(File file, int width, int height) throws MalformedURLException {
+        return new Image(file.toURI().toURL().toExternalForm(), width, height, true, true, false);
+    }
+
+    /**
+     * Creates the tile shown in place of an image that has not been loaded yet
+     *
+     * @param size the width and height of the tile in pixels
+     * @return a light grey square
+     */
+    private static Image createPlaceholder(int size) {
+        WritableImage placeholder = new WritableImage(size, size);
+        PixelWriter writer = placeholder.getPixelWriter();
+        for (int x = 0; x < size; x++) {
+            for (int y = 0; y < size; y++) {
+                writer.setColor(x, y, Color.gray(0.9));
+            }
+        }
+        return placeholder;
+    }
+
+    /**
+     * Decodes an image on a background thread
+     */
+    private interface Decoder {
+
+        /**
+         * Decodes the image
+         *
+         * @return the decoded image
+         * @throws Exception when the image can not be read
+         */
+        Image decode() throws Exception;
+    }
+
+    /**
+     * A request to load one image, run by the decode pool in order of priority
+     */
+    public class Request implements Runnable, Comparable<Request> {
+
+        /**
+         * How urgently the image is needed
+         */
+        private Priority priority;
+
+        /**
+         * The order in which the request was made
+         */
+        private long sequence;
+
+        /**
+         * Decodes the image
+         */
+        private Decoder decoder;
+
+        /**
+         * Called on the FX thread with the decoded image; null if the image is not delivered
+         */
+        private Consumer<Image> onLoaded;
+
+        /**
+         * Whether the request was cancelled
+         */
+        private volatile boolean cancelled = false;
+
+        /**
+         * Whether the image was delivered (or, when it is not delivered, decoded)
+         */
+        private volatile boolean finished = false;
+
+        /**
+         * Creates a new Request
+         *
+         * @param priority how urgently the image is needed
+         * @param decoder  decodes the image
+         * @param onLoaded called on the FX thread with the decoded image; may be null
+         */
+        private Request(Priority priority, Decoder decoder, Consumer<Image> onLoaded) {
+            this.priority = priority;
+            this.sequence = nextSequence.getAndIncrement();
+            this.decoder = decoder;
+            this.onLoaded = onLoaded;
+        }
+
+        /**
+         * Cancels the request. If it has not run yet it is taken off the queue, and if it is running its
+         * image will not be delivered. Does nothing if the request is finished. Must be called on the FX thread.
+         */
+        public void cancel() {
+            if (!this.cancelled && !this.finished) {
+                this.cancelled = true;
+                numOfCancelled.incrementAndGet();
+                decodePool.remove(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            if (this.cancelled) {
+                return;
+            }
+            long start = System.nanoTime();
+            Image image;
+            try {
+                image = this.decoder.decode();
+            } catch (Exception e) {
+                System.out.println("Unable to load image: " + e.getMessage());
+                return;
+            }
+            long decodeNanos = System.nanoTime() - start;
+            numOfDecodes.incrementAndGet();
+            totalDecodeNanos.addAndGet(decodeNanos);
+            maxDecodeNanos.accumulateAndGet(decodeNanos, Math::max);
+
+            if (this.onLoaded == null) {
+                this.finished = true;
+                return;
+            }
+            Platform.runLater(() -> {
+                if (!this.cancelled) {
+                    this.finished = true;
+                    this.onLoaded.accept(image);
+                }
+            });
+        }
+
+        @Override
+        public int compareTo(Request other) {
+            if (this.priority != other.priority) {
+                return this.priority.compareTo(other.priority);
+            }
+            // the newest request first
+            return Long.compare(other.sequence, this.sequence);
+        }
+    }
+}
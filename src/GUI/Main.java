@@ -17,7 +17,11 @@ public class Main extends Application {
     @Override
     public void start(Stage primaryStage) throws Exception {
         GuiLayout.dir = new SimpleStringProperty(getDirFromChooser(primaryStage));
-        Parent root = FXMLLoader.load(getClass().getResource("gui.fxml"));
+        FXMLLoader loader = new FXMLLoader(getClass().getResource("gui.fxml"));
+        Parent root = loader.load();
+        GuiLayout layout = loader.getController();
+        // save the changes still waiting to be saved before the program exits
+        primaryStage.setOnCloseRequest(event -> layout.close());
         primaryStage.setScene(new Scene(root, 1450, 800));
         primaryStage.show();
     }
@@ -0,0 +1,130 @@
+package JUnitTests;
+
+import org.junit.Rule;
+import org.junit.Test;
+import backend.*;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+/**
+ * JUnit test for the Controller class
+ */
+public class ControllerJUnitTest {
+
+    // Used http://junit.org/junit4/javadoc/4.12/org/junit/rules/TemporaryFolder.html to allow the unitTests
+    // to use the serializable files without changing the information contained in it
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Creates a Controller for the pictures directory, which watches it for pictures copied into it
+     */
+    private Controller createController(File pictures) throws ClassNotFoundException, IOException {
+        ArrayList<String> extensions = new ArrayList<>();
+        extensions.add("jpg");
+        File serialFiles = folder.newFolder("serial_files");
+        return new Controller(pictures.getPath(), extensions,
+                new File(serialFiles, "log.ser").getPath(), new File(serialFiles, "tag.ser").getPath(),
+                new File(serialFiles, "picMan.ser").getPath(), null, null, () -> {
+                });
+    }
+
+    /**
+     * Waits until the Controller has a Picture at dataPath, which the watcher adds on its own thread
+     */
+    private void waitForPicture(Controller controller, String dataPath) throws InterruptedException {
+        ArrayList<String> dataPaths = new ArrayList<>();
+        dataPaths.add(dataPath);
+        // adding no tags changes nothing, but says whether there is a Picture at dataPath
+        for (int i = 0; i < 100; i++) {
+            BatchReport report = controller.addTagsToPictures(dataPaths, new ArrayList<String>());
+            if (report.getItems().get(0).getStatus() != BatchReport.Status.NOT_FOUND) {
+                return;
+            }
+            Thread.sleep(100);
+        }
+        fail("No picture was added at " + dataPath);
+    }
+
+    @Test
+    public void onlyPicturesWithEveryTagOfInterestAreShown() throws ClassNotFoundException, IOException {
+        File pictures = folder.newFolder("pictures");
+        File bothFile = new File(pictures, "Both.jpg");
+        File crayonsFile = new File(pictures, "Crayons.jpg");
+        File untaggedFile = new File(pictures, "Untagged.jpg");
+        bothFile.createNewFile();
+        crayonsFile.createNewFile();
+        untaggedFile.createNewFile();
+        Controller controller = createController(pictures);
+        try {
+            String bothPath = controller.addTagToPicture(bothFile.getPath(), "@Crayons")[1];
+            bothPath = controller.addTagToPicture(bothPath, "@Tree")[1];
+            String crayonsPath = controller.addTagToPicture(crayonsFile.getPath(), "@Crayons")[1];
+
+            ArrayList<String> tagsOfInterest = new ArrayList<>();
+            tagsOfInterest.add("@Crayons");
+            controller.hidePicturesWithoutTag(tagsOfInterest);
+            assertEquals(2, controller.getPictureDataPaths().size());
+            assertTrue(controller.getPictureDataPaths().contains(bothPath));
+            assertTrue(controller.getPictureDataPaths().contains(crayonsPath));
+
+            tagsOfInterest.add("@Tree");
+            controller.hidePicturesWithoutTag(tagsOfInterest);
+            assertEquals(Arrays.asList(bothPath), controller.getPictureDataPaths());
+
+            // a tag no Picture has hides every Picture, and showing them again brings all of them back
+            tagsOfInterest.clear();
+            tagsOfInterest.add("@Sky");
+            controller.hidePicturesWithoutTag(tagsOfInterest);
+            assertTrue(controller.getPictureDataPaths().isEmpty());
+            controller.showHiddenPictures();
+            assertEquals(3, controller.getPictureDataPaths().size());
+        } finally {
+            controller.close();
+        }
+    }
+
+    @Test
+    public void picturesCopiedInAreHiddenByActiveFilters() throws Exception {
+        File pictures = folder.newFolder("pictures");
+        File tempFile = new File(pictures, "Picture.jpg");
+        tempFile.createNewFile();
+        File subFolder = new File(pictures, "sub");
+        subFolder.mkdir();
+        Controller controller = createController(pictures);
+        try {
+            String taggedPath = controller.addTagToPicture(tempFile.getPath(), "@Crayons")[1];
+            ArrayList<String> tagsOfInterest = new ArrayList<>();
+            tagsOfInterest.add("@Crayons");
+            controller.hidePicturesWithoutTag(tagsOfInterest);
+
+            File untaggedFile = new File(pictures, "Untagged.jpg");
+            untaggedFile.createNewFile();
+            waitForPicture(controller, untaggedFile.getPath());
+            assertEquals(Arrays.asList(taggedPath), controller.getPictureDataPaths());
+            controller.showHiddenPictures();
+            assertEquals(2, controller.getPictureDataPaths().size());
+
+            controller.hideSubdirectoryPictures();
+            File subPicture = new File(subFolder, "Sub.jpg");
+            subPicture.createNewFile();
+            File directPicture = new File(pictures, "Direct.jpg");
+            directPicture.createNewFile();
+            waitForPicture(controller, subPicture.getPath());
+            waitForPicture(controller, directPicture.getPath());
+            assertFalse(controller.getPictureDataPaths().contains(subPicture.getPath()));
+            assertTrue(controller.getPictureDataPaths().contains(directPicture.getPath()));
+            assertEquals(3, controller.getPictureDataPaths().size());
+            controller.showHiddenPictures();
+            assertEquals(4, controller.getPictureDataPaths().size());
+        } finally {
+            controller.close();
+        }
+    }
+}
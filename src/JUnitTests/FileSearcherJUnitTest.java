@@ -0,0 +1,151 @@
+package JUnitTests;
+
+import org.junit.Rule;
+import org.junit.Test;
+import backend.*;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+/**
+ * JUnit test for the FileSearcher class
+ */
+public class FileSearcherJUnitTest {
+
+    // Used http://junit.org/junit4/javadoc/4.12/org/junit/rules/TemporaryFolder.html to allow the unitTests
+    // to use the serializable files without changing the information contained in it
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Creates a tree of nested directories under root holding pictures and other files, with one
+     * directory that can not be read, and returns the picture types searched for
+     */
+    private ArrayList<String> createTree(File root) throws IOException {
+        for (int i = 0; i < 6; i++) {
+            File directory = new File(root, "dir" + i);
+            for (int depth = 0; depth < 4; depth++) {
+                directory = new File(directory, "sub" + depth);
+                directory.mkdirs();
+                new File(directory, "Picture" + i + depth + ".jpg").createNewFile();
+                new File(directory, "Picture" + i + depth + ".PNG").createNewFile();
+                new File(directory, "Notes" + i + depth + ".txt").createNewFile();
+                new File(directory, "NoExtension" + i + depth).createNewFile();
+            }
+        }
+        new File(root, "Top.jpg").createNewFile();
+        new File(root, "empty").mkdir();
+        File unreadable = new File(root, "unreadable");
+        unreadable.mkdir();
+        new File(unreadable, "Hidden.jpg").createNewFile();
+        unreadable.setReadable(false);
+        unreadable.setExecutable(false);
+        ArrayList<String> imageFileTypes = new ArrayList<>();
+        imageFileTypes.add("jpg");
+        imageFileTypes.add("PNG");
+        return imageFileTypes;
+    }
+
+    @Test
+    public void parallelSearchFindsTheSamePicturesAsAOneAtATimeSearch() throws IOException {
+        File root = folder.newFolder("root");
+        ArrayList<String> imageFileTypes = createTree(root);
+        try {
+            HashSet<String> oneAtATime = new HashSet<>(new FileSearcher(imageFileTypes, 1).getFileNames(root.getPath()));
+            ArrayList<String> parallel = new FileSearcher(imageFileTypes, 4).getFileNames(root.getPath());
+            HashSet<String> streamed = new FileSearcher(imageFileTypes, 1).streamFileNames(root.getPath())
+                    .collect(Collectors.toCollection(HashSet::new));
+
+            // 6 directories 4 deep with 2 pictures each, and the picture at the top
+            assertTrue(oneAtATime.size() >= 49);
+            assertEquals(oneAtATime.size(), parallel.size());
+            assertEquals(oneAtATime, new HashSet<>(parallel));
+            assertEquals(oneAtATime, streamed);
+        } finally {
+            new File(root, "unreadable").setReadable(true);
+            new File(root, "unreadable").setExecutable(true);
+        }
+    }
+
+    @Test
+    public void parallelStreamFindsTheSamePicturesAsAOneAtATimeStream() throws IOException {
+        File root = folder.newFolder("root");
+        ArrayList<String> imageFileTypes = createTree(root);
+        // more directories with pictures than the Stream holds, so the pool has to wait for it
+        for (int i = 0; i < 300; i++) {
+            File directory = new File(root, "wide" + File.separator + "dir" + i);
+            directory.mkdirs();
+            new File(directory, "Wide" + i + ".jpg").createNewFile();
+        }
+        try {
+            ArrayList<String> oneAtATime = new FileSearcher(imageFileTypes, 1).streamFileNames(root.getPath())
+                    .collect(Collectors.toCollection(ArrayList::new));
+            ArrayList<String> parallel = new FileSearcher(imageFileTypes, 4).streamFileNames(root.getPath())
+                    .collect(Collectors.toCollection(ArrayList::new));
+
+            assertTrue(oneAtATime.size() >= 349);
+            assertEquals(oneAtATime.size(), parallel.size());
+            assertEquals(new HashSet<>(oneAtATime), new HashSet<>(parallel));
+            assertEquals(new HashSet<>(oneAtATime),
+                    new HashSet<>(new FileSearcher(imageFileTypes, 4).getFileNames(root.getPath())));
+        } finally {
+            new File(root, "unreadable").setReadable(true);
+            new File(root, "unreadable").setExecutable(true);
+        }
+    }
+
+    @Test
+    public void closingAParallelStreamStopsItsSearch() throws IOException {
+        File root = folder.newFolder("root");
+        for (int i = 0; i < 600; i++) {
+            File directory = new File(root, "dir" + i);
+            directory.mkdir();
+            new File(directory, "Picture" + i + ".jpg").createNewFile();
+        }
+        ArrayList<String> imageFileTypes = new ArrayList<>();
+        imageFileTypes.add("jpg");
+        FileSearcher fileSearcher = new FileSearcher(imageFileTypes, 2);
+
+        // the threads searching fill the queue and wait, until the Stream is closed
+        try (Stream<String> streamed = fileSearcher.streamFileNames(root.getPath())) {
+            assertTrue(streamed.iterator().hasNext());
+        }
+        // which frees them to search again
+        assertEquals(600, fileSearcher.getFileNames(root.getPath()).size());
+    }
+
+    @Test
+    public void overlappingSearchesKeepEachOthersCachedListings() throws IOException {
+        File root = folder.newFolder("root");
+        new File(root, "a").mkdir();
+        new File(root, "b").mkdir();
+        new File(root, "a" + File.separator + "A.jpg").createNewFile();
+        new File(root, "b" + File.separator + "B.jpg").createNewFile();
+        File other = folder.newFolder("other");
+        new File(other, "Other.jpg").createNewFile();
+        ArrayList<String> imageFileTypes = new ArrayList<>();
+        imageFileTypes.add("jpg");
+        FileSearcher fileSearcher = new FileSearcher(imageFileTypes);
+        ScanCache scanCache = new ScanCache(folder.newFile("ScanCache.ser").getPath(),
+                PersistenceScheduler.IMMEDIATE);
+        fileSearcher.setScanCache(scanCache);
+
+        // a search started by a watched directory finishes while a streamed search is half way through
+        Iterator<String> streamed = fileSearcher.streamFileNames(root.getPath()).iterator();
+        streamed.next();
+        assertEquals(1, fileSearcher.getFileNames(other.getPath()).size());
+        streamed.next();
+        assertFalse(streamed.hasNext());
+
+        // root, a, b and other are all still cached
+        assertEquals(4, scanCache.size());
+    }
+}
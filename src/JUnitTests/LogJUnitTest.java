@@ -0,0 +1,227 @@
+package JUnitTests;
+
+import org.junit.Rule;
+import org.junit.Test;
+import backend.*;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.sql.Timestamp;
+
+import static org.junit.Assert.*;
+
+/**
+ * JUnit test for the Log class and the SegmentedLogFile its changes are kept in
+ */
+public class LogJUnitTest {
+
+    // Used http://junit.org/junit4/javadoc/4.12/org/junit/rules/TemporaryFolder.html to allow the unitTests
+    // to use the serializable files without changing the information contained in it
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Returns a record of the given size whose bytes all hold value
+     */
+    private static byte[] record(int size, int value) {
+        byte[] record = new byte[size];
+        Arrays.fill(record, (byte) value);
+        return record;
+    }
+
+    /**
+     * Appends the given lengths to the newest segment in directory, as if the program stopped while
+     * writing a record
+     */
+    private static void appendLengths(File directory, int... lengths) throws IOException {
+        File[] segments = directory.listFiles((dir, name) -> name.endsWith(".log"));
+        Arrays.sort(segments);
+        try (DataOutputStream output = new DataOutputStream(
+                new FileOutputStream(segments[segments.length - 1], true))) {
+            for (int length : lengths) {
+                output.writeInt(length);
+            }
+            output.write(new byte[]{1, 2, 3});
+        }
+    }
+
+    @Test
+    public void segmentsAreCompressedOnceFull() throws IOException {
+        File directory = folder.newFolder("log.ser.segments");
+        SegmentedLogFile segments = new SegmentedLogFile(directory.getPath());
+        segments.setMaxSegmentBytes(100);
+        for (int i = 0; i < 10; i++) {
+            segments.append(Collections.singletonList(record(30, i)));
+        }
+
+        assertTrue(segments.getNumOfSegments() > 1);
+        assertTrue(new File(directory, "00000000.log.gz").exists());
+        ArrayList<byte[]> records = new SegmentedLogFile(directory.getPath()).readRecords();
+        assertEquals(10, records.size());
+        for (int i = 0; i < 10; i++) {
+            assertArrayEquals(record(30, i), records.get(i));
+        }
+    }
+
+    @Test
+    public void tornRecordIsCutOffTheActiveSegment() throws IOException {
+        File directory = folder.newFolder("log.ser.segments");
+        SegmentedLogFile segments = new SegmentedLogFile(directory.getPath());
+        segments.append(Collections.singletonList(record(10, 1)));
+        segments.append(Collections.singletonList(record(10, 2)));
+        appendLengths(directory, 1000);
+
+        SegmentedLogFile reopened = new SegmentedLogFile(directory.getPath());
+        assertEquals(2, reopened.readRecords().size());
+        reopened.append(Collections.singletonList(record(10, 3)));
+        ArrayList<byte[]> records = new SegmentedLogFile(directory.getPath()).readRecords();
+        assertEquals(3, records.size());
+        assertArrayEquals(record(10, 3), records.get(2));
+    }
+
+    @Test
+    public void damagedLengthIsTreatedAsTheEndOfTheSegment() throws IOException {
+        File directory = folder.newFolder("log.ser.segments");
+        SegmentedLogFile segments = new SegmentedLogFile(directory.getPath());
+        segments.append(Collections.singletonList(record(10, 1)));
+        appendLengths(directory, -5);
+        assertEquals(1, new SegmentedLogFile(directory.getPath()).readRecords().size());
+
+        appendLengths(directory, Integer.MAX_VALUE);
+        assertEquals(1, segments.readRecords().size());
+        // compressed as it is, so the length is only found once the compressed segment is read
+        segments.rotate();
+        assertTrue(new File(directory, "00000000.log.gz").exists());
+        assertEquals(1, new SegmentedLogFile(directory.getPath()).readRecords().size());
+    }
+
+    @Test
+    public void serFileIsMovedIntoSegments() throws ClassNotFoundException, IOException {
+        File serFile = folder.newFile("log.ser");
+        ArrayList<String> texts = new ArrayList<>();
+        texts.add("Added tag(s): Cat.jpg ---> Cat @Pet.jpg 2018-03-01 12:00:00.0");
+        texts.add("Cat @Pet.jpg -> Kitten @Pet.jpg 2018-03-02 08:30:00.0");
+        SerializableOperator.saveFile(serFile.getPath(), texts);
+
+        Log log = new Log(serFile.getPath());
+        assertEquals(texts, log.getLogList());
+        assertFalse(serFile.exists());
+        assertTrue(new File(serFile.getPath() + ".segments").isDirectory());
+
+        Log reopened = new Log(serFile.getPath());
+        assertEquals(texts, reopened.getLogList());
+    }
+
+    /**
+     * Returns the sequence of each entry in entries
+     */
+    private static ArrayList<Long> sequences(ArrayList<LogEntry> entries) {
+        ArrayList<Long> sequences = new ArrayList<>();
+        for (LogEntry entry : entries) {
+            sequences.add(entry.getSequence());
+        }
+        return sequences;
+    }
+
+    @Test
+    public void everyTextFormOfAnEarlierVersionIsParsed() throws ClassNotFoundException, IOException {
+        File serFile = folder.newFile("log.ser");
+        ArrayList<String> texts = new ArrayList<>();
+        texts.add("Added tag(s): Cat.jpg ---> Cat @Pet.jpg 2018-03-01 12:00:00.0");
+        texts.add("Removed tag(s): Cat @Pet.jpg ---> Cat.jpg 2018-03-01 12:05:00.0");
+        texts.add("Name of picture reverted: Cat.jpg ---> Cat @Pet.jpg 2018-03-01 12:10:00.123");
+        texts.add("Cat @Pet.jpg -> Kitten @Pet.jpg 2018-03-02 08:30:00.0");
+        texts.add("something else entirely");
+        SerializableOperator.saveFile(serFile.getPath(), texts);
+
+        ArrayList<LogEntry> entries = new Log(serFile.getPath()).getLatestEntries(10, Long.MAX_VALUE);
+        Collections.reverse(entries);
+        LogEntry.Operation[] operations = {LogEntry.Operation.ADDED_TAGS, LogEntry.Operation.REMOVED_TAGS,
+                LogEntry.Operation.REVERTED_NAME, LogEntry.Operation.RENAMED, LogEntry.Operation.OTHER};
+        assertEquals(5, entries.size());
+        for (int i = 0; i < operations.length; i++) {
+            assertEquals(operations[i], entries.get(i).getOperation());
+            assertEquals(texts.get(i), entries.get(i).toString());
+        }
+        assertEquals("Cat.jpg", entries.get(0).getOldName());
+        assertEquals("Cat @Pet.jpg", entries.get(0).getNewName());
+        assertEquals(Timestamp.valueOf("2018-03-01 12:00:00").getTime(), entries.get(0).getTimeMillis());
+        assertEquals(Timestamp.valueOf("2018-03-01 12:10:00.123").getTime(), entries.get(2).getTimeMillis());
+        assertEquals("Kitten @Pet.jpg", entries.get(3).getNewName());
+    }
+
+    @Test
+    public void entriesAreTheSameAfterReopening() throws ClassNotFoundException, IOException {
+        String serPath = folder.getRoot().getPath() + File.separator + "log.ser";
+        String dataPath = folder.getRoot().getPath() + File.separator + "Cat.jpg";
+        Log log = new Log(serPath);
+        log.logAddedTag(dataPath, "Cat @Pet.jpg");
+        log.logRemovedTag(dataPath, "Cat.jpg");
+        log.logChangedName(dataPath, "Kitten.jpg");
+        log.addChange("Kitten.jpg", "Cat.jpg");
+
+        ArrayList<LogEntry> written = log.getLatestEntries(10, Long.MAX_VALUE);
+        ArrayList<LogEntry> read = new Log(serPath).getLatestEntries(10, Long.MAX_VALUE);
+        assertEquals(4, read.size());
+        for (int i = 0; i < written.size(); i++) {
+            assertEquals(written.get(i).getSequence(), read.get(i).getSequence());
+            assertEquals(written.get(i).getTimeMillis(), read.get(i).getTimeMillis());
+            assertEquals(written.get(i).getOperation(), read.get(i).getOperation());
+            assertEquals(written.get(i).getDataPath(), read.get(i).getDataPath());
+            assertEquals(written.get(i).getOldName(), read.get(i).getOldName());
+            assertEquals(written.get(i).getNewName(), read.get(i).getNewName());
+        }
+    }
+
+    @Test
+    public void pagesOfEntriesMadeAtTheSameTimeDoNotRepeat() throws ClassNotFoundException, IOException {
+        Log log = new Log(folder.getRoot().getPath() + File.separator + "log.ser");
+        ArrayList<String> dataPaths = new ArrayList<>();
+        ArrayList<String> newNames = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            dataPaths.add(folder.getRoot().getPath() + File.separator + "Picture" + i + ".jpg");
+            newNames.add("Picture" + i + " @Tree.jpg");
+        }
+        // every entry of a batch has the same time
+        log.logAddedTags(dataPaths, newNames);
+
+        ArrayList<Long> seen = new ArrayList<>();
+        long after = -1;
+        while (true) {
+            ArrayList<LogEntry> page = log.getEntriesBetween(0, Long.MAX_VALUE, 2, after);
+            if (page.isEmpty()) {
+                break;
+            }
+            assertTrue(page.size() <= 2);
+            seen.addAll(sequences(page));
+            after = page.get(page.size() - 1).getSequence();
+        }
+        assertEquals(Arrays.asList(0L, 1L, 2L, 3L, 4L), seen);
+    }
+
+    @Test
+    public void historyFollowsTheNamesAPictureHadBefore() throws ClassNotFoundException, IOException {
+        Log log = new Log(folder.getRoot().getPath() + File.separator + "log.ser");
+        String directory = folder.getRoot().getPath() + File.separator;
+        log.logAddedTag(directory + "Cat.jpg", "Cat @Pet.jpg");
+        log.logAddedTag(directory + "Dog.jpg", "Dog @Pet.jpg");
+        log.logAddedTag(directory + "Cat @Pet.jpg", "Cat @Pet @Home.jpg");
+        log.logChangedName(directory + "Cat @Pet @Home.jpg", "Cat.jpg");
+
+        assertEquals(Arrays.asList(3L, 2L, 0L), sequences(log.getHistory(directory + "Cat.jpg", 10,
+                Long.MAX_VALUE)));
+        // the second page carries on from the name the Picture had before the last entry returned
+        ArrayList<LogEntry> firstPage = log.getHistory(directory + "Cat.jpg", 2, Long.MAX_VALUE);
+        assertEquals(Arrays.asList(3L, 2L), sequences(firstPage));
+        assertEquals(Arrays.asList(0L), sequences(log.getHistory(directory + "Cat.jpg", 2,
+                firstPage.get(1).getSequence())));
+        assertEquals(Arrays.asList(1L), sequences(log.getHistory(directory + "Dog @Pet.jpg", 10,
+                Long.MAX_VALUE)));
+    }
+}
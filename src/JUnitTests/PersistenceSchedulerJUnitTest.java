@@ -0,0 +1,71 @@
+package JUnitTests;
+
+import org.junit.Test;
+import backend.*;
+
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * JUnit test for the PersistenceScheduler class
+ */
+public class PersistenceSchedulerJUnitTest {
+
+    @Test
+    public void immediateSchedulerWritesOnTheCallersThread() {
+        ArrayList<Thread> writers = new ArrayList<>();
+        PersistenceScheduler.IMMEDIATE.markDirty("picMan.ser", () -> writers.add(Thread.currentThread()));
+
+        assertEquals(1, writers.size());
+        assertEquals(Thread.currentThread(), writers.get(0));
+        assertEquals(0, PersistenceScheduler.IMMEDIATE.getNumOfPendingWrites());
+    }
+
+    @Test
+    public void writesToTheSameFileAreCoalesced() {
+        PersistenceScheduler scheduler = new PersistenceScheduler(60000, false);
+        ArrayList<String> writes = new ArrayList<>();
+        scheduler.markDirty("picMan.ser", () -> writes.add("picMan 1"));
+        scheduler.markDirty("tag.ser", () -> writes.add("tag 1"));
+        scheduler.markDirty("picMan.ser", () -> writes.add("picMan 2"));
+        scheduler.markDirty("picMan.ser", () -> writes.add("picMan 3"));
+
+        assertTrue(writes.isEmpty());
+        assertEquals(2, scheduler.getNumOfPendingWrites());
+        scheduler.flush();
+
+        // only the latest write of each file runs, in the order the files were first marked dirty
+        ArrayList<String> expected = new ArrayList<>();
+        expected.add("picMan 3");
+        expected.add("tag 1");
+        assertEquals(expected, writes);
+        assertEquals(0, scheduler.getNumOfPendingWrites());
+        scheduler.close();
+    }
+
+    @Test
+    public void pendingWritesRunWithinMaxStaleness() throws InterruptedException {
+        PersistenceScheduler scheduler = new PersistenceScheduler(50, false);
+        CountDownLatch written = new CountDownLatch(1);
+        scheduler.markDirty("picMan.ser", written::countDown);
+
+        assertTrue(written.await(5, TimeUnit.SECONDS));
+        scheduler.close();
+    }
+
+    @Test
+    public void closeFlushesPendingWritesAndLaterWritesRunStraightAway() {
+        PersistenceScheduler scheduler = new PersistenceScheduler(60000, false);
+        ArrayList<String> writes = new ArrayList<>();
+        scheduler.markDirty("picMan.ser", () -> writes.add("before close"));
+        scheduler.close();
+        assertEquals(1, writes.size());
+
+        scheduler.markDirty("picMan.ser", () -> writes.add("after close"));
+        assertEquals(2, writes.size());
+        assertEquals(0, scheduler.getNumOfPendingWrites());
+    }
+}
@@ -151,4 +151,18 @@ public class PictureJUnitTest {
 
         assertEquals("@Crayons", picture.getName());
     }
+
+    @Test
+    public void checkingAttachedTags() throws ClassNotFoundException, IOException {
+        File tempFile = folder.newFile("Picture.jpg");
+        Picture picture = new Picture(tempFile.getPath());
+        picture.addNewAttachedTag("@Crayons");
+        picture.addNewAttachedTag("@Tag");
+        picture.removeAttachedTag("@Crayons");
+
+        assertTrue(picture.hasTag("@Tag"));
+        assertFalse(picture.hasTag("@Crayons"));
+        assertFalse(picture.hasTag("@NeverAttachedToAnyPicture"));
+        assertEquals(1, picture.getNumOfAttachedTags());
+    }
 }
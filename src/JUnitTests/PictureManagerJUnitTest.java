@@ -0,0 +1,537 @@
+package JUnitTests;
+
+import org.junit.Rule;
+import org.junit.Test;
+import backend.*;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.ArrayList;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * JUnit test for the PictureManager class
+ * NOTE: all the test will return "Cannot read from input." This is because of how the backend works and
+ * has nothing to do with the test. It may be ignored.
+ */
+public class PictureManagerJUnitTest {
+
+    // Used http://junit.org/junit4/javadoc/4.12/org/junit/rules/TemporaryFolder.html to allow the unitTests
+    // to use the serializable files without changing the information contained in it
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Creates a PictureManager viewing the root of the temporary folder which contains
+     * the pictures at the given data paths
+     */
+    private PictureManager createPictureManager(ArrayList<String> dataPaths)
+            throws ClassNotFoundException, IOException {
+        File serFile = folder.newFile("picMan.ser");
+        return new PictureManager(folder.getRoot().getPath(), dataPaths, serFile.getPath());
+    }
+
+    @Test
+    public void lookUpPictureByDataPath() throws ClassNotFoundException, IOException {
+        File tempFile = folder.newFile("Picture.jpg");
+        ArrayList<String> dataPaths = new ArrayList<>();
+        dataPaths.add(tempFile.getPath());
+        PictureManager pictureManager = createPictureManager(dataPaths);
+
+        assertEquals(tempFile.getPath(), pictureManager.getPictureAtDataPath(tempFile.getPath()).getDataPath());
+        assertNull(pictureManager.getPictureAtDataPath(tempFile.getPath() + "x"));
+    }
+
+    @Test
+    public void lookUpPictureAfterAddingTag() throws ClassNotFoundException, IOException {
+        File tempFile = folder.newFile("Picture.jpg");
+        ArrayList<String> dataPaths = new ArrayList<>();
+        dataPaths.add(tempFile.getPath());
+        PictureManager pictureManager = createPictureManager(dataPaths);
+
+        String newDataPath = pictureManager.addTagToPicture(tempFile.getPath(), "@Crayons");
+
+        assertNull(pictureManager.getPictureAtDataPath(tempFile.getPath()));
+        assertEquals("Picture @Crayons.jpg", pictureManager.getPictureAtDataPath(newDataPath).getName());
+        assertTrue(new File(newDataPath).exists());
+    }
+
+    @Test
+    public void addingTagThatCollidesWithAnotherPicture() throws ClassNotFoundException, IOException {
+        File tempFile = folder.newFile("Picture.jpg");
+        File tempFile2 = folder.newFile("Picture @Crayons.jpg");
+        ArrayList<String> dataPaths = new ArrayList<>();
+        dataPaths.add(tempFile.getPath());
+        dataPaths.add(tempFile2.getPath());
+        PictureManager pictureManager = createPictureManager(dataPaths);
+
+        assertEquals("", pictureManager.addTagToPicture(tempFile.getPath(), "@Crayons"));
+        assertNotNull(pictureManager.getPictureAtDataPath(tempFile.getPath()));
+    }
+
+    @Test
+    public void lookUpPictureAfterMovingIt() throws ClassNotFoundException, IOException {
+        File tempFile = folder.newFile("Picture.jpg");
+        File subFolder = folder.newFolder("sub");
+        ArrayList<String> dataPaths = new ArrayList<>();
+        dataPaths.add(tempFile.getPath());
+        PictureManager pictureManager = createPictureManager(dataPaths);
+        Picture picture = pictureManager.getPictureAtDataPath(tempFile.getPath());
+
+        pictureManager.changeDirectoryOfPicture(picture, subFolder.getPath());
+
+        String newDataPath = subFolder.getPath() + File.separator + "Picture.jpg";
+        assertNull(pictureManager.getPictureAtDataPath(tempFile.getPath()));
+        assertEquals(picture, pictureManager.getPictureAtDataPath(newDataPath));
+        assertEquals(0, pictureManager.getPicturesInDirectory(folder.getRoot().getPath()).size());
+        assertEquals(1, pictureManager.getPicturesInDirectory(subFolder.getPath()).size());
+    }
+
+    @Test
+    public void updatingAllPicturesDoesNotDuplicate() throws ClassNotFoundException, IOException {
+        File tempFile = folder.newFile("Picture.jpg");
+        ArrayList<String> dataPaths = new ArrayList<>();
+        dataPaths.add(tempFile.getPath());
+        PictureManager pictureManager = createPictureManager(dataPaths);
+
+        pictureManager.updateAllPictures(dataPaths);
+
+        assertEquals(1, pictureManager.getAllPictures().size());
+        assertEquals(1, pictureManager.getPicturesInDirectory(folder.getRoot().getPath()).size());
+    }
+
+    @Test
+    public void changesAreRestoredFromJournal() throws ClassNotFoundException, IOException {
+        File tempFile = folder.newFile("Picture.jpg");
+        ArrayList<String> dataPaths = new ArrayList<>();
+        dataPaths.add(tempFile.getPath());
+        PictureManager pictureManager = createPictureManager(dataPaths);
+        String newDataPath = pictureManager.addTagToPicture(tempFile.getPath(), "@Crayons");
+
+        String serPath = folder.getRoot().getPath() + File.separator + "picMan.ser";
+        PictureManager reopened = new PictureManager(folder.getRoot().getPath(), new ArrayList<String>(), serPath);
+
+        Picture picture = reopened.getPictureAtDataPath(newDataPath);
+        ArrayList<String> actualTags = new ArrayList<>();
+        actualTags.add("@Crayons");
+        assertEquals(actualTags, picture.getAttachedTags());
+        assertEquals("Picture.jpg", picture.getOriginalName());
+        assertEquals(1, reopened.getAllPictures().size());
+    }
+
+    @Test
+    public void journalAlreadyInCheckpointIsReplayedOnce() throws ClassNotFoundException, IOException {
+        File tempFile = folder.newFile("Picture.jpg");
+        ArrayList<String> dataPaths = new ArrayList<>();
+        dataPaths.add(tempFile.getPath());
+        PictureManager pictureManager = createPictureManager(dataPaths);
+        String newDataPath = pictureManager.addTagToPicture(tempFile.getPath(), "@Crayons");
+
+        // stop after the checkpoint is written but before the journal is cleared
+        File journalFile = new File(folder.getRoot(), "picMan.ser.journal");
+        byte[] journal = Files.readAllBytes(journalFile.toPath());
+        pictureManager.checkpoint();
+        Files.write(journalFile.toPath(), journal);
+
+        String serPath = folder.getRoot().getPath() + File.separator + "picMan.ser";
+        PictureManager reopened = new PictureManager(folder.getRoot().getPath(), new ArrayList<String>(), serPath);
+        assertEquals(1, reopened.getAllPictures().size());
+        assertEquals("Picture.jpg", reopened.getPictureAtDataPath(newDataPath).getOriginalName());
+    }
+
+    @Test
+    public void tornJournalTailIsCutOff() throws IOException {
+        File journalFile = new File(folder.getRoot(), "picMan.ser.journal");
+        PictureJournal journal = new PictureJournal(journalFile.getPath());
+        Picture picture = new Picture(new File(folder.getRoot(), "Picture.jpg").getPath());
+        journal.append(picture.getDataPath(), picture);
+        long completeLength = journalFile.length();
+
+        // a record whose writing was cut short after the first bytes of its length
+        Files.write(journalFile.toPath(), new byte[]{0, 0}, StandardOpenOption.APPEND);
+        assertEquals(1, journal.readRecords().size());
+        assertEquals(completeLength, journalFile.length());
+
+        // records appended after the torn one can be read back
+        journal.append(picture.getDataPath(), picture);
+        assertEquals(2, journal.readRecords().size());
+    }
+
+    @Test
+    public void serializedFileIsMigratedToPictureStore() throws ClassNotFoundException, IOException {
+        File tempFile = folder.newFile("Picture @Crayons.jpg");
+        Picture oldPicture = new Picture(tempFile.getPath(), "Picture.jpg");
+        oldPicture.addNewAttachedTag("@Crayons");
+        oldPicture.addNewPrevFileName("Picture.jpg");
+        ArrayList<Picture> oldPictures = new ArrayList<>();
+        oldPictures.add(oldPicture);
+        String serPath = folder.getRoot().getPath() + File.separator + "picMan.ser";
+        SerializableOperator.saveFile(serPath, oldPictures);
+
+        // the first PictureManager reads the .ser file and rewrites it as a picture store
+        new PictureManager(folder.getRoot().getPath(), new ArrayList<String>(), serPath);
+        PictureManager reopened = new PictureManager(folder.getRoot().getPath(), new ArrayList<String>(), serPath);
+
+        Picture picture = reopened.getPictureAtDataPath(tempFile.getPath());
+        ArrayList<String> actualTags = new ArrayList<>();
+        actualTags.add("@Crayons");
+        assertEquals(actualTags, picture.getAttachedTags());
+        assertEquals("Picture.jpg", picture.getOriginalName());
+        assertEquals(oldPicture.getPrevFileNames(), picture.getPrevFileNames());
+        assertEquals(1, reopened.getAllPictures().size());
+    }
+
+    @Test
+    public void watchedChangesAreAppliedAndJournaled() throws Exception {
+        File tempFile = folder.newFile("Picture.jpg");
+        ArrayList<String> dataPaths = new ArrayList<>();
+        dataPaths.add(tempFile.getPath());
+        PictureManager pictureManager = createPictureManager(dataPaths);
+        ArrayList<String> extensions = new ArrayList<>();
+        extensions.add("jpg");
+        DirectoryWatcher watcher = new DirectoryWatcher(pictureManager, new FileSearcher(extensions), null);
+        watcher.watch(folder.getRoot().getPath());
+
+        File copiedFile = folder.newFile("Copied.jpg");
+        assertTrue(tempFile.delete());
+        // the watcher applies the changes on its own thread, so wait for them
+        for (int i = 0; i < 100 && pictureManager.getPictureAtDataPath(copiedFile.getPath()) == null; i++) {
+            Thread.sleep(100);
+        }
+        for (int i = 0; i < 100 && pictureManager.getPictureAtDataPath(tempFile.getPath()) != null; i++) {
+            Thread.sleep(100);
+        }
+        watcher.close();
+
+        assertNotNull(pictureManager.getPictureAtDataPath(copiedFile.getPath()));
+        assertNull(pictureManager.getPictureAtDataPath(tempFile.getPath()));
+        String serPath = folder.getRoot().getPath() + File.separator + "picMan.ser";
+        PictureManager reopened = new PictureManager(folder.getRoot().getPath(), new ArrayList<String>(), serPath);
+        assertEquals(1, reopened.getAllPictures().size());
+        assertEquals(copiedFile.getPath(), reopened.getAllPictures().get(0).getDataPath());
+    }
+
+    @Test
+    public void picturesFoundByASearchAreAddedInBatches() throws ClassNotFoundException, IOException {
+        ArrayList<String> dataPaths = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            dataPaths.add(folder.newFile("Picture" + i + ".jpg").getPath());
+        }
+        PictureManager pictureManager = createPictureManager(new ArrayList<String>(dataPaths.subList(0, 1)));
+
+        ArrayList<Integer> batchSizes = new ArrayList<>();
+        pictureManager.updateAllPictures(dataPaths.iterator(), 2, batch -> batchSizes.add(batch.size()));
+
+        // the first batch holds one Picture that was already added, and no batch is called for twice
+        assertEquals(Arrays.asList(1, 2, 1), batchSizes);
+        assertEquals(5, pictureManager.getAllPictures().size());
+        assertEquals(dataPaths, pictureManager.getDirectoryPictureDataPaths());
+    }
+
+    @Test
+    public void changingViewingDirectoryShowsOnlyItsPictures() throws ClassNotFoundException, IOException {
+        File subFolder = folder.newFolder("sub");
+        File siblingFolder = folder.newFolder("subling");
+        File deepFolder = folder.newFolder("sub", "deep");
+        ArrayList<String> dataPaths = new ArrayList<>();
+        dataPaths.add(folder.newFile("Root.jpg").getPath());
+        dataPaths.add(new File(subFolder, "Sub.jpg").getPath());
+        dataPaths.add(new File(siblingFolder, "Sibling.jpg").getPath());
+        dataPaths.add(new File(deepFolder, "Deep.jpg").getPath());
+        PictureManager pictureManager = createPictureManager(dataPaths);
+
+        pictureManager.setViewingDir(subFolder.getPath());
+        pictureManager.updateDirectoryPictures();
+
+        ArrayList<String> expected = new ArrayList<>();
+        expected.add(new File(subFolder, "Sub.jpg").getPath());
+        expected.add(new File(deepFolder, "Deep.jpg").getPath());
+        assertEquals(expected, pictureManager.getDirectoryPictureDataPaths());
+        assertEquals(4, pictureManager.getAllPictures().size());
+    }
+
+    @Test
+    public void lazyPictureManagerReadsDirectoriesWhenNeeded() throws ClassNotFoundException, IOException {
+        File subFolder = folder.newFolder("sub");
+        File otherFolder = folder.newFolder("other");
+        ArrayList<String> dataPaths = new ArrayList<>();
+        new File(subFolder, "Sub.jpg").createNewFile();
+        new File(otherFolder, "Other.jpg").createNewFile();
+        dataPaths.add(new File(subFolder, "Sub.jpg").getPath());
+        dataPaths.add(new File(otherFolder, "Other.jpg").getPath());
+        PictureManager pictureManager = createPictureManager(dataPaths);
+        pictureManager.addTagToPicture(new File(otherFolder, "Other.jpg").getPath(), "@Crayons");
+        pictureManager.checkpoint();
+
+        String serPath = folder.getRoot().getPath() + File.separator + "picMan.ser";
+        PictureManager reopened = new PictureManager(subFolder.getPath(), new ArrayList<String>(), serPath,
+                PersistenceScheduler.IMMEDIATE, true);
+        ArrayList<String> expected = new ArrayList<>();
+        expected.add(new File(subFolder, "Sub.jpg").getPath());
+        assertEquals(expected, reopened.getDirectoryPictureDataPaths());
+
+        // a Picture outside of the viewing directory is read once it is looked up
+        Picture other = reopened.getPictureAtDataPath(new File(otherFolder, "Other @Crayons.jpg").getPath());
+        assertEquals("Other.jpg", other.getOriginalName());
+        reopened.checkpoint();
+        PictureManager reopenedAgain = new PictureManager(subFolder.getPath(), new ArrayList<String>(), serPath);
+        assertEquals(2, reopenedAgain.getAllPictures().size());
+    }
+
+    @Test
+    public void damagedStoreFileIsMovedAside() throws ClassNotFoundException, IOException {
+        File tempFile = folder.newFile("Picture.jpg");
+        ArrayList<String> dataPaths = new ArrayList<>();
+        dataPaths.add(tempFile.getPath());
+        PictureManager pictureManager = createPictureManager(dataPaths);
+        pictureManager.addTagToPicture(tempFile.getPath(), "@Crayons");
+        pictureManager.checkpoint();
+
+        // cut the store file short, as a disk error would
+        File serFile = new File(folder.getRoot(), "picMan.ser");
+        byte[] contents = Files.readAllBytes(serFile.toPath());
+        byte[] damaged = Arrays.copyOf(contents, contents.length / 2);
+        Files.write(serFile.toPath(), damaged);
+
+        PictureManager reopened = new PictureManager(folder.getRoot().getPath(), new ArrayList<String>(),
+                serFile.getPath());
+        assertEquals(0, reopened.getAllPictures().size());
+        File corruptFile = new File(folder.getRoot(), "picMan.ser.corrupt");
+        assertArrayEquals(damaged, Files.readAllBytes(corruptFile.toPath()));
+    }
+
+    @Test
+    public void failedCheckpointKeepsTheJournal() throws ClassNotFoundException, IOException {
+        File tempFile = folder.newFile("Picture.jpg");
+        ArrayList<String> dataPaths = new ArrayList<>();
+        dataPaths.add(tempFile.getPath());
+        PictureManager pictureManager = createPictureManager(dataPaths);
+        pictureManager.addTagToPicture(tempFile.getPath(), "@Crayons");
+
+        // a directory that is not empty can not be replaced by the new store file
+        File serFile = new File(folder.getRoot(), "picMan.ser");
+        serFile.delete();
+        serFile.mkdir();
+        new File(serFile, "blocker").createNewFile();
+        File journalFile = new File(folder.getRoot(), "picMan.ser.journal");
+        long journalLength = journalFile.length();
+
+        assertFalse(pictureManager.checkpoint());
+        assertTrue(journalLength > 0);
+        assertEquals(journalLength, journalFile.length());
+    }
+
+    @Test
+    public void countTagsInDirectories() throws ClassNotFoundException, IOException {
+        File tempFile = folder.newFile("Picture.jpg");
+        File subFolder = folder.newFolder("sub");
+        File tempFile2 = new File(subFolder, "Other.jpg");
+        tempFile2.createNewFile();
+        ArrayList<String> dataPaths = new ArrayList<>();
+        dataPaths.add(tempFile.getPath());
+        dataPaths.add(tempFile2.getPath());
+        PictureManager pictureManager = createPictureManager(dataPaths);
+
+        String newDataPath = pictureManager.addTagToPicture(tempFile.getPath(), "@Crayons");
+        pictureManager.addTagToPicture(newDataPath, "@Tree");
+        newDataPath = pictureManager.addTagToPicture(tempFile2.getPath(), "@Tree");
+        newDataPath = pictureManager.addTagToPicture(newDataPath, "@Deer");
+        newDataPath = pictureManager.addTagToPicture(newDataPath, "@Seal");
+        pictureManager.removeTagFromPicture(newDataPath, "@Seal");
+
+        ArrayList<String> actualTags = new ArrayList<>();
+        actualTags.add("@Tree");
+        actualTags.add("@Crayons");
+        actualTags.add("@Deer");
+
+        assertEquals(actualTags, pictureManager.getMostUsedTags("", 5));
+        assertEquals(actualTags.subList(0, 1), pictureManager.getMostUsedTags("", 1));
+        assertEquals(2, pictureManager.getTagCount(folder.getRoot().getPath(), "@Tree"));
+        assertEquals(1, pictureManager.getTagCount(subFolder.getPath(), "@Tree"));
+        assertEquals(0, pictureManager.getTagCount(subFolder.getPath(), "@Crayons"));
+    }
+
+    @Test
+    public void tagsAreNotAddedOverAFileThatIsNotAPicture() throws ClassNotFoundException, IOException {
+        File tempFile = folder.newFile("Picture.jpg");
+        ArrayList<String> dataPaths = new ArrayList<>();
+        dataPaths.add(tempFile.getPath());
+        PictureManager pictureManager = createPictureManager(dataPaths);
+        // a file the PictureManager does not know of, ie/ one made after the last search
+        File unknownFile = folder.newFile("Picture @Crayons.jpg");
+        Files.write(unknownFile.toPath(), new byte[]{1, 2, 3});
+
+        ArrayList<String> tags = new ArrayList<>();
+        tags.add("@Crayons");
+        BatchReport report = pictureManager.addTagsToPictures(dataPaths, tags);
+
+        assertEquals(BatchReport.Status.NAME_TAKEN, report.getItems().get(0).getStatus());
+        assertTrue(tempFile.exists());
+        assertEquals(3, unknownFile.length());
+        assertEquals(0, pictureManager.getPictureAtDataPath(tempFile.getPath()).getAttachedTags().size());
+    }
+
+    @Test
+    public void addTagsToManyPictures() throws ClassNotFoundException, IOException {
+        File tempFile = folder.newFile("Picture.jpg");
+        File tempFile2 = folder.newFile("Other.jpg");
+        File tempFile3 = folder.newFile("Taken.jpg");
+        File tempFile4 = folder.newFile("Taken @Crayons @Tree.jpg");
+        ArrayList<String> dataPaths = new ArrayList<>();
+        dataPaths.add(tempFile.getPath());
+        dataPaths.add(tempFile2.getPath());
+        dataPaths.add(tempFile3.getPath());
+        dataPaths.add(tempFile4.getPath());
+        PictureManager pictureManager = createPictureManager(dataPaths);
+        dataPaths.remove(tempFile4.getPath());
+        dataPaths.add(tempFile.getPath() + "x");
+
+        ArrayList<String> tags = new ArrayList<>();
+        tags.add("@Crayons");
+        tags.add("@Tree");
+        BatchReport report = pictureManager.addTagsToPictures(dataPaths, tags);
+
+        assertEquals(BatchReport.Status.CHANGED, report.getItems().get(0).getStatus());
+        assertEquals(BatchReport.Status.CHANGED, report.getItems().get(1).getStatus());
+        assertEquals(BatchReport.Status.NAME_TAKEN, report.getItems().get(2).getStatus());
+        assertEquals(BatchReport.Status.NOT_FOUND, report.getItems().get(3).getStatus());
+        String newDataPath = report.getItems().get(0).getNewDataPath();
+        assertEquals("Picture @Crayons @Tree.jpg", pictureManager.getPictureAtDataPath(newDataPath).getName());
+        assertEquals(tags, pictureManager.getPictureAtDataPath(newDataPath).getAttachedTags());
+        assertEquals(1, pictureManager.getPictureAtDataPath(newDataPath).getPrevFileNames().size());
+        assertTrue(new File(newDataPath).exists());
+        assertTrue(tempFile3.exists());
+
+        ArrayList<String> newDataPaths = new ArrayList<>();
+        newDataPaths.add(newDataPath);
+        tags.remove("@Tree");
+        report = pictureManager.removeTagsFromPictures(newDataPaths, tags);
+        newDataPath = report.getItems().get(0).getNewDataPath();
+        assertEquals("Picture @Tree.jpg", pictureManager.getPictureAtDataPath(newDataPath).getName());
+    }
+
+    @Test
+    public void renamesCutShortAreRecoveredOnStartup() throws ClassNotFoundException, IOException {
+        File tempFile = folder.newFile("Picture.jpg");
+        File tempFile2 = folder.newFile("Other.jpg");
+        ArrayList<String> dataPaths = new ArrayList<>();
+        dataPaths.add(tempFile.getPath());
+        dataPaths.add(tempFile2.getPath());
+        PictureManager pictureManager = createPictureManager(dataPaths);
+        String taggedPath = pictureManager.addTagToPicture(tempFile2.getPath(), "@Crayons");
+
+        // a batch renamed both files, but only the change to Other.jpg was saved before the program stopped
+        String serPath = folder.getRoot().getPath() + File.separator + "picMan.ser";
+        String movedPath = folder.getRoot().getPath() + File.separator + "Picture @Tree.jpg";
+        ArrayList<String> oldPaths = new ArrayList<>();
+        oldPaths.add(tempFile.getPath());
+        oldPaths.add(tempFile2.getPath());
+        ArrayList<String> newPaths = new ArrayList<>();
+        newPaths.add(movedPath);
+        newPaths.add(taggedPath);
+        new RenameJournal(serPath + ".renames").begin(oldPaths, newPaths);
+        assertTrue(RenameJournal.move(tempFile.getPath(), movedPath));
+        assertTrue(new File(taggedPath).renameTo(tempFile2));
+
+        PictureManager reopened = new PictureManager(folder.getRoot().getPath(), new ArrayList<String>(), serPath);
+        assertTrue(tempFile.exists());
+        assertFalse(new File(movedPath).exists());
+        assertTrue(new File(taggedPath).exists());
+        assertNotNull(reopened.getPictureAtDataPath(tempFile.getPath()));
+        assertNotNull(reopened.getPictureAtDataPath(taggedPath));
+    }
+
+    @Test
+    public void copyLeftByAnInterruptedMoveIsDeletedOnStartup() throws ClassNotFoundException, IOException {
+        File tempFile = folder.newFile("Picture.jpg");
+        Files.write(tempFile.toPath(), new byte[]{1, 2, 3});
+        File subFolder = folder.newFolder("sub");
+        ArrayList<String> dataPaths = new ArrayList<>();
+        dataPaths.add(tempFile.getPath());
+        createPictureManager(dataPaths);
+
+        // a move to another file system put its copy in place, but stopped before deleting the original
+        String serPath = folder.getRoot().getPath() + File.separator + "picMan.ser";
+        File copy = new File(subFolder, "Picture.jpg");
+        ArrayList<String> oldPaths = new ArrayList<>();
+        oldPaths.add(tempFile.getPath());
+        ArrayList<String> newPaths = new ArrayList<>();
+        newPaths.add(copy.getPath());
+        new RenameJournal(serPath + ".renames").begin(oldPaths, newPaths);
+        Files.copy(tempFile.toPath(), copy.toPath());
+
+        PictureManager reopened = new PictureManager(folder.getRoot().getPath(), new ArrayList<String>(), serPath);
+        assertTrue(tempFile.exists());
+        assertFalse(copy.exists());
+        assertNotNull(reopened.getPictureAtDataPath(tempFile.getPath()));
+    }
+
+    @Test
+    public void renameJournalIsKeptUntilTheRenameIsSaved() throws ClassNotFoundException, IOException {
+        File tempFile = folder.newFile("Picture.jpg");
+        ArrayList<String> dataPaths = new ArrayList<>();
+        dataPaths.add(tempFile.getPath());
+        File serFile = folder.newFile("picMan.ser");
+        PersistenceScheduler scheduler = new PersistenceScheduler(60000, false);
+        PictureManager pictureManager = new PictureManager(folder.getRoot().getPath(), dataPaths,
+                serFile.getPath(), scheduler);
+        scheduler.flush();
+
+        // a journal that can not be written to
+        File journalFile = new File(folder.getRoot(), "picMan.ser.journal");
+        journalFile.delete();
+        journalFile.mkdir();
+        new File(journalFile, "blocker").createNewFile();
+        String newDataPath = pictureManager.addTagToPicture(tempFile.getPath(), "@Crayons");
+
+        assertTrue(new File(newDataPath).exists());
+        assertTrue(new File(folder.getRoot(), "picMan.ser.renames").exists());
+        // the checkpoint saves the rename instead, and only then clears the rename journal
+        scheduler.close();
+        assertFalse(new File(folder.getRoot(), "picMan.ser.renames").exists());
+    }
+
+    @Test
+    public void pictureIsUnchangedWhenItsFileCanNotBeRenamed() throws ClassNotFoundException, IOException {
+        File tempFile = folder.newFile("Picture.jpg");
+        ArrayList<String> dataPaths = new ArrayList<>();
+        dataPaths.add(tempFile.getPath());
+        PictureManager pictureManager = createPictureManager(dataPaths);
+        tempFile.delete();
+
+        assertEquals("", pictureManager.addTagToPicture(tempFile.getPath(), "@Crayons"));
+        assertEquals(0, pictureManager.getPictureAtDataPath(tempFile.getPath()).getAttachedTags().size());
+    }
+
+    @Test
+    public void moveManyPicturesIntoDirectory() throws ClassNotFoundException, IOException {
+        File tempFile = folder.newFile("Picture.jpg");
+        File tempFile2 = folder.newFile("Other.jpg");
+        File subFolder = folder.newFolder("sub");
+        new File(subFolder, "Other.jpg").createNewFile();
+        ArrayList<String> dataPaths = new ArrayList<>();
+        dataPaths.add(tempFile.getPath());
+        dataPaths.add(tempFile2.getPath());
+        PictureManager pictureManager = createPictureManager(dataPaths);
+
+        ArrayList<Integer> progress = new ArrayList<>();
+        BatchReport report = pictureManager.movePictures(dataPaths, subFolder.getPath(),
+                (done, total) -> progress.add(done));
+
+        String newDataPath = subFolder.getPath() + File.separator + "Picture.jpg";
+        assertEquals(BatchReport.Status.CHANGED, report.getItems().get(0).getStatus());
+        assertEquals(newDataPath, report.getItems().get(0).getNewDataPath());
+        assertEquals(BatchReport.Status.NAME_TAKEN, report.getItems().get(1).getStatus());
+        assertTrue(new File(newDataPath).exists());
+        assertFalse(tempFile.exists());
+        assertTrue(tempFile2.exists());
+        assertNotNull(pictureManager.getPictureAtDataPath(newDataPath));
+        assertEquals(1, pictureManager.getPicturesInDirectory(folder.getRoot().getPath()).size());
+        assertEquals(1, progress.size());
+    }
+}
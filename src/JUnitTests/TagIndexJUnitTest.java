@@ -0,0 +1,132 @@
+package JUnitTests;
+
+import org.junit.Test;
+import backend.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+
+import static org.junit.Assert.*;
+
+/**
+ * JUnit test for the TagIndex class
+ */
+public class TagIndexJUnitTest {
+
+    /**
+     * Returns a Picture with the given tags attached
+     */
+    private Picture createPicture(String name, String... tags) {
+        Picture picture = new Picture("pictures/" + name);
+        for (String tag : tags) {
+            picture.addNewAttachedTag(tag);
+        }
+        return picture;
+    }
+
+    @Test
+    public void picturesWithAllTagsAreFound() {
+        TagIndex tagIndex = new TagIndex();
+        Picture both = createPicture("Both.jpg", "@Crayons", "@Tree");
+        Picture crayons = createPicture("Crayons.jpg", "@Crayons");
+        Picture none = createPicture("None.jpg");
+        tagIndex.addPicture(both);
+        tagIndex.addPicture(crayons);
+        tagIndex.addPicture(none);
+
+        BitSet expected = new BitSet();
+        expected.set(tagIndex.getOrdinal(both));
+        expected.set(tagIndex.getOrdinal(crayons));
+        assertEquals(expected, tagIndex.getPicturesWithAllTags(Arrays.asList("@Crayons")));
+        expected.clear(tagIndex.getOrdinal(crayons));
+        assertEquals(expected, tagIndex.getPicturesWithAllTags(Arrays.asList("@Crayons", "@Tree")));
+        assertTrue(tagIndex.getPicturesWithAllTags(Arrays.asList("@Crayons", "@Sky")).isEmpty());
+        assertTrue(tagIndex.getPicturesWithAllTags(new ArrayList<String>()).isEmpty());
+    }
+
+    @Test
+    public void resultCanBeChangedWithoutChangingTheIndex() {
+        TagIndex tagIndex = new TagIndex();
+        Picture picture = createPicture("Picture.jpg", "@Crayons");
+        tagIndex.addPicture(picture);
+
+        tagIndex.getPicturesWithAllTags(Arrays.asList("@Crayons")).clear();
+        assertTrue(tagIndex.getPicturesWithAllTags(Arrays.asList("@Crayons")).get(tagIndex.getOrdinal(picture)));
+    }
+
+    @Test
+    public void removedPictureKeepsItsOrdinalUntilAddedAgain() {
+        TagIndex tagIndex = new TagIndex();
+        Picture picture = createPicture("Picture.jpg", "@Crayons");
+        tagIndex.addPicture(picture);
+        int ordinal = tagIndex.getOrdinal(picture);
+
+        // a rename removes the Picture, changes its tags and adds it again
+        tagIndex.removePicture(picture);
+        assertTrue(tagIndex.getPicturesWithAllTags(Arrays.asList("@Crayons")).isEmpty());
+        picture.removeAttachedTag("@Crayons");
+        picture.addNewAttachedTag("@Tree");
+        tagIndex.addPicture(picture);
+
+        assertEquals(ordinal, tagIndex.getOrdinal(picture));
+        assertTrue(tagIndex.getPicturesWithAllTags(Arrays.asList("@Crayons")).isEmpty());
+        assertTrue(tagIndex.getPicturesWithAllTags(Arrays.asList("@Tree")).get(ordinal));
+    }
+
+    @Test
+    public void forgottenPictureGivesItsOrdinalToTheNextPicture() {
+        TagIndex tagIndex = new TagIndex();
+        Picture first = createPicture("First.jpg", "@Crayons");
+        Picture second = createPicture("Second.jpg", "@Tree");
+        tagIndex.addPicture(first);
+        tagIndex.addPicture(second);
+        int ordinal = tagIndex.getOrdinal(first);
+
+        tagIndex.forgetPicture(first);
+        assertTrue(tagIndex.getPicturesWithAllTags(Arrays.asList("@Crayons")).isEmpty());
+        Picture third = createPicture("Third.jpg", "@Tree");
+        tagIndex.addPicture(third);
+
+        assertEquals(ordinal, tagIndex.getOrdinal(third));
+        assertEquals(2, tagIndex.getPicturesWithAllTags(Arrays.asList("@Tree")).cardinality());
+        // forgetting a Picture twice does not free its ordinal twice
+        tagIndex.forgetPicture(first);
+        assertNotEquals(tagIndex.getOrdinal(third), tagIndex.getOrdinal(createPicture("Fourth.jpg")));
+    }
+
+    @Test
+    public void commonAndRareTagsAreIntersectedAsTheyGrowAndShrink() {
+        TagIndex tagIndex = new TagIndex();
+        ArrayList<Picture> pictures = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            Picture picture = (i % 2 == 0) ? createPicture(i + ".jpg", "@Common") : createPicture(i + ".jpg");
+            pictures.add(picture);
+            tagIndex.addPicture(picture);
+        }
+        Picture rare = pictures.get(4998);
+        tagIndex.removePicture(rare);
+        rare.addNewAttachedTag("@Rare");
+        tagIndex.addPicture(rare);
+
+        assertEquals(2500, tagIndex.getPicturesWithAllTags(Arrays.asList("@Common")).cardinality());
+        BitSet expected = new BitSet();
+        expected.set(tagIndex.getOrdinal(rare));
+        assertEquals(expected, tagIndex.getPicturesWithAllTags(Arrays.asList("@Common", "@Rare")));
+        assertEquals(expected, tagIndex.getPicturesWithAllTags(Arrays.asList("@Rare", "@Common")));
+
+        // untag all but a few of the common Pictures, so the tag is rare again
+        for (int i = 0; i < 4990; i += 2) {
+            tagIndex.removePicture(pictures.get(i));
+            pictures.get(i).removeAttachedTag("@Common");
+            tagIndex.addPicture(pictures.get(i));
+        }
+        BitSet common = tagIndex.getPicturesWithAllTags(Arrays.asList("@Common"));
+        assertEquals(5, common.cardinality());
+        for (int i = 4990; i < 5000; i += 2) {
+            assertTrue(common.get(tagIndex.getOrdinal(pictures.get(i))));
+        }
+        assertEquals(expected, tagIndex.getPicturesWithAllTags(Arrays.asList("@Common", "@Rare")));
+        assertTrue(tagIndex.getPicturesWithAllTags(Arrays.asList("@Common", "@Rare", "@Sky")).isEmpty());
+    }
+}
@@ -200,4 +200,55 @@ public class TagJUnitTest {
 
         assertEquals(tag.getTags(), actualTagList);
     }
+
+    @Test
+    public void autocompleteTagsByPrefix() throws ClassNotFoundException, IOException {
+        File tempFile = folder.newFile("tag.ser");
+        Tag tag = new Tag(tempFile.getPath()); // dummy files
+        tag.addTag("@Tiger");
+        tag.addTag("@tree");
+        tag.addTag("@Deer");
+        tag.addTag("@Trees");
+        tag.removeTag("@tree");
+
+        ArrayList<String> actualTagList = new ArrayList<>();
+        actualTagList.add("@Tiger");
+        actualTagList.add("@Trees");
+
+        assertEquals(actualTagList, tag.autocomplete("t", 5));
+        assertEquals(actualTagList.subList(0, 1), tag.autocomplete("@T", 1));
+        assertEquals(new ArrayList<String>(), tag.autocomplete("@x", 5));
+    }
+
+    @Test
+    public void fuzzySearchFindsMisspelledTags() throws ClassNotFoundException, IOException {
+        File tempFile = folder.newFile("tag.ser");
+        Tag tag = new Tag(tempFile.getPath()); // dummy files
+        tag.addTag("@Tiger");
+        tag.addTag("@Tree");
+        tag.addTag("@Deer");
+        tag.addTag("@Trees");
+        tag.removeTag("@Tree");
+
+        ArrayList<String> actualTagList = new ArrayList<>();
+        actualTagList.add("@Trees");
+
+        assertEquals("@Tiger", tag.fuzzySearch("@tigre", 1).get(0));
+        assertEquals(actualTagList, tag.fuzzySearch("tree", 2));
+    }
+
+    @Test
+    public void fuzzySearchKeepsTheClosestOfManyEquallySharedTags() throws ClassNotFoundException, IOException {
+        File tempFile = folder.newFile("tag.ser");
+        Tag tag = new Tag(tempFile.getPath());
+        // more tags than are ranked by edit distance share the same trigrams with the query
+        for (int i = 0; i < 2000; i++) {
+            tag.addTag("@Sunset_at_the_beach_" + i);
+        }
+        tag.addTag("@Sunsetx");
+
+        ArrayList<String> closest = tag.fuzzySearch("@Sunset", 1);
+        assertEquals(1, closest.size());
+        assertEquals("@Sunsetx", closest.get(0));
+    }
 }
@@ -0,0 +1,170 @@
+package JUnitTests;
+
+import org.junit.Rule;
+import org.junit.Test;
+import backend.*;
+import org.junit.rules.TemporaryFolder;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * JUnit test for the ThumbnailCache class
+ */
+public class ThumbnailCacheJUnitTest {
+
+    // Used http://junit.org/junit4/javadoc/4.12/org/junit/rules/TemporaryFolder.html to allow the unitTests
+    // to use the serializable files without changing the information contained in it
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Writes a width by height picture to a new file called name
+     */
+    private File newPicture(String name, int width, int height) throws IOException {
+        File picture = folder.newFile(name);
+        ImageIO.write(new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB), "jpg", picture);
+        return picture;
+    }
+
+    @Test
+    public void thumbnailIsScaledDownAndReused() throws IOException {
+        File picture = newPicture("Picture.jpg", 400, 200);
+        ThumbnailCache thumbnailCache = new ThumbnailCache(folder.newFolder("thumbnails").getPath(), 100,
+                1024 * 1024);
+
+        String thumbnailPath = thumbnailCache.getThumbnail(picture.getPath());
+        assertNotEquals(picture.getPath(), thumbnailPath);
+        BufferedImage thumbnail = ImageIO.read(new File(thumbnailPath));
+        assertEquals(100, thumbnail.getWidth());
+        assertEquals(50, thumbnail.getHeight());
+        assertEquals(thumbnailPath, thumbnailCache.getThumbnail(picture.getPath()));
+        assertEquals(1, thumbnailCache.size());
+    }
+
+    @Test
+    public void usingAThumbnailDoesNotWriteToIt() throws IOException {
+        File picture = newPicture("Picture.jpg", 400, 200);
+        ThumbnailCache thumbnailCache = new ThumbnailCache(folder.newFolder("thumbnails").getPath(), 100,
+                1024 * 1024);
+        File thumbnail = new File(thumbnailCache.getThumbnail(picture.getPath()));
+        thumbnail.setLastModified(1000);
+
+        thumbnailCache.getThumbnail(picture.getPath());
+        assertEquals(1000, thumbnail.lastModified());
+    }
+
+    @Test
+    public void leastRecentlyUsedThumbnailIsDeletedFirst() throws IOException {
+        File first = newPicture("First.jpg", 400, 200);
+        File second = newPicture("Second.jpg", 400, 200);
+        File third = newPicture("Third.jpg", 400, 200);
+        String directory = folder.newFolder("thumbnails").getPath();
+        ThumbnailCache measuring = new ThumbnailCache(directory, 100, Long.MAX_VALUE);
+        measuring.getThumbnail(first.getPath());
+        long thumbnailBytes = measuring.getCacheBytes();
+
+        // room for two thumbnails, so the third one pushes out whichever was used least recently
+        ThumbnailCache thumbnailCache = new ThumbnailCache(directory, 100, 2 * thumbnailBytes + thumbnailBytes / 2);
+        File firstThumbnail = new File(thumbnailCache.getThumbnail(first.getPath()));
+        File secondThumbnail = new File(thumbnailCache.getThumbnail(second.getPath()));
+        thumbnailCache.getThumbnail(first.getPath());
+        File thirdThumbnail = new File(thumbnailCache.getThumbnail(third.getPath()));
+
+        assertEquals(2, thumbnailCache.size());
+        assertTrue(firstThumbnail.exists());
+        assertFalse(secondThumbnail.exists());
+        assertTrue(thirdThumbnail.exists());
+    }
+
+    @Test
+    public void thumbnailsAreNotFoundAsPictures() throws IOException {
+        File picture = newPicture("Picture.jpg", 400, 200);
+        File directory = new File(folder.getRoot(), "serial_files" + File.separator + "thumbnails");
+        ThumbnailCache thumbnailCache = new ThumbnailCache(directory.getPath(), 100, 1024 * 1024);
+        thumbnailCache.getThumbnail(picture.getPath());
+        ArrayList<String> imageFileTypes = new ArrayList<>();
+        imageFileTypes.add("jpg");
+        FileSearcher fileSearcher = new FileSearcher(imageFileTypes);
+
+        ArrayList<String> fileNames = fileSearcher.getFileNames(folder.getRoot().getPath());
+        assertEquals(1, fileNames.size());
+        assertEquals(picture.getPath(), fileNames.get(0));
+        assertEquals(1, fileSearcher.streamFileNames(folder.getRoot().getPath()).count());
+    }
+
+    @Test
+    public void thumbnailCreatedByManyThreadsAtOnceIsNeverReadHalfWritten() throws Exception {
+        String directory = folder.newFolder("thumbnails").getPath();
+        for (int round = 0; round < 10; round++) {
+            File picture = newPicture("Picture" + round + ".jpg", 1600, 1200);
+            ThumbnailCache thumbnailCache = new ThumbnailCache(directory, 100, 1024 * 1024);
+            CountDownLatch start = new CountDownLatch(1);
+            AtomicInteger badReads = new AtomicInteger();
+            ArrayList<Thread> threads = new ArrayList<>();
+            for (int i = 0; i < 6; i++) {
+                Thread thread = new Thread(() -> {
+                    try {
+                        start.await();
+                        String thumbnailPath = thumbnailCache.acquireThumbnail(picture.getPath());
+                        try {
+                            BufferedImage thumbnail = ImageIO.read(new File(thumbnailPath));
+                            if (thumbnail == null || thumbnail.getWidth() != 100 || thumbnail.getHeight() != 75) {
+                                badReads.incrementAndGet();
+                            }
+                        } finally {
+                            thumbnailCache.releaseThumbnail(thumbnailPath);
+                        }
+                    } catch (Exception e) {
+                        badReads.incrementAndGet();
+                    }
+                });
+                thread.start();
+                threads.add(thread);
+            }
+            start.countDown();
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            assertEquals(0, badReads.get());
+        }
+        for (File file : new File(directory).listFiles()) {
+            assertFalse(file.getName().endsWith(".tmp"));
+        }
+    }
+
+    @Test
+    public void thumbnailBeingReadIsNotDeleted() throws IOException {
+        File first = newPicture("First.jpg", 400, 200);
+        File second = newPicture("Second.jpg", 400, 200);
+        // no room for any thumbnail, so every thumbnail that is not being read is deleted
+        ThumbnailCache thumbnailCache = new ThumbnailCache(folder.newFolder("thumbnails").getPath(), 100, 1);
+
+        String firstThumbnail = thumbnailCache.acquireThumbnail(first.getPath());
+        thumbnailCache.getThumbnail(second.getPath());
+        assertTrue(new File(firstThumbnail).exists());
+        assertEquals(1, thumbnailCache.size());
+
+        thumbnailCache.releaseThumbnail(firstThumbnail);
+        assertFalse(new File(firstThumbnail).exists());
+        assertEquals(0, thumbnailCache.size());
+    }
+
+    @Test
+    public void leftoverTemporaryFileIsDeletedOnOpen() throws IOException {
+        File directory = folder.newFolder("thumbnails");
+        File leftover = new File(directory, "abc123.tmp");
+        leftover.createNewFile();
+
+        ThumbnailCache thumbnailCache = new ThumbnailCache(directory.getPath(), 100, 1024 * 1024);
+        assertFalse(leftover.exists());
+        assertEquals(0, thumbnailCache.size());
+    }
+}
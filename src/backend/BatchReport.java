@@ -0,0 +1,174 @@
+package backend;
+
+import java.util.ArrayList;
+
+/**
+ * The result of a change made to many Pictures at once: one item per data path the change was asked
+ * for, in the order they were given, saying what happened to that Picture.
+ */
+public class BatchReport {
+
+    /**
+     * What happened to one Picture of a batch
+     */
+    public enum Status {
+        /**
+         * The Picture was changed and its file renamed or moved
+         */
+        CHANGED("changed"),
+
+        /**
+         * The Picture already was as asked, so nothing was done
+         */
+        UNCHANGED("already up to date"),
+
+        /**
+         * No Picture was found at the data path
+         */
+        NOT_FOUND("not found"),
+
+        /**
+         * Another Picture (or another item of the batch) already has the data path the Picture would get
+         */
+        NAME_TAKEN("name already taken"),
+
+        /**
+         * The file of the Picture could not be renamed or moved, so the Picture was left as it was
+         */
+        FAILED("could not be renamed or moved");
+
+        /**
+         * How the status is described to the user
+         */
+        private final String description;
+
+        /**
+         * Creates a Status described to the user as description
+         *
+         * @param description how the status is described to the user
+         */
+        Status(String description) {
+            this.description = description;
+        }
+    }
+
+    /**
+     * The items of the batch, in the order the data paths were given
+     */
+    private ArrayList<Item> items = new ArrayList<>();
+
+    /**
+     * Adds the result for one Picture to the report
+     *
+     * @param dataPath    the data path the change was asked for
+     * @param newDataPath the data path of the Picture after the batch (dataPath if it did not change)
+     * @param status      what happened to the Picture
+     */
+    void add(String dataPath, String newDataPath, Status status) {
+        this.items.add(new Item(dataPath, newDataPath, status));
+    }
+
+    /**
+     * Getter for the items instance variable
+     *
+     * @return the result for every data path, in the order they were given
+     */
+    public ArrayList<Item> getItems() {
+        return new ArrayList<>(this.items);
+    }
+
+    /**
+     * Returns the number of items with the given status
+     *
+     * @param status the status to count
+     * @return number of items with status
+     */
+    public int getNumOf(Status status) {
+        int count = 0;
+        for (Item item : this.items) {
+            if (item.status == status) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns a one line summary of the batch for the user
+     * ie/ 4998 of 5000 picture(s) changed, 2 name already taken
+     *
+     * @return the summary
+     */
+    @Override
+    public String toString() {
+        String summary = this.getNumOf(Status.CHANGED) + " of " + this.items.size() + " picture(s) changed";
+        for (Status status : Status.values()) {
+            int count = this.getNumOf(status);
+            if (status != Status.CHANGED && count > 0) {
+                summary += ", " + count + " " + status.description;
+            }
+        }
+        return summary;
+    }
+
+    /**
+     * The result for one Picture of the batch
+     */
+    public static class Item {
+
+        /**
+         * The data path the change was asked for
+         */
+        private String dataPath;
+
+        /**
+         * The data path of the Picture after the batch, which is dataPath unless it was CHANGED
+         */
+        private String newDataPath;
+
+        /**
+         * What happened to the Picture
+         */
+        private Status status;
+
+        /**
+         * Creates an Item
+         *
+         * @param dataPath    the data path the change was asked for
+         * @param newDataPath the data path of the Picture after the batch
+         * @param status      what happened to the Picture
+         */
+        private Item(String dataPath, String newDataPath, Status status) {
+            this.dataPath = dataPath;
+            this.newDataPath = newDataPath;
+            this.status = status;
+        }
+
+        /**
+         * Getter for the dataPath instance variable
+         *
+         * @return the data path the change was asked for
+         */
+        public String getDataPath() {
+            return this.dataPath;
+        }
+
+        /**
+         * Getter for the newDataPath instance variable
+         *
+         * @return the data path of the Picture after the batch
+         */
+        public String getNewDataPath() {
+            return this.newDataPath;
+        }
+
+        /**
+         * Getter for the status instance variable
+         *
+         * @return what happened to the Picture
+         */
+        public Status getStatus() {
+            return this.status;
+        }
+    }
+}
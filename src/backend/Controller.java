@@ -2,6 +2,9 @@ package backend;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 /**
  * Controller for the GUI
@@ -44,7 +47,30 @@ public class Controller {
     private PictureRecognizer pictureRecognizer;
 
     /**
-     * Initializes new Controller object
+     * The longest time in milliseconds that a change may wait before it is written to a .ser file
+     */
+    private static final long MAX_STALENESS_MILLIS = 500;
+
+    /**
+     * Coalesces the writes of the .ser files and runs them on a background thread
+     */
+    private PersistenceScheduler persistenceScheduler;
+
+    /**
+     * The number of picture data paths found by a directory search that are added to the
+     * PictureManager at a time
+     */
+    private static final int SCAN_BATCH_SIZE = 200;
+
+    /**
+     * Applies pictures created or deleted by other programs in the current directory. Null when
+     * the current directory is not watched.
+     */
+    private DirectoryWatcher directoryWatcher;
+
+    /**
+     * Initializes new Controller object. The current directory is fully searched for pictures
+     * before the constructor returns.
      *
      * @param currentDir                 the current directory of the program
      * @param extensionPreferences       an ArrayList of picture extensions that program will recognize
@@ -55,14 +81,93 @@ public class Controller {
     public Controller(String currentDir, ArrayList<String> extensionPreferences, String logFileLocation,
                       String tagFileLocation, String pictureManagerFileLocation)
             throws IOException, ClassNotFoundException {
+        this(currentDir, extensionPreferences, logFileLocation, tagFileLocation, pictureManagerFileLocation,
+                null, null, null);
+    }
+
+    /**
+     * Initializes new Controller object. If onScanBatch is not null, the current directory is searched
+     * for pictures on a background thread and onScanBatch is called (on that thread) with the data paths
+     * of each batch of new pictures found, so they can be shown while the search continues. If
+     * onExternalChange is not null, the current directory is also watched for pictures created or
+     * deleted by other programs.
+     *
+     * @param currentDir                 the current directory of the program
+     * @param extensionPreferences       an ArrayList of picture extensions that program will recognize
+     * @param logFileLocation            the location of the log.ser file
+     * @param tagFileLocation            the location of the Tag.ser file
+     * @param pictureManagerFileLocation the location of the PictureManager.ser file
+     * @param scanCacheFileLocation      the location of the ScanCache.ser file, or null to not cache directory
+     *                                   listings between searches
+     * @param onScanBatch                called with each batch of new picture data paths found; may be null
+     * @param onExternalChange           called (on a background thread) after pictures in the current directory
+     *                                   were created or deleted by another program; may be null
+     */
+    public Controller(String currentDir, ArrayList<String> extensionPreferences, String logFileLocation,
+                      String tagFileLocation, String pictureManagerFileLocation, String scanCacheFileLocation,
+                      Consumer<ArrayList<String>> onScanBatch, Runnable onExternalChange)
+            throws IOException, ClassNotFoundException {
         this.currentDir = currentDir;
         this.extensionPreferences = new ArrayList<>();
-        this.mainFileSearcher = new FileSearcher(extensionPreferences);
-        this.mainPictureManager = new PictureManager(currentDir, mainFileSearcher.getFileNames(currentDir),
-                pictureManagerFileLocation);
-        this.log = new Log(logFileLocation);
-        this.availableTags = new Tag(tagFileLocation);
+        this.mainFileSearcher = new FileSearcher(extensionPreferences, Runtime.getRuntime().availableProcessors());
+        this.persistenceScheduler = new PersistenceScheduler(MAX_STALENESS_MILLIS, true);
+        if (scanCacheFileLocation != null) {
+            this.mainFileSearcher.setScanCache(new ScanCache(scanCacheFileLocation, this.persistenceScheduler));
+        }
+        this.mainPictureManager = new PictureManager(currentDir, new ArrayList<String>(),
+                pictureManagerFileLocation, this.persistenceScheduler, true);
+        this.log = new Log(logFileLocation, this.persistenceScheduler);
+        this.availableTags = new Tag(tagFileLocation, this.persistenceScheduler);
         this.pictureRecognizer = new PictureRecognizer("b4324e8aa37c48d28a8199bf87448e8f");
+        if (onExternalChange != null) {
+            this.directoryWatcher = new DirectoryWatcher(this.mainPictureManager, this.mainFileSearcher,
+                    onExternalChange);
+        }
+
+        if (onScanBatch == null) {
+            this.watchDirectory(currentDir);
+            this.scanDirectory(currentDir, null);
+        } else {
+            Thread scanner = new Thread(() -> {
+                this.watchDirectory(currentDir);
+                this.scanDirectory(currentDir, onScanBatch);
+            }, "directory-scanner");
+            scanner.setDaemon(true);
+            scanner.start();
+        }
+    }
+
+    /**
+     * Starts watching directory for pictures created or deleted by other programs, if the current
+     * directory is watched. Called before directory is searched so no change made during the search is missed.
+     *
+     * @param directory the directory to watch
+     */
+    private void watchDirectory(String directory) {
+        if (this.directoryWatcher != null) {
+            this.directoryWatcher.watch(directory);
+        }
+    }
+
+    /**
+     * Searches directory for pictures and adds them to the PictureManager in batches as they are found
+     *
+     * @param directory   the directory to search
+     * @param onScanBatch called with the data paths of each batch of new pictures in the viewing directory; may be null
+     */
+    private void scanDirectory(String directory, Consumer<ArrayList<String>> onScanBatch) {
+        // closed so the threads searching stop if the search is cut short
+        try (Stream<String> dataPaths = this.mainFileSearcher.streamFileNames(directory)) {
+            this.mainPictureManager.updateAllPictures(dataPaths.iterator(), SCAN_BATCH_SIZE, newPictures -> {
+                if (onScanBatch != null) {
+                    ArrayList<String> newDataPaths = new ArrayList<>();
+                    for (Picture picture : newPictures) {
+                        newDataPaths.add(picture.getDataPath());
+                    }
+                    onScanBatch.accept(newDataPaths);
+                }
+            });
+        }
     }
 
     /**
@@ -73,11 +178,7 @@ public class Controller {
      * in the current directory and all the subdirectories
      */
     public ArrayList<String> getPictureDataPaths() {
-        ArrayList<String> result = new ArrayList<>();
-        for (int i = 0; i < this.mainPictureManager.getDirectoryPictures().size(); i++) {
-            result.add(this.mainPictureManager.getDirectoryPictures().get(i).getDataPath());
-        }
-        return result;
+        return this.mainPictureManager.getDirectoryPictureDataPaths();
     }
 
     /**
@@ -108,35 +209,28 @@ public class Controller {
 
     /**
      * Adds a given list of tags to a Picture specified by its data path in the order that it appears in
-     * the list. If a tag in the list can not be added it ignores it and moves on to the next tag. Also,
-     * upon completion a status message is returned
+     * the list. Tags already attached to the Picture are ignored. The final name of the Picture is worked
+     * out first, so the file is renamed, the name history gets one entry and the change is saved once,
+     * however many tags are added. Upon completion a status message is returned
      *
      * @param dataPath  the directory of the Picture file including name and extension
      * @param tagsToAdd the ArrayList of tags to add to a Picture
      * @return a status message letting the user know what happen
      */
     public String addTagsToPicture(String dataPath, ArrayList<String> tagsToAdd) throws IOException {
-        String newestDataPath = dataPath; // this keeps track of the data path of the picture after each tag added
-        int numOfChanges = 0; // keeps track how many tags we have successfully added to a picture
-        for (String tag : tagsToAdd) {
-            // Try to add a tag to the Picture and save the result in result
-            String[] result = this.addTagToPicture(newestDataPath, tag);
-            // read and store what the new data path will be for the picture
-            // this is done so the next call to addTagToPicture will have the
-            // correct data path. Also update numOfChanges
-            if (!(result[1].equals(newestDataPath))) {
-                numOfChanges += 1;
-            }
-            newestDataPath = result[1];
-        }
-        // Adjust the prevFileName for the picture we changed to only include the first change
-        Picture pictureOfInterest = this.mainPictureManager.getPictureAtDataPath(newestDataPath);
-        for (int i = numOfChanges; i > 1; i--) {
-            pictureOfInterest.deletePrevFileName();
+        ArrayList<String> dataPaths = new ArrayList<>();
+        dataPaths.add(dataPath);
+        BatchReport.Item result = this.addTagsToPictures(dataPaths, tagsToAdd).getItems().get(0);
+        switch (result.getStatus()) {
+            case CHANGED:
+                return "Tags that could be added to the picture were added";
+            case UNCHANGED:
+                return "The tags have already been applied to this picture";
+            case NAME_TAKEN:
+                return "Unable to add the tags. Another picture already has the name the picture would get";
+            default:
+                return "Unable to add the tags to the picture";
         }
-        // Record the changes in the Log
-        log.logAddedTag(dataPath, pictureOfInterest.getName());
-        return "Tags that could be added to the picture were added";
     }
 
     /**
@@ -162,36 +256,29 @@ public class Controller {
     }
 
     /**
-     * Removes a given list of tags from a Picture specified by its data path in the order that it appears in
-     * the list. If a tag in the list can not be removed it ignores it and moves on to the next tag. Also,
-     * upon completion a status message is returned
+     * Removes a given list of tags from a Picture specified by its data path. Tags not attached to the
+     * Picture are ignored. The final name of the Picture is worked out first, so the file is renamed, the
+     * name history gets one entry and the change is saved once, however many tags are removed. Upon
+     * completion a status message is returned
      *
      * @param dataPath     the directory of the Picture file including name and extension
      * @param tagsToRemove the ArrayList of tags to remove from a Picture
      * @return a status message letting the user know what happen
      */
     public String removeTagsFromPicture(String dataPath, ArrayList<String> tagsToRemove) throws IOException {
-        String newestDataPath = dataPath; // this keeps track of the data path of the picture after each tag removed
-        int numOfChanges = 0; // keeps track how many tags we have successfully added to a picture
-        for (String tag : tagsToRemove) {
-            // Try to remove a tag from the Picture and save the result in result
-            String[] result = this.removeTagFromPicture(newestDataPath, tag);
-            // read and store what the new data path will be for the picture
-            // this is done so the next call to removeTagFromPicture will have the
-            // correct data path. Also update numOfChanges
-            if (!(result[1].equals(newestDataPath))) {
-                numOfChanges += 1;
-            }
-            newestDataPath = result[1];
-        }
-        // Adjust the prevFileName for the picture we changed to only include the first change
-        Picture pictureOfInterest = this.mainPictureManager.getPictureAtDataPath(newestDataPath);
-        for (int i = numOfChanges; i > 1; i--) {
-            pictureOfInterest.deletePrevFileName();
+        ArrayList<String> dataPaths = new ArrayList<>();
+        dataPaths.add(dataPath);
+        BatchReport.Item result = this.removeTagsFromPictures(dataPaths, tagsToRemove).getItems().get(0);
+        switch (result.getStatus()) {
+            case CHANGED:
+                return "Tags that could be removed from the picture were removed";
+            case UNCHANGED:
+                return "None of the tags are applied to this picture";
+            case NAME_TAKEN:
+                return "Unable to remove the tags. Another picture already has the name the picture would get";
+            default:
+                return "Unable to remove the tags from the picture";
         }
-        // Record the changes in the Log
-        log.logRemovedTag(dataPath, pictureOfInterest.getName());
-        return "Tags that could be removed from the picture were removed";
     }
 
     /**
@@ -216,6 +303,56 @@ public class Controller {
         }
     }
 
+    /**
+     * Adds a list of tags to every Picture in a list of data paths. Each Picture is renamed at most once,
+     * and the changes are saved and recorded in the Log once for the whole batch.
+     *
+     * @param dataPaths the data paths of the Pictures to tag
+     * @param tagsToAdd the tags to add, in the order they are added to the file names
+     * @return what happened to each Picture, in the order of dataPaths
+     */
+    public BatchReport addTagsToPictures(ArrayList<String> dataPaths, ArrayList<String> tagsToAdd) {
+        BatchReport report = this.mainPictureManager.addTagsToPictures(dataPaths, tagsToAdd);
+        ArrayList<String> changedDataPaths = new ArrayList<>();
+        ArrayList<String> newNames = new ArrayList<>();
+        this.collectChanges(report, changedDataPaths, newNames);
+        log.logAddedTags(changedDataPaths, newNames);
+        return report;
+    }
+
+    /**
+     * Removes a list of tags from every Picture in a list of data paths. Each Picture is renamed at most
+     * once, and the changes are saved and recorded in the Log once for the whole batch.
+     *
+     * @param dataPaths    the data paths of the Pictures to untag
+     * @param tagsToRemove the tags to remove
+     * @return what happened to each Picture, in the order of dataPaths
+     */
+    public BatchReport removeTagsFromPictures(ArrayList<String> dataPaths, ArrayList<String> tagsToRemove) {
+        BatchReport report = this.mainPictureManager.removeTagsFromPictures(dataPaths, tagsToRemove);
+        ArrayList<String> changedDataPaths = new ArrayList<>();
+        ArrayList<String> newNames = new ArrayList<>();
+        this.collectChanges(report, changedDataPaths, newNames);
+        log.logRemovedTags(changedDataPaths, newNames);
+        return report;
+    }
+
+    /**
+     * Adds the old data path and new file name of every changed Picture in report to the given lists
+     *
+     * @param report           the result of a batch
+     * @param changedDataPaths the list to add the data path each changed Picture had before the batch to
+     * @param newNames         the list to add the file name each changed Picture has after the batch to
+     */
+    private void collectChanges(BatchReport report, ArrayList<String> changedDataPaths, ArrayList<String> newNames) {
+        for (BatchReport.Item item : report.getItems()) {
+            if (item.getStatus() == BatchReport.Status.CHANGED) {
+                changedDataPaths.add(item.getDataPath());
+                newNames.add(log.extractFileName(item.getNewDataPath()));
+            }
+        }
+    }
+
     /**
      * Returns the log of all changes made to Pictures
      *
@@ -225,6 +362,57 @@ public class Controller {
         return log.getLogList();
     }
 
+    /**
+     * Returns the numOfEntries most recent changes made to Pictures, oldest first
+     *
+     * @param numOfEntries the largest number of changes to return
+     * @return the text of the most recent entries of Log
+     */
+    public ArrayList<String> getRecentLog(int numOfEntries) {
+        ArrayList<LogEntry> latest = log.getLatestEntries(numOfEntries, Long.MAX_VALUE);
+        ArrayList<String> recentLog = new ArrayList<>();
+        for (int i = latest.size() - 1; i >= 0; i--) {
+            recentLog.add(latest.get(i).toString());
+        }
+        return recentLog;
+    }
+
+    /**
+     * Returns a page of the changes made to Pictures, newest first
+     *
+     * @param limit  the largest number of entries to return
+     * @param before the sequence of the last entry of the previous page, or Long.MAX_VALUE for the first page
+     * @return the page of entries
+     */
+    public ArrayList<LogEntry> getLatestLogEntries(int limit, long before) {
+        return log.getLatestEntries(limit, before);
+    }
+
+    /**
+     * Returns a page of the changes made to Pictures in a time range, oldest first
+     *
+     * @param fromMillis the start of the time range in milliseconds since the epoch (inclusive)
+     * @param toMillis   the end of the time range in milliseconds since the epoch (exclusive)
+     * @param limit      the largest number of entries to return
+     * @param after      the sequence of the last entry of the previous page, or -1 for the first page
+     * @return the page of entries
+     */
+    public ArrayList<LogEntry> getLogEntriesBetween(long fromMillis, long toMillis, int limit, long after) {
+        return log.getEntriesBetween(fromMillis, toMillis, limit, after);
+    }
+
+    /**
+     * Returns a page of the changes that led the Picture at dataPath to its current name, newest first
+     *
+     * @param dataPath the directory of the Picture file including name and extension
+     * @param limit    the largest number of entries to return
+     * @param before   the sequence of the last entry of the previous page, or Long.MAX_VALUE for the first page
+     * @return the page of entries
+     */
+    public ArrayList<LogEntry> getPictureHistory(String dataPath, int limit, long before) {
+        return log.getHistory(dataPath, limit, before);
+    }
+
     /**
      * Changes a picture file directory to a new specified one and returns a status message
      *
@@ -233,14 +421,32 @@ public class Controller {
      * @return a status message telling the user what happen
      */
     public String changeFileDirectory(String dataPath, String newDir) {
-        Picture pictureToMove = this.mainPictureManager.getPictureAtDataPath(dataPath);
-        String result = this.mainPictureManager.changeDirectoryOfPicture(pictureToMove, newDir);
-
-        // Update the directory pictures as moving a picture could affect this
-        this.mainPictureManager.updateDirectoryPictures();
+        ArrayList<String> dataPaths = new ArrayList<>();
+        dataPaths.add(dataPath);
+        // the directory pictures are updated by movePictures if moving the picture affects them
+        BatchReport.Item result = this.movePictures(dataPaths, newDir, null).getItems().get(0);
+        switch (result.getStatus()) {
+            case CHANGED:
+                return "File movement was successful";
+            case NAME_TAKEN:
+                return "File already exists at target directory!";
+            default:
+                return "File movement was unsuccessful";
+        }
+    }
 
-        // Return the status message
-        return result;
+    /**
+     * Moves every Picture in a list of data paths into newDir. The files are moved in parallel, the
+     * changes are saved once and the pictures of the current directory are updated once for the whole batch.
+     *
+     * @param dataPaths  the data paths of the Pictures to move
+     * @param newDir     the directory to move the Pictures into
+     * @param onProgress called with the number of files moved so far and the number of files to move; may be null
+     * @return what happened to each Picture, in the order of dataPaths
+     */
+    public BatchReport movePictures(ArrayList<String> dataPaths, String newDir,
+                                    BiConsumer<Integer, Integer> onProgress) {
+        return this.mainPictureManager.movePictures(dataPaths, newDir, onProgress);
     }
 
     /**
@@ -251,8 +457,9 @@ public class Controller {
     public void changeCurrentDirectory(String newDir) throws IOException {
         this.currentDir = newDir;
         this.mainPictureManager.setViewingDir(newDir);
-        this.mainPictureManager.updateAllPictures(this.mainFileSearcher.getFileNames(newDir));
         this.mainPictureManager.updateDirectoryPictures();
+        this.watchDirectory(newDir);
+        this.scanDirectory(newDir, null);
 
         // Now we need to check all the pictures that the user can see in the current directory
         // and see if any of the pictures has tags that are not in the existing tag set.
@@ -349,14 +556,46 @@ public class Controller {
     }
 
     /**
-     * Sorts the list of usable tags with respect to a keyword.
-     * Words that contain the keyword will be position closer to the front
-     * of the list
+     * Returns up to k existing tags that start with prefix, ignoring case, in alphabetical order
      *
-     * @param keyword the keyword we are searching for in tags to sort them
+     * @param prefix the first characters of the tag being typed, with or without the leading @
+     * @param k      the largest number of tags to return
+     * @return the tags starting with prefix
      */
-    public void sortTags(String keyword) {
-        this.availableTags.sortTagsByKeyword(keyword);
+    public ArrayList<String> autocompleteTag(String prefix, int k) {
+        return this.availableTags.autocomplete(prefix, k);
+    }
+
+    /**
+     * Returns up to k existing tags closest to query, which may be misspelled, the closest first
+     *
+     * @param query the tag to look for, with or without the leading @
+     * @param k     the largest number of tags to return
+     * @return the tags closest to query
+     */
+    public ArrayList<String> fuzzySearchTags(String query, int k) {
+        return this.availableTags.fuzzySearch(query, k);
+    }
+
+    /**
+     * Returns up to k of the tags attached to the most Pictures in the library, most used first
+     *
+     * @param k the largest number of tags to return
+     * @return the most used tags
+     */
+    public ArrayList<String> getMostUsedTags(int k) {
+        return this.mainPictureManager.getMostUsedTags("", k);
+    }
+
+    /**
+     * Returns up to k of the tags attached to the most Pictures in and under directory, most used first
+     *
+     * @param directory the absolute path of the directory
+     * @param k         the largest number of tags to return
+     * @return the most used tags in directory
+     */
+    public ArrayList<String> getMostUsedTagsUnder(String directory, int k) {
+        return this.mainPictureManager.getMostUsedTags(directory, k);
     }
 
     /**
@@ -391,5 +630,22 @@ public class Controller {
     public void showHiddenPictures() {
         this.mainPictureManager.showHiddenPictures();
     }
-}
 
+    /**
+     * Writes every change that is waiting to be saved to its .ser file and waits for the writes to finish
+     */
+    public void flush() {
+        this.persistenceScheduler.flush();
+    }
+
+    /**
+     * Writes every change that is waiting to be saved and stops the background threads that watch
+     * the current directory and save the .ser files. Should be called when the program is closing.
+     */
+    public void close() {
+        if (this.directoryWatcher != null) {
+            this.directoryWatcher.close();
+        }
+        this.persistenceScheduler.close();
+    }
+}
@@ -0,0 +1,311 @@
+package backend;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.TreeMap;
+
+/**
+ * A trie of directories holding the Pictures stored in each of them.
+ * <p>
+ * Each node of the trie is a directory, its children are its sub-directories (kept in name order)
+ * and its bucket holds the Pictures stored directly inside of it, by file name. The Pictures in a
+ * directory are therefore found by walking down to its node, and the Pictures in and under a directory
+ * by visiting only the nodes below it, instead of comparing the path of every Picture with the directory.
+ * A Picture is found by its data path the same way, without the trie holding any full data path.
+ * <p>
+ * Every directory also counts how many of the Pictures in and under it each tag is attached to. The counts
+ * are updated along the path of a Picture whenever it is added or removed, which includes every rename
+ * and change of tags, so the most used tags of any directory (or of the whole library, at the root) are
+ * found without visiting its Pictures.
+ */
+public class DirectoryTrie {
+
+    /**
+     * The node of the file system root. Every absolute path starts here.
+     */
+    private Node root = new Node();
+
+    /**
+     * The number of Pictures in the trie
+     */
+    private int size = 0;
+
+    /**
+     * Adds picture to the bucket of the directory it is stored in
+     *
+     * @param picture the Picture to add
+     */
+    public void add(Picture picture) {
+        ArrayList<Node> path = new ArrayList<>();
+        Node node = this.root;
+        path.add(node);
+        for (String component : getComponents(picture.getDirectoryPrefix())) {
+            Node child = node.children.get(component);
+            if (child == null) {
+                child = new Node();
+                node.children.put(component, child);
+            }
+            node = child;
+            path.add(node);
+        }
+        Picture replaced = node.pictures.put(picture.getName(), picture);
+        if (replaced == null) {
+            this.size++;
+        } else {
+            for (Node onPath : path) {
+                onPath.uncountTags(replaced);
+            }
+        }
+        for (Node onPath : path) {
+            onPath.countTags(picture);
+        }
+    }
+
+    /**
+     * Removes picture from the bucket of the directory it is stored in, along with any directory
+     * that is left without Pictures and sub-directories. Must be called while picture still has
+     * the data path it was added with.
+     *
+     * @param picture the Picture to remove
+     */
+    public void remove(Picture picture) {
+        ArrayList<String> components = getComponents(picture.getDirectoryPrefix());
+        ArrayList<Node> path = new ArrayList<>();
+        Node node = this.root;
+        path.add(node);
+        for (String component : components) {
+            node = node.children.get(component);
+            if (node == null) {
+                return;
+            }
+            path.add(node);
+        }
+        if (node.pictures.get(picture.getName()) != picture) {
+            return;
+        }
+        node.pictures.remove(picture.getName());
+        this.size--;
+        for (Node onPath : path) {
+            onPath.uncountTags(picture);
+        }
+        // prune the directories that no longer lead to any Picture
+        for (int i = path.size() - 1; i > 0; i--) {
+            Node emptied = path.get(i);
+            if (!emptied.pictures.isEmpty() || !emptied.children.isEmpty()) {
+                break;
+            }
+            path.get(i - 1).children.remove(components.get(i - 1));
+        }
+    }
+
+    /**
+     * Returns the Picture at dataPath
+     *
+     * @param dataPath the data path of a Picture
+     * @return the Picture at dataPath, or null if there is none
+     */
+    public Picture get(String dataPath) {
+        int nameStart = dataPath.lastIndexOf(File.separatorChar) + 1;
+        Node node = this.find(dataPath.substring(0, nameStart));
+        return (node == null) ? null : node.pictures.get(dataPath.substring(nameStart));
+    }
+
+    /**
+     * Returns the Pictures stored directly inside of directory
+     *
+     * @param directory the path of the directory
+     * @return list of the Pictures in directory, not including its sub-directories
+     */
+    public ArrayList<Picture> getPicturesIn(String directory) {
+        Node node = this.find(directory);
+        return (node == null) ? new ArrayList<Picture>() : new ArrayList<>(node.pictures.values());
+    }
+
+    /**
+     * Returns the Pictures stored in directory and all of its sub-directories, the Pictures of a
+     * directory before those of its sub-directories, and sub-directories in name order
+     *
+     * @param directory the path of the directory
+     * @return list of the Pictures in and under directory
+     */
+    public ArrayList<Picture> getPicturesUnder(String directory) {
+        ArrayList<Picture> pictures = new ArrayList<>();
+        Node start = this.find(directory);
+        if (start == null) {
+            return pictures;
+        }
+        ArrayDeque<Node> nodesToVisit = new ArrayDeque<>();
+        nodesToVisit.push(start);
+        while (!nodesToVisit.isEmpty()) {
+            Node node = nodesToVisit.pop();
+            pictures.addAll(node.pictures.values());
+            // push in reverse so the sub-directories are visited in name order
+            Iterator<Node> children = node.children.descendingMap().values().iterator();
+            while (children.hasNext()) {
+                nodesToVisit.push(children.next());
+            }
+        }
+        return pictures;
+    }
+
+    /**
+     * Returns up to k of the tags attached to the most Pictures in and under directory, most used first
+     * and ties in alphabetical order. Takes O(k + log n) for n tags used in directory.
+     *
+     * @param directory the path of the directory, or the empty String for every Picture in the trie
+     * @param k         the largest number of tags to return
+     * @return the most used tags in directory
+     */
+    public ArrayList<String> getMostUsedTags(String directory, int k) {
+        Node node = this.find(directory);
+        return (node == null || node.tagCounts == null) ? new ArrayList<String>() : node.tagCounts.getMostUsed(k);
+    }
+
+    /**
+     * Returns the number of Pictures in and under directory that tag is attached to
+     *
+     * @param directory the path of the directory, or the empty String for every Picture in the trie
+     * @param tag       the tag
+     * @return the count of tag in directory
+     */
+    public int getTagCount(String directory, String tag) {
+        Node node = this.find(directory);
+        return (node == null || node.tagCounts == null) ? 0 : node.tagCounts.getCount(tag);
+    }
+
+    /**
+     * Returns the number of Pictures in the trie
+     *
+     * @return number of Pictures
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Returns true iff the file at dataPath is stored in directory or one of its sub-directories
+     *
+     * @param directory the path of the directory
+     * @param dataPath  the data path of a file
+     * @return true iff the file is in or under directory
+     */
+    public static boolean isUnder(String directory, String dataPath) {
+        ArrayList<String> directoryComponents = getComponents(directory);
+        ArrayList<String> fileComponents = getComponents(dataPath);
+        return fileComponents.size() > directoryComponents.size()
+                && fileComponents.subList(0, directoryComponents.size()).equals(directoryComponents);
+    }
+
+    /**
+     * Returns true iff the file at dataPath is stored directly inside of directory, not in one of its
+     * sub-directories
+     *
+     * @param directory the path of the directory
+     * @param dataPath  the data path of a file
+     * @return true iff the file is directly inside of directory
+     */
+    public static boolean isDirectlyIn(String directory, String dataPath) {
+        ArrayList<String> directoryComponents = getComponents(directory);
+        ArrayList<String> fileComponents = getComponents(dataPath);
+        return fileComponents.size() == directoryComponents.size() + 1
+                && fileComponents.subList(0, directoryComponents.size()).equals(directoryComponents);
+    }
+
+    /**
+     * Returns the node of directory, or null if no Picture is stored in or under directory
+     *
+     * @param directory the path of the directory
+     * @return the node of directory
+     */
+    private Node find(String directory) {
+        Node node = this.root;
+        for (String component : getComponents(directory)) {
+            node = node.children.get(component);
+            if (node == null) {
+                return null;
+            }
+        }
+        return node;
+    }
+
+    /**
+     * Splits path into the names of its directories and file, skipping empty names so that
+     * C:/Users/ and C:/Users are the same directory
+     * ie/ C:/Users/Somebody/Pictures returns [C:, Users, Somebody, Pictures]
+     *
+     * @param path a path
+     * @return the names in path from the root down
+     */
+    private static ArrayList<String> getComponents(String path) {
+        ArrayList<String> components = new ArrayList<>();
+        int start = 0;
+        while (start <= path.length()) {
+            int end = path.indexOf(File.separatorChar, start);
+            if (end == -1) {
+                end = path.length();
+            }
+            if (end > start) {
+                components.add(path.substring(start, end));
+            }
+            start = end + 1;
+        }
+        return components;
+    }
+
+    /**
+     * A directory in the trie
+     */
+    private static class Node {
+
+        /**
+         * The sub-directories of the directory that lead to Pictures, by name
+         */
+        private TreeMap<String, Node> children = new TreeMap<>();
+
+        /**
+         * The Pictures stored directly inside of the directory, by file name
+         */
+        private LinkedHashMap<String, Picture> pictures = new LinkedHashMap<>();
+
+        /**
+         * The number of Pictures in and under the directory that each tag is attached to.
+         * Null while none of them has a tag.
+         */
+        private TagCounter tagCounts;
+
+        /**
+         * Counts the tags of picture, which was added in or under the directory
+         *
+         * @param picture the added Picture
+         */
+        private void countTags(Picture picture) {
+            int[] tagIds = picture.getAttachedTagIds();
+            if (tagIds.length > 0 && this.tagCounts == null) {
+                this.tagCounts = new TagCounter();
+            }
+            for (int tagId : tagIds) {
+                this.tagCounts.increment(tagId);
+            }
+        }
+
+        /**
+         * Stops counting the tags of picture, which was removed from in or under the directory
+         *
+         * @param picture the removed Picture
+         */
+        private void uncountTags(Picture picture) {
+            if (this.tagCounts == null) {
+                return;
+            }
+            for (int tagId : picture.getAttachedTagIds()) {
+                this.tagCounts.decrement(tagId);
+            }
+            if (this.tagCounts.isEmpty()) {
+                this.tagCounts = null;
+            }
+        }
+    }
+}
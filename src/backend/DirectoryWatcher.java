@@ -0,0 +1,312 @@
+package backend;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches the viewing directory and all of its sub-directories for pictures that are created or
+ * deleted by other programs, and applies those changes to a PictureManager as they happen instead
+ * of waiting for the next full search of the directory.
+ * <p>
+ * Events are coalesced: once an event arrives, the watcher keeps collecting events until none has
+ * arrived for quietMillis (or maxDelayMillis has passed), and then applies every changed path at
+ * once. A path is looked at again when the changes are applied, so a file that was created and
+ * deleted within one burst is ignored. When the events of a directory were lost (an OVERFLOW event)
+ * only that directory is listed again.
+ */
+public class DirectoryWatcher {
+
+    /**
+     * The time in milliseconds without any event after which a burst of events is applied
+     */
+    private static final long QUIET_MILLIS = 200;
+
+    /**
+     * The longest time in milliseconds that the events of a burst are held back before they are applied
+     */
+    private static final long MAX_DELAY_MILLIS = 1000;
+
+    /**
+     * The PictureManager that changes are applied to
+     */
+    private PictureManager pictureManager;
+
+    /**
+     * Used to decide which files are pictures and to search new directories
+     */
+    private FileSearcher fileSearcher;
+
+    /**
+     * Called on the watcher thread after changes that affect the viewing directory were applied; may be null
+     */
+    private Runnable onChange;
+
+    /**
+     * The service that events are read from
+     */
+    private WatchService watchService;
+
+    /**
+     * Maps each registered directory to its watch key
+     */
+    private HashMap<Path, WatchKey> keysByDirectory = new HashMap<>();
+
+    /**
+     * Maps each watch key to the directory it was registered for
+     */
+    private HashMap<WatchKey, Path> directoriesByKey = new HashMap<>();
+
+    /**
+     * The thread that reads and applies events
+     */
+    private Thread watcherThread;
+
+    /**
+     * Creates a DirectoryWatcher which is not watching any directory yet
+     *
+     * @param pictureManager the PictureManager that changes are applied to
+     * @param fileSearcher   decides which files are pictures and searches new directories
+     * @param onChange       called after changes that affect the viewing directory were applied; may be null
+     * @throws IOException when the file system can not be watched
+     */
+    public DirectoryWatcher(PictureManager pictureManager, FileSearcher fileSearcher, Runnable onChange)
+            throws IOException {
+        this.pictureManager = pictureManager;
+        this.fileSearcher = fileSearcher;
+        this.onChange = onChange;
+        this.watchService = FileSystems.getDefault().newWatchService();
+        this.watcherThread = new Thread(this::processEvents, "directory-watcher");
+        this.watcherThread.setDaemon(true);
+        this.watcherThread.start();
+    }
+
+    /**
+     * Stops watching the previous directory and starts watching root and all of its sub-directories
+     *
+     * @param root the directory to watch
+     */
+    public synchronized void watch(String root) {
+        for (WatchKey key : this.directoriesByKey.keySet()) {
+            key.cancel();
+        }
+        this.keysByDirectory.clear();
+        this.directoriesByKey.clear();
+        this.registerAll(Paths.get(root).toAbsolutePath());
+    }
+
+    /**
+     * Stops watching and stops the watcher thread
+     */
+    public void close() {
+        try {
+            this.watchService.close();
+        } catch (IOException e) {
+            System.out.println("Unable to stop watching the directory");
+        }
+    }
+
+    /**
+     * Returns the number of directories being watched
+     *
+     * @return number of watched directories
+     */
+    public synchronized int getNumOfWatchedDirectories() {
+        return this.keysByDirectory.size();
+    }
+
+    /**
+     * Registers directory and every directory under it that is not registered yet
+     *
+     * @param directory the directory to register
+     */
+    private void registerAll(Path directory) {
+        try {
+            Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                    if (keysByDirectory.containsKey(dir)) {
+                        return FileVisitResult.CONTINUE;
+                    }
+                    try {
+                        WatchKey key = dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                                StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+                        keysByDirectory.put(dir, key);
+                        directoriesByKey.put(key, dir);
+                    } catch (IOException e) {
+                        // the directory can not be watched, but its sub-directories may still be
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException e) {
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException | ClosedWatchServiceException e) {
+            // nothing more can be registered
+        }
+    }
+
+    /**
+     * Stops watching directory and every directory under it
+     *
+     * @param directory the directory that was deleted
+     */
+    private void unregisterAll(Path directory) {
+        Iterator<Map.Entry<Path, WatchKey>> entries = this.keysByDirectory.entrySet().iterator();
+        while (entries.hasNext()) {
+            Map.Entry<Path, WatchKey> entry = entries.next();
+            if (entry.getKey().startsWith(directory)) {
+                entry.getValue().cancel();
+                this.directoriesByKey.remove(entry.getValue());
+                entries.remove();
+            }
+        }
+    }
+
+    /**
+     * Reads bursts of events until the watch service is closed and applies each burst to the PictureManager
+     */
+    private void processEvents() {
+        try {
+            while (true) {
+                WatchKey key = this.watchService.take();
+                LinkedHashSet<Path> changedPaths = new LinkedHashSet<>();
+                LinkedHashSet<Path> overflowedDirectories = new LinkedHashSet<>();
+                long deadline = System.currentTimeMillis() + MAX_DELAY_MILLIS;
+                while (key != null) {
+                    this.collectEvents(key, changedPaths, overflowedDirectories);
+                    if (System.currentTimeMillis() >= deadline) {
+                        break;
+                    }
+                    key = this.watchService.poll(QUIET_MILLIS, TimeUnit.MILLISECONDS);
+                }
+                if (this.applyChanges(changedPaths, overflowedDirectories) && this.onChange != null) {
+                    this.onChange.run();
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // the watcher was closed
+        }
+    }
+
+    /**
+     * Adds the paths changed by the events of key to changedPaths, or the directory of key to
+     * overflowedDirectories if some of its events were lost
+     *
+     * @param key                   the watch key with pending events
+     * @param changedPaths          the paths that were created, deleted or modified
+     * @param overflowedDirectories the directories whose events were lost
+     */
+    private synchronized void collectEvents(WatchKey key, LinkedHashSet<Path> changedPaths,
+                                            LinkedHashSet<Path> overflowedDirectories) {
+        Path directory = this.directoriesByKey.get(key);
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (directory == null) {
+                // the key was cancelled because a different directory is being watched now
+                continue;
+            }
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                overflowedDirectories.add(directory);
+            } else {
+                changedPaths.add(directory.resolve((Path) event.context()));
+            }
+        }
+        if (!key.reset() && directory != null) {
+            // the directory itself is gone
+            changedPaths.add(directory);
+        }
+    }
+
+    /**
+     * Applies a burst of changes to the PictureManager
+     *
+     * @param changedPaths          the paths that were created, deleted or modified
+     * @param overflowedDirectories the directories whose events were lost
+     * @return true iff the Pictures in the viewing directory changed
+     */
+    private synchronized boolean applyChanges(LinkedHashSet<Path> changedPaths,
+                                              LinkedHashSet<Path> overflowedDirectories) {
+        boolean changed = false;
+        ArrayList<String> createdPictures = new ArrayList<>();
+        ArrayList<String> deletedPictures = new ArrayList<>();
+        for (Path path : changedPaths) {
+            if (overflowedDirectories.contains(path.getParent())) {
+                // the directory is listed again below
+                continue;
+            }
+            if (Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+                if (!this.keysByDirectory.containsKey(path)) {
+                    // a new directory: watch it and add the pictures already copied into it
+                    this.registerAll(path);
+                    createdPictures.addAll(this.fileSearcher.getFileNames(path.toString()));
+                }
+            } else if (!Files.exists(path, LinkOption.NOFOLLOW_LINKS)) {
+                if (this.keysByDirectory.containsKey(path)) {
+                    this.unregisterAll(path);
+                    changed |= this.pictureManager.removePicturesUnder(path.toString()) > 0;
+                } else {
+                    deletedPictures.add(path.toString());
+                }
+            } else if (this.fileSearcher.isPicture(path.getFileName().toString())) {
+                createdPictures.add(path.toString());
+            }
+        }
+        changed |= this.pictureManager.removePictures(deletedPictures) > 0;
+        changed |= this.pictureManager.addPictures(createdPictures).size() > 0;
+
+        for (Path directory : overflowedDirectories) {
+            changed |= this.rescanDirectory(directory);
+        }
+        return changed;
+    }
+
+    /**
+     * Lists directory again after some of its events were lost, updating the Pictures directly inside
+     * of it and searching any sub-directory that is not watched yet
+     *
+     * @param directory the directory whose events were lost
+     * @return true iff the Pictures in the viewing directory changed
+     */
+    private boolean rescanDirectory(Path directory) {
+        ArrayList<String> pictures = new ArrayList<>();
+        ArrayList<String> newSubdirectoryPictures = new ArrayList<>();
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+            for (Path entry : entries) {
+                if (Files.isDirectory(entry, LinkOption.NOFOLLOW_LINKS)) {
+                    if (!this.keysByDirectory.containsKey(entry)) {
+                        this.registerAll(entry);
+                        newSubdirectoryPictures.addAll(this.fileSearcher.getFileNames(entry.toString()));
+                    }
+                } else if (this.fileSearcher.isPicture(entry.getFileName().toString())) {
+                    pictures.add(entry.toString());
+                }
+            }
+        } catch (IOException | SecurityException e) {
+            // the directory is gone; its pictures are removed when its key becomes invalid
+            return false;
+        }
+        boolean changed = this.pictureManager.reconcileDirectory(directory.toString(), pictures);
+        return this.pictureManager.addPictures(newSubdirectoryPictures).size() > 0 || changed;
+    }
+}
@@ -1,7 +1,27 @@
 package backend;
 
-import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * A file searcher that searches and finds picture files
@@ -13,12 +33,61 @@ public class FileSearcher {
     private ArrayList<String> imageFileTypes;
 
     /**
-     * Initializes new FileSearcher object
+     * The number of threads used to search directories. 1 means directories are searched one at a time
+     * on the caller's thread.
+     */
+    private int parallelism;
+
+    /**
+     * The work-stealing pool that searches directories in parallel. Created the first time it is needed.
+     */
+    private ForkJoinPool pool;
+
+    /**
+     * Cached directory listings used to skip listing directories that have not changed. May be null.
+     */
+    private ScanCache scanCache;
+
+    /**
+     * The most directories whose pictures a Stream searched in parallel holds before the threads
+     * searching wait for the Stream to be consumed
+     */
+    private static final int STREAM_QUEUE_CAPACITY = 256;
+
+    /**
+     * How long in milliseconds a thread searching for a Stream waits for room in the queue before
+     * checking whether the Stream was closed
+     */
+    private static final long STREAM_WAIT_MILLIS = 100;
+
+    /**
+     * Initializes new FileSearcher object which searches one directory at a time
      *
      * @param imageFileTypes List of file extensions that are considered to be pictures
      */
     public FileSearcher(ArrayList<String> imageFileTypes) {
+        this(imageFileTypes, 1);
+    }
+
+    /**
+     * Initializes new FileSearcher object
+     *
+     * @param imageFileTypes List of file extensions that are considered to be pictures
+     * @param parallelism    the number of threads used to search directories (1 to search them one at a time)
+     */
+    public FileSearcher(ArrayList<String> imageFileTypes, int parallelism) {
         this.imageFileTypes = imageFileTypes;
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    /**
+     * Sets the cache of directory listings this FileSearcher uses. Directories whose last-modified
+     * time matches their cached listing are not listed again.
+     *
+     * @param scanCache the cache of directory listings, or null to always list every directory
+     */
+    public void setScanCache(ScanCache scanCache) {
+        this.scanCache = scanCache;
     }
 
     /**
@@ -28,30 +97,160 @@ public class FileSearcher {
      * @return list of picture file names that are in and under the provided directory
      */
     public ArrayList<String> getFileNames(String absoluteDir) {
-        File file = new File(absoluteDir);
-        File[] files = file.listFiles();
+        Path root = Paths.get(absoluteDir).toAbsolutePath();
         ArrayList<String> fileNames = new ArrayList<>();
+        // the directories reached by this search, added to by every thread searching
+        Set<String> searchedDirectories = ConcurrentHashMap.newKeySet();
+        if (this.parallelism > 1) {
+            this.getPool().invoke(new DirectorySearchTask(root, searchedDirectories)).addFileNamesTo(fileNames);
+        } else {
+            this.addFileNames(root, fileNames, searchedDirectories);
+        }
+        if (this.scanCache != null) {
+            this.scanCache.finishSearch(root.toString(), searchedDirectories);
+        }
+        return fileNames;
+    }
+
+    /**
+     * Returns a Stream of the picture file names that are in and under the provided directory, so the
+     * first pictures can be used while the rest of the directory is still being searched, and the file
+     * names are never all held in one list.
+     * <p>
+     * Searching one directory at a time, the Stream is lazy: a directory is only listed once the file
+     * names before it have been consumed, and they come in the same order as getFileNames. Searching in
+     * parallel, the pool searches the directories and the pictures of each directory come in the order
+     * the directory was listed; the pool waits while STREAM_QUEUE_CAPACITY directories are waiting to be
+     * consumed. A Stream that is not consumed to the end must be closed, so the pool stops searching.
+     *
+     * @param absoluteDir The absolute path for the directory
+     * @return Stream of picture file names that are in and under the provided directory
+     */
+    public Stream<String> streamFileNames(String absoluteDir) {
+        Path root = Paths.get(absoluteDir).toAbsolutePath();
+        if (this.parallelism > 1) {
+            ParallelFileNameSpliterator spliterator = new ParallelFileNameSpliterator(root);
+            this.getPool().execute(spliterator::search);
+            return StreamSupport.stream(spliterator, false).onClose(spliterator::cancel);
+        }
+        return StreamSupport.stream(new FileNameSpliterator(root), false);
+    }
 
-        if (files != null) {
-            for (File f : files) {
-                if (f.isDirectory()) {
-                    fileNames.addAll(getFileNames(f.getAbsolutePath()));
-                } else if (this.isPicture(f)) {
-                    fileNames.add(f.getAbsolutePath());
+    /**
+     * Adds the picture file names that are in and under directory to fileNames, searching
+     * one directory at a time
+     *
+     * @param directory           the directory to search
+     * @param fileNames           the list to add the picture file names to
+     * @param searchedDirectories the directories reached by the search so far
+     */
+    private void addFileNames(Path directory, ArrayList<String> fileNames, Set<String> searchedDirectories) {
+        DirectoryListing listing = this.listDirectory(directory, searchedDirectories);
+        fileNames.addAll(listing.pictures);
+        for (Path subdirectory : listing.subdirectories) {
+            this.addFileNames(subdirectory, fileNames, searchedDirectories);
+        }
+    }
+
+    /**
+     * Lists the pictures and sub-directories directly inside of directory, using the cached listing
+     * of directory instead if it has not been modified since it was cached.
+     *
+     * @param directory           the directory to list
+     * @param searchedDirectories the directories reached by the search so far, which directory is added to
+     * @return the pictures and sub-directories directly inside of directory
+     */
+    private DirectoryListing listDirectory(Path directory, Set<String> searchedDirectories) {
+        if (this.scanCache == null) {
+            return this.readDirectory(directory);
+        }
+        searchedDirectories.add(directory.toString());
+        long lastModified;
+        try {
+            // read before listing, so a change made while listing is noticed next time
+            lastModified = Files.getLastModifiedTime(directory).toMillis();
+        } catch (IOException | SecurityException e) {
+            return this.readDirectory(directory);
+        }
+
+        ScanCache.Entry cached = this.scanCache.get(directory.toString(), lastModified);
+        if (cached != null) {
+            DirectoryListing listing = new DirectoryListing();
+            for (String pictureName : cached.getPictureNames()) {
+                listing.pictures.add(directory.resolve(pictureName).toString());
+            }
+            for (String subdirectoryName : cached.getSubdirectoryNames()) {
+                listing.subdirectories.add(directory.resolve(subdirectoryName));
+            }
+            return listing;
+        }
+
+        DirectoryListing listing = this.readDirectory(directory);
+        ArrayList<String> pictureNames = new ArrayList<>();
+        for (String picture : listing.pictures) {
+            pictureNames.add(Paths.get(picture).getFileName().toString());
+        }
+        ArrayList<String> subdirectoryNames = new ArrayList<>();
+        for (Path subdirectory : listing.subdirectories) {
+            subdirectoryNames.add(subdirectory.getFileName().toString());
+        }
+        this.scanCache.put(directory.toString(), lastModified, pictureNames, subdirectoryNames);
+        return listing;
+    }
+
+    /**
+     * Lists the pictures and sub-directories directly inside of directory by reading the directory.
+     * A directory that can not be read, or that is a ThumbnailCache directory, is treated as empty.
+     *
+     * @param directory the directory to list
+     * @return the pictures and sub-directories directly inside of directory
+     */
+    private DirectoryListing readDirectory(Path directory) {
+        DirectoryListing listing = new DirectoryListing();
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+            for (Path entry : entries) {
+                boolean isDirectory;
+                try {
+                    // read the attributes in one call instead of separate exists/isDirectory checks
+                    isDirectory = Files.readAttributes(entry, BasicFileAttributes.class).isDirectory();
+                } catch (IOException e) {
+                    isDirectory = false;
+                }
+                if (isDirectory) {
+                    listing.subdirectories.add(entry);
+                } else if (entry.getFileName().toString().equals(ThumbnailCache.MARKER_NAME)) {
+                    // the thumbnails are copies of pictures shown elsewhere, not pictures of their own
+                    return new DirectoryListing();
+                } else if (this.isPicture(entry.getFileName().toString())) {
+                    listing.pictures.add(entry.toString());
                 }
             }
+        } catch (IOException | SecurityException e) {
+            // the directory can not be read, so there is nothing in it we can show
         }
-        return fileNames;
+        return listing;
     }
 
     /**
-     * Returns true iff file is a picture
+     * Returns the pool used to search directories in parallel, creating it if needed
      *
-     * @param file The file that is to be checked
+     * @return the work-stealing pool
+     */
+    private synchronized ForkJoinPool getPool() {
+        if (this.pool == null) {
+            this.pool = new ForkJoinPool(this.parallelism);
+        }
+        return this.pool;
+    }
+
+    /**
+     * Returns true iff the file with the name fileName is a picture
+     *
+     * @param fileName The name of the file that is to be checked
      * @return Returns true iff file is a picture
      */
-    private boolean isPicture(File file) {
-        String fileType = getFileType(file);
+    boolean isPicture(String fileName) {
+        String fileType = getFileType(fileName);
         for (String type : imageFileTypes) {
             if (fileType.equals(type)) {
                 return true;
@@ -61,16 +260,341 @@ public class FileSearcher {
     }
 
     /**
-     * Returns the file type of file
+     * Returns the file type of the file with the name fileName
      * Inspired from: https://stackoverflow.com/questions/25298691/how-to-check-the-file-type-in-java
      *
-     * @param file The file that is to be checked
+     * @param fileName The name of the file that is to be checked
      * @return Returns the file type of file
      */
-    private String getFileType(File file) {
-        String fileName = file.getName();
+    private String getFileType(String fileName) {
         int dot = fileName.lastIndexOf('.');
         return (dot == -1) ? "" : fileName.substring(dot + 1);
     }
 
+    /**
+     * The pictures and sub-directories directly inside of a directory
+     */
+    private static class DirectoryListing {
+
+        /**
+         * Absolute paths of the pictures directly inside of the directory
+         */
+        private ArrayList<String> pictures = new ArrayList<>();
+
+        /**
+         * The sub-directories directly inside of the directory
+         */
+        private ArrayList<Path> subdirectories = new ArrayList<>();
+    }
+
+    /**
+     * The pictures found in and under a directory, kept as a tree of per-directory results so that
+     * they can be copied into one list at the end instead of being merged at every level
+     */
+    private static class SearchResult {
+
+        /**
+         * Absolute paths of the pictures directly inside of the directory
+         */
+        private ArrayList<String> pictures;
+
+        /**
+         * The results of the sub-directories of the directory
+         */
+        private ArrayList<SearchResult> subdirectoryResults = new ArrayList<>();
+
+        /**
+         * Adds every picture in this result to fileNames in the same order a search of one
+         * directory at a time would find them
+         *
+         * @param fileNames the list to add the pictures to
+         */
+        private void addFileNamesTo(ArrayList<String> fileNames) {
+            fileNames.addAll(this.pictures);
+            for (SearchResult subdirectoryResult : this.subdirectoryResults) {
+                subdirectoryResult.addFileNamesTo(fileNames);
+            }
+        }
+    }
+
+    /**
+     * Produces the picture file names in and under a directory one at a time, listing the next
+     * directory only when the pictures of the previous ones have all been consumed
+     */
+    private class FileNameSpliterator extends Spliterators.AbstractSpliterator<String> {
+
+        /**
+         * The directories that still have to be listed, the next one on top
+         */
+        private ArrayDeque<Path> directoriesToList = new ArrayDeque<>();
+
+        /**
+         * The pictures of the last listed directory that have not been consumed yet
+         */
+        private ArrayDeque<String> pictures = new ArrayDeque<>();
+
+        /**
+         * The directory being searched
+         */
+        private Path root;
+
+        /**
+         * The directories reached by this search so far
+         */
+        private HashSet<String> searchedDirectories = new HashSet<>();
+
+        /**
+         * Creates a spliterator over the pictures in and under root
+         *
+         * @param root the directory to search
+         */
+        private FileNameSpliterator(Path root) {
+            super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.NONNULL);
+            this.root = root;
+            this.directoriesToList.push(root);
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super String> action) {
+            while (this.pictures.isEmpty()) {
+                if (this.directoriesToList.isEmpty()) {
+                    if (scanCache != null && this.root != null) {
+                        scanCache.finishSearch(this.root.toString(), this.searchedDirectories);
+                        // only finish the search once, even if tryAdvance is called again
+                        this.root = null;
+                    }
+                    return false;
+                }
+                DirectoryListing listing = listDirectory(this.directoriesToList.pop(), this.searchedDirectories);
+                this.pictures.addAll(listing.pictures);
+                // push in reverse so the first sub-directory is listed next, like a one at a time search
+                for (int i = listing.subdirectories.size() - 1; i >= 0; i--) {
+                    this.directoriesToList.push(listing.subdirectories.get(i));
+                }
+            }
+            action.accept(this.pictures.poll());
+            return true;
+        }
+    }
+
+    /**
+     * Produces the picture file names in and under a directory as the threads of the pool find them.
+     * The pictures of each directory are put on a bounded queue, which the Stream takes them from.
+     */
+    private class ParallelFileNameSpliterator extends Spliterators.AbstractSpliterator<String> {
+
+        /**
+         * The pictures of the directories listed and not yet taken by the Stream, each directory's
+         * pictures as one list. endOfSearch is put last.
+         */
+        private BlockingQueue<ArrayList<String>> listings = new ArrayBlockingQueue<>(STREAM_QUEUE_CAPACITY);
+
+        /**
+         * Put on listings once every directory has been searched
+         */
+        private final ArrayList<String> endOfSearch = new ArrayList<>();
+
+        /**
+         * The pictures of the last directory taken from listings that have not been consumed yet
+         */
+        private ArrayDeque<String> pictures = new ArrayDeque<>();
+
+        /**
+         * The directory being searched
+         */
+        private Path root;
+
+        /**
+         * The directories reached by this search so far, added to by every thread searching
+         */
+        private Set<String> searchedDirectories = ConcurrentHashMap.newKeySet();
+
+        /**
+         * Whether the Stream was closed, so the threads searching should stop
+         */
+        private volatile boolean cancelled = false;
+
+        /**
+         * Whether endOfSearch was taken from listings
+         */
+        private boolean finished = false;
+
+        /**
+         * Creates a spliterator over the pictures in and under root. The search only starts when
+         * search is run.
+         *
+         * @param root the directory to search
+         */
+        private ParallelFileNameSpliterator(Path root) {
+            super(Long.MAX_VALUE, Spliterator.DISTINCT | Spliterator.NONNULL);
+            this.root = root;
+        }
+
+        /**
+         * Searches root on the threads of the pool, putting the pictures found on listings.
+         * Run by the pool.
+         */
+        private void search() {
+            try {
+                new DirectoryStreamTask(this.root, this).invoke();
+                if (scanCache != null && !this.cancelled) {
+                    scanCache.finishSearch(this.root.toString(), this.searchedDirectories);
+                }
+            } finally {
+                this.put(this.endOfSearch);
+            }
+        }
+
+        /**
+         * Puts the pictures of a directory on listings, waiting while it is full
+         *
+         * @param directoryPictures the pictures of a directory
+         * @return true if they were put, false if the Stream was closed first
+         */
+        private boolean put(ArrayList<String> directoryPictures) {
+            try {
+                while (!this.cancelled) {
+                    if (this.listings.offer(directoryPictures, STREAM_WAIT_MILLIS, TimeUnit.MILLISECONDS)) {
+                        return true;
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                this.cancelled = true;
+            }
+            return false;
+        }
+
+        /**
+         * Stops the search, when the Stream is closed
+         */
+        private void cancel() {
+            this.cancelled = true;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super String> action) {
+            while (this.pictures.isEmpty()) {
+                if (this.finished) {
+                    return false;
+                }
+                ArrayList<String> directoryPictures;
+                try {
+                    directoryPictures = this.listings.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    this.cancel();
+                    return false;
+                }
+                if (directoryPictures == this.endOfSearch) {
+                    this.finished = true;
+                    return false;
+                }
+                this.pictures.addAll(directoryPictures);
+            }
+            action.accept(this.pictures.poll());
+            return true;
+        }
+    }
+
+    /**
+     * Searches a directory for a Stream, putting its pictures on the Stream's queue and forking a task
+     * for each of its sub-directories, so idle threads of the pool can steal them from busy ones
+     */
+    private class DirectoryStreamTask extends RecursiveAction {
+
+        /**
+         * The version of the serialized form of DirectoryStreamTask. ForkJoinTask is Serializable,
+         * but tasks are only ever run by the pool and never serialized.
+         */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * The directory this task searches
+         */
+        private Path directory;
+
+        /**
+         * The Stream the pictures found are for
+         */
+        private ParallelFileNameSpliterator spliterator;
+
+        /**
+         * Creates a task that searches directory for spliterator
+         *
+         * @param directory   the directory to search
+         * @param spliterator the Stream the pictures found are for
+         */
+        private DirectoryStreamTask(Path directory, ParallelFileNameSpliterator spliterator) {
+            this.directory = directory;
+            this.spliterator = spliterator;
+        }
+
+        @Override
+        protected void compute() {
+            if (this.spliterator.cancelled) {
+                return;
+            }
+            DirectoryListing listing = listDirectory(this.directory, this.spliterator.searchedDirectories);
+            if (!listing.pictures.isEmpty() && !this.spliterator.put(listing.pictures)) {
+                return;
+            }
+            ArrayList<DirectoryStreamTask> subtasks = new ArrayList<>();
+            for (Path subdirectory : listing.subdirectories) {
+                subtasks.add(new DirectoryStreamTask(subdirectory, this.spliterator));
+            }
+            invokeAll(subtasks);
+        }
+    }
+
+    /**
+     * Searches a directory and forks a task for each of its sub-directories, so idle threads of the
+     * pool can steal the search of sub-directories from busy ones
+     */
+    private class DirectorySearchTask extends RecursiveTask<SearchResult> {
+
+        /**
+         * The version of the serialized form of DirectorySearchTask. ForkJoinTask is Serializable,
+         * but tasks are only ever run by the pool and never serialized.
+         */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * The directory this task searches
+         */
+        private Path directory;
+
+        /**
+         * The directories reached by the search this task is part of, shared by all of its tasks
+         */
+        private Set<String> searchedDirectories;
+
+        /**
+         * Creates a task that searches directory
+         *
+         * @param directory           the directory to search
+         * @param searchedDirectories the directories reached by the search so far
+         */
+        private DirectorySearchTask(Path directory, Set<String> searchedDirectories) {
+            this.directory = directory;
+            this.searchedDirectories = searchedDirectories;
+        }
+
+        @Override
+        protected SearchResult compute() {
+            DirectoryListing listing = listDirectory(this.directory, this.searchedDirectories);
+            SearchResult result = new SearchResult();
+            result.pictures = listing.pictures;
+
+            ArrayList<DirectorySearchTask> subtasks = new ArrayList<>();
+            for (Path subdirectory : listing.subdirectories) {
+                subtasks.add(new DirectorySearchTask(subdirectory, this.searchedDirectories));
+            }
+            invokeAll(subtasks);
+            for (DirectorySearchTask subtask : subtasks) {
+                result.subdirectoryResults.add(subtask.join());
+            }
+            return result;
+        }
+    }
 }
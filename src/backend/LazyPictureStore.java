@@ -0,0 +1,239 @@
+package backend;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.TreeMap;
+
+/**
+ * A store file written by PictureStore, whose Pictures are read one directory at a time.
+ * <p>
+ * Opening the file only reads its string table and the footer, which gives the file offset of the
+ * Pictures of every directory. The bytes holding the Pictures of a directory are copied from the file the
+ * first time they are asked for, so opening a library takes the same time however many Pictures it holds.
+ * Each directory is read at most once: once read, its Pictures belong to the caller. The file is only
+ * open while it is being read (rather than kept mapped into memory, which Java can not undo on demand),
+ * so a checkpoint can replace it once every Picture has been read, on every system.
+ */
+public class LazyPictureStore {
+
+    /**
+     * The path of the store file
+     */
+    private String pathName;
+
+    /**
+     * The string table of the store file
+     */
+    private String[] strings;
+
+    /**
+     * Maps the directory (with its trailing separator) of every group that has not been read yet
+     * to the file offset and length in bytes of the group, in path order so the directories under a
+     * directory are adjacent. Offsets are longs, so store files larger than 2GB can be read.
+     */
+    private TreeMap<String, long[]> unreadGroups = new TreeMap<>();
+
+    /**
+     * The number of Pictures in the groups that have not been read yet
+     */
+    private int numOfUnreadPictures = 0;
+
+    /**
+     * Reads the string table and footer of the store file at pathName
+     *
+     * @param pathName the path of the store file
+     * @throws IOException when the file can not be read or is not a store file
+     */
+    private LazyPictureStore(String pathName) throws IOException {
+        this.pathName = pathName;
+        try (RandomAccessFile file = new RandomAccessFile(pathName, "r");
+             FileChannel channel = file.getChannel()) {
+            long size = channel.size();
+            long footerOffset = readBytes(channel, size - 8, 8).getLong();
+            if (footerOffset < 0 || footerOffset > size - 8) {
+                throw new IOException("The store file " + pathName + " is damaged");
+            }
+            ByteBuffer footer = readBytes(channel, footerOffset, size - 8 - footerOffset);
+            long numOfGroups = PictureStore.readVarint(footer);
+            if (numOfGroups < 0 || numOfGroups > footer.remaining()) {
+                throw new IOException("The store file " + pathName + " is damaged");
+            }
+            int[] directoryIds = new int[(int) numOfGroups];
+            long[] offsets = new long[(int) numOfGroups];
+            for (int i = 0; i < numOfGroups; i++) {
+                directoryIds[i] = (int) PictureStore.readVarint(footer);
+                this.numOfUnreadPictures += (int) PictureStore.readVarint(footer);
+                offsets[i] = PictureStore.readVarint(footer);
+            }
+            // the groups are written in the order of the footer, between the string table and the footer
+            long headerLength = (numOfGroups > 0) ? offsets[0] : footerOffset;
+            this.strings = PictureStore.readHeader(readBytes(channel, 0, headerLength));
+            for (int i = 0; i < numOfGroups; i++) {
+                long groupEnd = (i + 1 < numOfGroups) ? offsets[i + 1] : footerOffset;
+                if (offsets[i] < 0 || groupEnd < offsets[i] || groupEnd > footerOffset) {
+                    throw new IOException("The store file " + pathName + " is damaged");
+                }
+                this.unreadGroups.put(this.strings[directoryIds[i]], new long[]{offsets[i], groupEnd - offsets[i]});
+            }
+        }
+    }
+
+    /**
+     * Opens the store file at pathName. Returns null if the file is not a store file written by
+     * PictureStore (for example an empty file or a .ser file) or can not be read.
+     *
+     * @param pathName the path of the store file
+     * @return the opened store, or null
+     */
+    public static LazyPictureStore open(String pathName) {
+        if (!PictureStore.isStoreFile(pathName)) {
+            return null;
+        }
+        try {
+            return new LazyPictureStore(pathName);
+        } catch (IOException | RuntimeException e) {
+            System.out.println("Cannot read from input: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Reads the Pictures stored directly inside of directory, unless they were read already
+     *
+     * @param directory the path of the directory, with or without its trailing separator
+     * @return the Pictures read, empty if the directory was read already or has no Pictures
+     */
+    public ArrayList<Picture> readDirectory(String directory) {
+        ArrayList<Picture> pictures = new ArrayList<>();
+        String key = withSeparator(directory);
+        long[] group = this.unreadGroups.get(key);
+        if (group != null && this.readGroup(group, pictures)) {
+            this.unreadGroups.remove(key);
+        }
+        return pictures;
+    }
+
+    /**
+     * Reads the Pictures stored in directory and all of its sub-directories that were not read already
+     *
+     * @param directory the path of the directory
+     * @return the Pictures read
+     */
+    public ArrayList<Picture> readDirectoriesUnder(String directory) {
+        String prefix = withSeparator(directory);
+        // every directory under prefix starts with prefix, so they sort right after it
+        return this.readGroups(this.unreadGroups.subMap(prefix, prefix + Character.MAX_VALUE).values().iterator());
+    }
+
+    /**
+     * Reads every Picture that was not read already. A group that can not be read is left unread,
+     * so isFullyRead tells whether every Picture was read.
+     *
+     * @return the Pictures read
+     */
+    public ArrayList<Picture> readAll() {
+        return this.readGroups(this.unreadGroups.values().iterator());
+    }
+
+    /**
+     * Returns true iff every Picture in the store has been read
+     *
+     * @return true iff there is nothing left to read
+     */
+    public boolean isFullyRead() {
+        return this.unreadGroups.isEmpty();
+    }
+
+    /**
+     * Returns the number of Pictures that have not been read yet
+     *
+     * @return number of unread Pictures
+     */
+    public int getNumOfUnreadPictures() {
+        return this.numOfUnreadPictures;
+    }
+
+    /**
+     * Returns directory with a trailing separator, the way the directories of groups are stored
+     *
+     * @param directory the path of a directory
+     * @return directory ending with a separator
+     */
+    private static String withSeparator(String directory) {
+        return directory.endsWith(File.separator) ? directory : directory + File.separator;
+    }
+
+    /**
+     * Reads every group left in groups, removing each group that was read from it
+     *
+     * @param groups the groups to read, as their offset and length
+     * @return the Pictures read
+     */
+    private ArrayList<Picture> readGroups(Iterator<long[]> groups) {
+        ArrayList<Picture> pictures = new ArrayList<>();
+        while (groups.hasNext()) {
+            if (this.readGroup(groups.next(), pictures)) {
+                groups.remove();
+            }
+        }
+        return pictures;
+    }
+
+    /**
+     * Copies a group from the store file and adds its Pictures to pictures
+     *
+     * @param group    the file offset and length of the group
+     * @param pictures the list to add the Pictures to
+     * @return true if the group was read, false if the store file could not be read
+     */
+    private boolean readGroup(long[] group, ArrayList<Picture> pictures) {
+        ByteBuffer reader;
+        try (RandomAccessFile file = new RandomAccessFile(this.pathName, "r");
+             FileChannel channel = file.getChannel()) {
+            reader = readBytes(channel, group[0], group[1]);
+        } catch (IOException e) {
+            System.out.println("Cannot read from input: " + e.getMessage());
+            return false;
+        }
+        String directory = this.strings[(int) PictureStore.readVarint(reader)];
+        long groupSize = PictureStore.readVarint(reader);
+        for (long i = 0; i < groupSize; i++) {
+            pictures.add(PictureStore.readPicture(reader, directory, this.strings));
+        }
+        this.numOfUnreadPictures -= (int) groupSize;
+        return true;
+    }
+
+    /**
+     * Copies length bytes of channel, starting at position, into a buffer. Only the Pictures of one
+     * directory are read at a time, so length must fit into one buffer even when the file is larger.
+     *
+     * @param channel  the channel of the store file
+     * @param position the file offset of the first byte
+     * @param length   the number of bytes to copy
+     * @return a buffer holding the bytes
+     * @throws IOException when the bytes can not be read, or the file ends before them
+     */
+    private static ByteBuffer readBytes(FileChannel channel, long position, long length) throws IOException {
+        if (position < 0 || length < 0) {
+            throw new IOException("The store file is damaged");
+        }
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("The store file has a part of " + length + " bytes, too large to read at once");
+        }
+        ByteBuffer buffer = ByteBuffer.allocate((int) length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) == -1) {
+                throw new EOFException("The store file ends too soon");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+}
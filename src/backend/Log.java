@@ -2,39 +2,105 @@ package backend;
 
 import java.io.*;
 import java.util.ArrayList;
-import java.sql.Timestamp;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 import java.util.regex.Pattern;
 
 /**
  * A Log to keep track of changes made to Pictures
+ * <p>
+ * Every change is a LogEntry holding its time, the kind of change and the names and data path of the
+ * Picture. The entries are indexed by time and by the data path each change left the Picture at, so the
+ * newest entries, the entries in a time range, or the history of one Picture are found in time proportional
+ * to the number of entries returned. Queries return a page of entries at a time: the sequence of the
+ * last entry of a page is the cursor passed to get the next page.
+ * <p>
+ * Changes are appended to a SegmentedLogFile in the directory pathName + ".segments", so saving a
+ * change only writes that change instead of the whole history. A log.ser file written by an earlier
+ * version is moved into the segments the first time the Log is opened, and then deleted.
  */
 public class Log {
     /**
-     * An ArrayList to store all the changes made to Pictures
+     * Every change made to Pictures, in the order they were made. The sequence of an entry is its index.
      */
-    private ArrayList<String> logs = new ArrayList<>();
+    private ArrayList<LogEntry> entries = new ArrayList<>();
 
     /**
-     * The directory to the .ser file for Log including file name and extension
+     * Maps each time to the sequences of the entries made at that time
+     */
+    private TreeMap<Long, ArrayList<Integer>> timeIndex = new TreeMap<>();
+
+    /**
+     * Maps the data path a change left a Picture at to the sequences of the entries of those changes
+     */
+    private HashMap<String, ArrayList<Integer>> pictureIndex = new HashMap<>();
+
+    /**
+     * The entries that have not been appended to the segments yet
+     */
+    private ArrayList<LogEntry> unsavedEntries = new ArrayList<>();
+
+    /**
+     * The directory to the .ser file for Log including file name and extension. The segments are kept
+     * in the directory pathName + ".segments".
      */
     private String pathName;
 
     /**
-     * Constructs a new Log object
+     * The segments the changes are appended to
+     */
+    private SegmentedLogFile segments;
+
+    /**
+     * Schedules the writes of the segments for Log
+     */
+    private PersistenceScheduler scheduler;
+
+    /**
+     * Constructs a new Log object which appends every change to its segments straight away
      *
      * @param pathName the relative directory to the .ser file for this Log
      * @throws ClassNotFoundException Thrown when the class is not found
      * @throws IOException            Thrown when the file is not found
      */
     public Log(String pathName) throws ClassNotFoundException, IOException {
+        this(pathName, PersistenceScheduler.IMMEDIATE);
+    }
+
+    /**
+     * Constructs a new Log object
+     *
+     * @param pathName  the relative directory to the .ser file for this Log
+     * @param scheduler schedules the writes of the segments for this Log
+     * @throws ClassNotFoundException Thrown when the class is not found
+     * @throws IOException            Thrown when the file is not found
+     */
+    public Log(String pathName, PersistenceScheduler scheduler) throws ClassNotFoundException, IOException {
         this.pathName = pathName;
+        this.scheduler = scheduler;
+        this.segments = new SegmentedLogFile(pathName + ".segments");
+        for (byte[] record : this.segments.readRecords()) {
+            this.index(LogEntry.decode(record, this.entries.size()));
+        }
         boolean initializeResult = SerializableOperator.initializeFile(this.pathName);
         if (initializeResult) {
-            this.logs = (ArrayList<String>) SerializableOperator.readFile(pathName);
-        } else {
-            SerializableOperator.createFile(pathName, false);
+            // move the changes in the log.ser file of an earlier version into the segments, unless that
+            // was already done when the program stopped before the file could be deleted
+            if (this.entries.isEmpty()) {
+                for (Object text : SerializableOperator.readFile(pathName)) {
+                    LogEntry entry = LogEntry.fromText((String) text, this.entries.size());
+                    this.index(entry);
+                    this.unsavedEntries.add(entry);
+                }
+                if (!this.unsavedEntries.isEmpty()) {
+                    this.writeUnsavedEntries();
+                    this.segments.rotate();
+                }
+            }
+            new File(pathName).delete();
         }
-        SerializableOperator.saveFile(this.pathName, this.logs);
     }
 
     /**
@@ -45,9 +111,8 @@ public class Log {
      * @param prevName The previous name of the file
      * @param newName  The current name of the file
      */
-    public void addChange(String prevName, String newName) throws IOException {
-        logs.add(prevName + " -> " + newName + " " + new Timestamp(System.currentTimeMillis()));
-        SerializableOperator.saveFile(this.pathName, this.logs);
+    public synchronized void addChange(String prevName, String newName) throws IOException {
+        this.add(LogEntry.Operation.RENAMED, prevName, newName);
     }
 
     /**
@@ -57,11 +122,8 @@ public class Log {
      * @param dataPath Data path of the picture that has changed
      * @param newName  The new file name of the picture
      */
-    public void logAddedTag(String dataPath, String newName) {
-        String oldName = extractFileName(dataPath);
-        logs.add("Added tag(s): " + oldName + " ---> " + newName + " " +
-                new Timestamp(System.currentTimeMillis()));
-        SerializableOperator.saveFile(this.pathName, this.logs);
+    public synchronized void logAddedTag(String dataPath, String newName) {
+        this.add(LogEntry.Operation.ADDED_TAGS, dataPath, newName);
     }
 
     /**
@@ -71,11 +133,8 @@ public class Log {
      * @param dataPath Data path of the picture that has changed
      * @param newName  The new file name of the picture
      */
-    public void logRemovedTag(String dataPath, String newName) {
-        String oldName = extractFileName(dataPath);
-        logs.add("Removed tag(s): " + oldName + " ---> " + newName + " " +
-                new Timestamp(System.currentTimeMillis()));
-        SerializableOperator.saveFile(this.pathName, this.logs);
+    public synchronized void logRemovedTag(String dataPath, String newName) {
+        this.add(LogEntry.Operation.REMOVED_TAGS, dataPath, newName);
     }
 
     /**
@@ -85,20 +144,135 @@ public class Log {
      * @param dataPath Data path of the picture that has changed
      * @param newName  The file name changed to
      */
-    public void logChangedName(String dataPath, String newName) {
-        String oldName = extractFileName(dataPath);
-        logs.add("Name of picture reverted: " + oldName + " ---> " + newName + " " +
-                new Timestamp(System.currentTimeMillis()));
-        SerializableOperator.saveFile(this.pathName, this.logs);
+    public synchronized void logChangedName(String dataPath, String newName) {
+        this.add(LogEntry.Operation.REVERTED_NAME, dataPath, newName);
     }
 
     /**
-     * A getter for logs
+     * Adds a log entry like logAddedTag for each Picture of a batch, which are appended to the
+     * segments together
+     *
+     * @param dataPaths Data paths of the pictures that have changed
+     * @param newNames  The new file name of each picture
+     */
+    public synchronized void logAddedTags(List<String> dataPaths, List<String> newNames) {
+        this.addAll(LogEntry.Operation.ADDED_TAGS, dataPaths, newNames);
+    }
+
+    /**
+     * Adds a log entry like logRemovedTag for each Picture of a batch, which are appended to the
+     * segments together
+     *
+     * @param dataPaths Data paths of the pictures that have changed
+     * @param newNames  The new file name of each picture
+     */
+    public synchronized void logRemovedTags(List<String> dataPaths, List<String> newNames) {
+        this.addAll(LogEntry.Operation.REMOVED_TAGS, dataPaths, newNames);
+    }
+
+    /**
+     * A getter for logs. Builds the text of every entry, so getLatestEntries should be used where only
+     * part of the log is needed.
      *
      * @return the contents of log in an ArrayList
      */
-    public ArrayList<String> getLogList() {
-        return this.logs;
+    public synchronized ArrayList<String> getLogList() {
+        ArrayList<String> logs = new ArrayList<>(this.entries.size());
+        for (LogEntry entry : this.entries) {
+            logs.add(entry.toString());
+        }
+        return logs;
+    }
+
+    /**
+     * Returns the number of entries in the log
+     *
+     * @return number of entries
+     */
+    public synchronized int size() {
+        return this.entries.size();
+    }
+
+    /**
+     * Returns up to limit entries made before the entry with sequence before, newest first
+     *
+     * @param limit  the largest number of entries to return
+     * @param before the cursor: the sequence of the last entry of the previous page, or Long.MAX_VALUE
+     *               for the first page
+     * @return the page of entries
+     */
+    public synchronized ArrayList<LogEntry> getLatestEntries(int limit, long before) {
+        ArrayList<LogEntry> page = new ArrayList<>();
+        int sequence = (int) Math.min(before, this.entries.size()) - 1;
+        while (sequence >= 0 && page.size() < limit) {
+            page.add(this.entries.get(sequence));
+            sequence--;
+        }
+        return page;
+    }
+
+    /**
+     * Returns up to limit entries made from fromMillis (inclusive) to toMillis (exclusive), oldest first,
+     * starting after the entry with sequence after
+     *
+     * @param fromMillis the start of the time range in milliseconds since the epoch
+     * @param toMillis   the end of the time range in milliseconds since the epoch
+     * @param limit      the largest number of entries to return
+     * @param after      the cursor: the sequence of the last entry of the previous page, or -1 for the first page
+     * @return the page of entries
+     */
+    public synchronized ArrayList<LogEntry> getEntriesBetween(long fromMillis, long toMillis, int limit, long after) {
+        ArrayList<LogEntry> page = new ArrayList<>();
+        long cursorMillis = Long.MIN_VALUE;
+        if (after >= 0 && after < this.entries.size()) {
+            // resume at the time of the last entry returned
+            cursorMillis = this.entries.get((int) after).getTimeMillis();
+            fromMillis = Math.max(fromMillis, cursorMillis);
+        }
+        if (fromMillis >= toMillis) {
+            return page;
+        }
+        for (Map.Entry<Long, ArrayList<Integer>> time : this.timeIndex.subMap(fromMillis, toMillis).entrySet()) {
+            for (int sequence : time.getValue()) {
+                if (page.size() == limit) {
+                    return page;
+                }
+                // entries made at the time of the cursor are returned in order of sequence
+                if (time.getKey() != cursorMillis || sequence > after) {
+                    page.add(this.entries.get(sequence));
+                }
+            }
+        }
+        return page;
+    }
+
+    /**
+     * Returns up to limit entries of the changes that led the Picture to dataPath, newest first. The
+     * history is followed back through the names the Picture had before, starting before the entry
+     * with sequence before.
+     *
+     * @param dataPath the data path of the Picture
+     * @param limit    the largest number of entries to return
+     * @param before   the cursor: the sequence of the last entry of the previous page, or Long.MAX_VALUE
+     *                 for the first page
+     * @return the page of entries
+     */
+    public synchronized ArrayList<LogEntry> getHistory(String dataPath, int limit, long before) {
+        ArrayList<LogEntry> page = new ArrayList<>();
+        if (before >= 0 && before < this.entries.size()) {
+            // resume at the data path the Picture had before the last entry returned
+            dataPath = this.entries.get((int) before).getDataPath();
+        }
+        while (page.size() < limit) {
+            LogEntry entry = this.findLatestChangeTo(dataPath, before);
+            if (entry == null) {
+                break;
+            }
+            page.add(entry);
+            before = entry.getSequence();
+            dataPath = entry.getDataPath();
+        }
+        return page;
     }
 
     /**
@@ -114,4 +288,106 @@ public class Log {
         String[] dataPathComponents = dataPath.split(pathSplitRegex);
         return dataPathComponents[dataPathComponents.length - 1];
     }
+
+    /**
+     * Getter for the segments instance variable
+     *
+     * @return the segments the changes are appended to
+     */
+    public SegmentedLogFile getSegments() {
+        return this.segments;
+    }
+
+    /**
+     * Returns the newest entry made before the entry with sequence before that left a Picture at dataPath
+     *
+     * @param dataPath the data path the change left the Picture at
+     * @param before   only entries with a smaller sequence are considered
+     * @return the entry, or null if there is none
+     */
+    private LogEntry findLatestChangeTo(String dataPath, long before) {
+        ArrayList<Integer> sequences = this.pictureIndex.get(dataPath);
+        if (sequences == null) {
+            return null;
+        }
+        for (int i = sequences.size() - 1; i >= 0; i--) {
+            if (sequences.get(i) < before) {
+                return this.entries.get(sequences.get(i));
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Adds a new entry for a change made now and asks the scheduler to append it to the segments
+     *
+     * @param operation the kind of change
+     * @param dataPath  the data path of the Picture before the change
+     * @param newName   the file name of the Picture after the change
+     */
+    private void add(LogEntry.Operation operation, String dataPath, String newName) {
+        LogEntry entry = new LogEntry(this.entries.size(), System.currentTimeMillis(), operation, dataPath,
+                this.extractFileName(dataPath), newName);
+        this.index(entry);
+        this.unsavedEntries.add(entry);
+        this.scheduler.markDirty(this.pathName, this::writeUnsavedEntries);
+    }
+
+    /**
+     * Adds a new entry for each change of a batch made now and asks the scheduler to append them to
+     * the segments, which is done with a single write
+     *
+     * @param operation the kind of change
+     * @param dataPaths the data path of each Picture before the change
+     * @param newNames  the file name of each Picture after the change
+     */
+    private void addAll(LogEntry.Operation operation, List<String> dataPaths, List<String> newNames) {
+        long timeMillis = System.currentTimeMillis();
+        for (int i = 0; i < dataPaths.size(); i++) {
+            LogEntry entry = new LogEntry(this.entries.size(), timeMillis, operation, dataPaths.get(i),
+                    this.extractFileName(dataPaths.get(i)), newNames.get(i));
+            this.index(entry);
+            this.unsavedEntries.add(entry);
+        }
+        if (!dataPaths.isEmpty()) {
+            this.scheduler.markDirty(this.pathName, this::writeUnsavedEntries);
+        }
+    }
+
+    /**
+     * Adds entry, whose sequence is the number of entries so far, to entries and the indexes
+     *
+     * @param entry the entry to add
+     */
+    private void index(LogEntry entry) {
+        int sequence = this.entries.size();
+        this.entries.add(entry);
+        ArrayList<Integer> sameTime = this.timeIndex.get(entry.getTimeMillis());
+        if (sameTime == null) {
+            sameTime = new ArrayList<>(1);
+            this.timeIndex.put(entry.getTimeMillis(), sameTime);
+        }
+        sameTime.add(sequence);
+        String newDataPath = entry.getNewDataPath();
+        ArrayList<Integer> samePicture = this.pictureIndex.get(newDataPath);
+        if (samePicture == null) {
+            samePicture = new ArrayList<>(1);
+            this.pictureIndex.put(newDataPath, samePicture);
+        }
+        samePicture.add(sequence);
+    }
+
+    /**
+     * Appends the entries that have not been saved yet to the segments with a single write
+     */
+    private void writeUnsavedEntries() {
+        ArrayList<byte[]> records = new ArrayList<>();
+        synchronized (this) {
+            for (LogEntry entry : this.unsavedEntries) {
+                records.add(entry.encode());
+            }
+            this.unsavedEntries.clear();
+        }
+        this.segments.append(records);
+    }
 }
@@ -0,0 +1,286 @@
+package backend;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A change made to a Picture, as recorded in the Log
+ */
+public class LogEntry {
+
+    /**
+     * The kinds of change recorded in the Log
+     */
+    public enum Operation {
+        /**
+         * Tags were added to a Picture
+         */
+        ADDED_TAGS("Added tag(s)"),
+
+        /**
+         * Tags were removed from a Picture
+         */
+        REMOVED_TAGS("Removed tag(s)"),
+
+        /**
+         * A Picture was given one of its previous names
+         */
+        REVERTED_NAME("Name of picture reverted"),
+
+        /**
+         * A Picture was renamed by Log.addChange
+         */
+        RENAMED(null),
+
+        /**
+         * An entry written by an earlier version that could not be understood; its text is kept as the old name
+         */
+        OTHER(null);
+
+        /**
+         * The words the entry starts with when it is shown, or null if it has none
+         */
+        private final String label;
+
+        /**
+         * Creates an Operation shown with label
+         *
+         * @param label the words the entry starts with when it is shown
+         */
+        Operation(String label) {
+            this.label = label;
+        }
+    }
+
+    /**
+     * The first byte of an encoded LogEntry, which no entry written as text by an earlier version starts with
+     */
+    private static final byte ENCODING_MARKER = 0;
+
+    /**
+     * The version of the encoding written by encode
+     */
+    private static final byte ENCODING_VERSION = 1;
+
+    /**
+     * Matches an entry written as text by an earlier version for one of the labeled operations
+     */
+    private static final Pattern LABELED_TEXT =
+            Pattern.compile("(.+?): (.*) ---> (.*) (\\d{4}-\\d{2}-\\d{2} \\d{2}:\\d{2}:\\d{2}(?:\\.\\d{1,9})?)");
+
+    /**
+     * Matches an entry written as text by an earlier version of Log.addChange
+     */
+    private static final Pattern RENAMED_TEXT =
+            Pattern.compile("(.*) -> (.*) (\\d{4}-\\d{2}-\\d{2} \\d{2}:\\d{2}:\\d{2}(?:\\.\\d{1,9})?)");
+
+    /**
+     * The position of the entry in the Log, counting from 0. Used as the cursor of paged queries.
+     */
+    private long sequence;
+
+    /**
+     * The time of the change in milliseconds since the epoch
+     */
+    private long timeMillis;
+
+    /**
+     * The kind of change
+     */
+    private Operation operation;
+
+    /**
+     * The data path of the Picture before the change. Only the old name for entries written by an
+     * earlier version, which did not record the directory.
+     */
+    private String dataPath;
+
+    /**
+     * The file name of the Picture before the change
+     */
+    private String oldName;
+
+    /**
+     * The file name of the Picture after the change
+     */
+    private String newName;
+
+    /**
+     * Creates a new LogEntry
+     *
+     * @param sequence   the position of the entry in the Log
+     * @param timeMillis the time of the change in milliseconds since the epoch
+     * @param operation  the kind of change
+     * @param dataPath   the data path of the Picture before the change
+     * @param oldName    the file name of the Picture before the change
+     * @param newName    the file name of the Picture after the change
+     */
+    public LogEntry(long sequence, long timeMillis, Operation operation, String dataPath, String oldName,
+                    String newName) {
+        this.sequence = sequence;
+        this.timeMillis = timeMillis;
+        this.operation = operation;
+        this.dataPath = dataPath;
+        this.oldName = oldName;
+        this.newName = newName;
+    }
+
+    /**
+     * Getter for the sequence instance variable
+     *
+     * @return the position of the entry in the Log
+     */
+    public long getSequence() {
+        return this.sequence;
+    }
+
+    /**
+     * Getter for the timeMillis instance variable
+     *
+     * @return the time of the change in milliseconds since the epoch
+     */
+    public long getTimeMillis() {
+        return this.timeMillis;
+    }
+
+    /**
+     * Getter for the operation instance variable
+     *
+     * @return the kind of change
+     */
+    public Operation getOperation() {
+        return this.operation;
+    }
+
+    /**
+     * Getter for the dataPath instance variable
+     *
+     * @return the data path of the Picture before the change
+     */
+    public String getDataPath() {
+        return this.dataPath;
+    }
+
+    /**
+     * Getter for the oldName instance variable
+     *
+     * @return the file name of the Picture before the change
+     */
+    public String getOldName() {
+        return this.oldName;
+    }
+
+    /**
+     * Getter for the newName instance variable
+     *
+     * @return the file name of the Picture after the change
+     */
+    public String getNewName() {
+        return this.newName;
+    }
+
+    /**
+     * Returns the data path of the Picture after the change
+     *
+     * @return the directory of dataPath followed by newName
+     */
+    public String getNewDataPath() {
+        return this.dataPath.substring(0, this.dataPath.lastIndexOf(File.separatorChar) + 1) + this.newName;
+    }
+
+    /**
+     * Returns the entry in the format it has always been shown in, ie/
+     * Added tag(s): (old name) ---> (new name) (timestamp)
+     *
+     * @return the entry as text
+     */
+    @Override
+    public String toString() {
+        if (this.operation == Operation.OTHER) {
+            return this.oldName;
+        }
+        String timestamp = new Timestamp(this.timeMillis).toString();
+        if (this.operation == Operation.RENAMED) {
+            return this.oldName + " -> " + this.newName + " " + timestamp;
+        }
+        return this.operation.label + ": " + this.oldName + " ---> " + this.newName + " " + timestamp;
+    }
+
+    /**
+     * Encodes the entry (without its sequence, which is its position in the Log) to be stored in a segment
+     *
+     * @return the encoded entry
+     */
+    byte[] encode() {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream output = new DataOutputStream(bytes);
+            output.writeByte(ENCODING_MARKER);
+            output.writeByte(ENCODING_VERSION);
+            output.writeLong(this.timeMillis);
+            output.writeByte(this.operation.ordinal());
+            output.writeUTF(this.dataPath);
+            output.writeUTF(this.oldName);
+            output.writeUTF(this.newName);
+            output.close();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            // writing to a byte array can not fail
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Decodes an entry stored in a segment, which is either encoded by encode or the text of an entry
+     * written by an earlier version
+     *
+     * @param record   the stored entry
+     * @param sequence the position of the entry in the Log
+     * @return the entry
+     */
+    static LogEntry decode(byte[] record, long sequence) {
+        if (record.length < 2 || record[0] != ENCODING_MARKER) {
+            return fromText(new String(record, StandardCharsets.UTF_8), sequence);
+        }
+        try (DataInputStream input = new DataInputStream(new ByteArrayInputStream(record, 2, record.length - 2))) {
+            long timeMillis = input.readLong();
+            Operation operation = Operation.values()[input.readByte()];
+            return new LogEntry(sequence, timeMillis, operation, input.readUTF(), input.readUTF(), input.readUTF());
+        } catch (IOException | RuntimeException e) {
+            return new LogEntry(sequence, 0, Operation.OTHER, "", "Unreadable log entry", "");
+        }
+    }
+
+    /**
+     * Parses the text of an entry written by an earlier version of Log
+     *
+     * @param text     the text of the entry
+     * @param sequence the position of the entry in the Log
+     * @return the entry, with operation OTHER if the text could not be parsed
+     */
+    static LogEntry fromText(String text, long sequence) {
+        Matcher labeled = LABELED_TEXT.matcher(text);
+        if (labeled.matches()) {
+            for (Operation operation : Operation.values()) {
+                if (labeled.group(1).equals(operation.label)) {
+                    return new LogEntry(sequence, Timestamp.valueOf(labeled.group(4)).getTime(), operation,
+                            labeled.group(2), labeled.group(2), labeled.group(3));
+                }
+            }
+        }
+        Matcher renamed = RENAMED_TEXT.matcher(text);
+        if (renamed.matches()) {
+            return new LogEntry(sequence, Timestamp.valueOf(renamed.group(3)).getTime(), Operation.RENAMED,
+                    renamed.group(1), renamed.group(1), renamed.group(2));
+        }
+        return new LogEntry(sequence, 0, Operation.OTHER, "", text, "");
+    }
+}
@@ -0,0 +1,153 @@
+package backend;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * A set of Picture ordinals that is stored as a sorted array while it is sparse and as a bitmap once
+ * it is dense, like a container of a roaring bitmap.
+ * <p>
+ * A bitmap takes one bit for every ordinal up to the largest one in the set, so a rare tag on a Picture
+ * with a large ordinal would cost kilobytes for a single Picture. The sorted array takes 4 bytes per
+ * ordinal instead, and the set switches to a bitmap only when that is the smaller of the two.
+ */
+class OrdinalSet {
+
+    /**
+     * The fewest ordinals a set holds before it may become a bitmap, so small sets never switch back and forth
+     */
+    static final int MIN_DENSE_SIZE = 64;
+
+    /**
+     * The ordinals in the set in increasing order, in the first size elements. Null while the set is a bitmap.
+     */
+    private int[] values = new int[4];
+
+    /**
+     * The ordinals in the set. Null while the set is a sorted array.
+     */
+    private BitSet bits;
+
+    /**
+     * The number of ordinals in the set
+     */
+    private int size = 0;
+
+    /**
+     * Adds ordinal to the set
+     *
+     * @param ordinal the ordinal to add
+     */
+    void add(int ordinal) {
+        if (this.bits != null) {
+            if (!this.bits.get(ordinal)) {
+                this.bits.set(ordinal);
+                this.size++;
+            }
+            return;
+        }
+        int index = Arrays.binarySearch(this.values, 0, this.size, ordinal);
+        if (index >= 0) {
+            return;
+        }
+        index = -index - 1;
+        if (this.size == this.values.length) {
+            this.values = Arrays.copyOf(this.values, this.size * 2);
+        }
+        System.arraycopy(this.values, index, this.values, index + 1, this.size - index);
+        this.values[index] = ordinal;
+        this.size++;
+        // a bitmap takes (largest ordinal + 1) / 8 bytes, the array takes 4 bytes per ordinal
+        if (this.size >= MIN_DENSE_SIZE && this.size * 32L > this.values[this.size - 1] + 1L) {
+            this.bits = new BitSet(this.values[this.size - 1] + 1);
+            for (int i = 0; i < this.size; i++) {
+                this.bits.set(this.values[i]);
+            }
+            this.values = null;
+        }
+    }
+
+    /**
+     * Removes ordinal from the set
+     *
+     * @param ordinal the ordinal to remove
+     */
+    void remove(int ordinal) {
+        if (this.bits != null) {
+            if (this.bits.get(ordinal)) {
+                this.bits.clear(ordinal);
+                this.size--;
+            }
+            // switch back at half the size it switched at, so a set on the border does not keep switching
+            if (this.size < MIN_DENSE_SIZE / 2 || this.size * 64L < this.bits.length()) {
+                this.values = new int[Math.max(4, this.size)];
+                int i = 0;
+                for (int next = this.bits.nextSetBit(0); next >= 0; next = this.bits.nextSetBit(next + 1)) {
+                    this.values[i++] = next;
+                }
+                this.bits = null;
+            }
+            return;
+        }
+        int index = Arrays.binarySearch(this.values, 0, this.size, ordinal);
+        if (index >= 0) {
+            System.arraycopy(this.values, index + 1, this.values, index, this.size - index - 1);
+            this.size--;
+        }
+    }
+
+    /**
+     * Returns whether ordinal is in the set
+     *
+     * @param ordinal the ordinal to look for
+     * @return true if ordinal is in the set
+     */
+    boolean contains(int ordinal) {
+        if (this.bits != null) {
+            return this.bits.get(ordinal);
+        }
+        return Arrays.binarySearch(this.values, 0, this.size, ordinal) >= 0;
+    }
+
+    /**
+     * Returns the number of ordinals in the set
+     *
+     * @return the size of the set
+     */
+    int size() {
+        return this.size;
+    }
+
+    /**
+     * Returns the ordinals in the set as a new bitmap, which may be modified by the caller
+     *
+     * @return a bitmap of the ordinals in the set
+     */
+    BitSet toBitSet() {
+        if (this.bits != null) {
+            return (BitSet) this.bits.clone();
+        }
+        BitSet result = new BitSet((this.size == 0) ? 0 : this.values[this.size - 1] + 1);
+        for (int i = 0; i < this.size; i++) {
+            result.set(this.values[i]);
+        }
+        return result;
+    }
+
+    /**
+     * Removes from result every ordinal that is not in this set
+     *
+     * @param result the bitmap to intersect with this set
+     */
+    void retainIn(BitSet result) {
+        if (this.bits != null) {
+            result.and(this.bits);
+            return;
+        }
+        for (int next = result.nextSetBit(0); next >= 0; next = result.nextSetBit(next + 1)) {
+            if (Arrays.binarySearch(this.values, 0, this.size, next) < 0) {
+                result.clear(next);
+            }
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package backend;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Schedules the writes of the program's .ser files.
+ * <p>
+ * Instead of saving a store on the caller's thread every time it changes, the store marks itself
+ * dirty here with the task that writes it. All writes requested for the same file within
+ * maxStalenessMillis are coalesced into one, which is run on a background thread. A file is therefore
+ * never more than maxStalenessMillis older than the state it saves (plus the time to write it).
+ * <p>
+ * Writers run on the background thread, so a store must make its writer safe to run concurrently
+ * with its own methods (for example by synchronizing both on the store).
+ */
+public class PersistenceScheduler {
+
+    /**
+     * A scheduler that runs every write straight away on the caller's thread. This is what a store
+     * uses when it is not given a scheduler, and matches saving the .ser file on every change.
+     */
+    public static final PersistenceScheduler IMMEDIATE = new PersistenceScheduler(0, false);
+
+    /**
+     * The longest time in milliseconds that a write may be delayed so it can be coalesced with later ones.
+     * Zero means every write happens straight away on the caller's thread.
+     */
+    private long maxStalenessMillis;
+
+    /**
+     * The writes that have been requested but not run yet, keyed by the path of the file they write
+     */
+    private LinkedHashMap<String, Runnable> pendingWrites = new LinkedHashMap<>();
+
+    /**
+     * The background thread that runs the pending writes. Null when maxStalenessMillis is zero.
+     */
+    private ScheduledExecutorService flusher;
+
+    /**
+     * Whether a flush of the pending writes is already scheduled on the flusher
+     */
+    private boolean flushScheduled = false;
+
+    /**
+     * Whether close has been called. Writes requested after closing run straight away.
+     */
+    private boolean closed = false;
+
+    /**
+     * Held while pending writes are being run so that two flushes never write at the same time
+     */
+    private final Object flushLock = new Object();
+
+    /**
+     * The thread registered to flush the pending writes when the program exits, if any
+     */
+    private Thread shutdownHook;
+
+    /**
+     * Creates a new PersistenceScheduler
+     *
+     * @param maxStalenessMillis the longest time in milliseconds a write may be delayed, zero to write straight away
+     * @param flushOnExit        whether the pending writes are forced to disk when the program exits
+     */
+    public PersistenceScheduler(long maxStalenessMillis, boolean flushOnExit) {
+        this.maxStalenessMillis = maxStalenessMillis;
+        if (maxStalenessMillis > 0) {
+            this.flusher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "persistence-flusher");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        if (flushOnExit) {
+            this.shutdownHook = new Thread(this::flush, "persistence-shutdown-flush");
+            Runtime.getRuntime().addShutdownHook(this.shutdownHook);
+        }
+    }
+
+    /**
+     * Marks the file at pathName as changed. writer will be run to save it no later than
+     * maxStalenessMillis from now, replacing any write of the same file that has not run yet.
+     *
+     * @param pathName the path of the file that changed
+     * @param writer   the task that saves the file
+     */
+    public void markDirty(String pathName, Runnable writer) {
+        synchronized (this) {
+            if (this.flusher != null && !this.closed) {
+                this.pendingWrites.put(pathName, writer);
+                if (!this.flushScheduled) {
+                    this.flushScheduled = true;
+                    this.flusher.schedule(this::flush, this.maxStalenessMillis, TimeUnit.MILLISECONDS);
+                }
+                return;
+            }
+        }
+        // Not delaying writes, so save the file straight away
+        writer.run();
+    }
+
+    /**
+     * Runs every pending write on the caller's thread and waits for them to finish
+     */
+    public void flush() {
+        synchronized (this.flushLock) {
+            ArrayList<Runnable> writes;
+            synchronized (this) {
+                writes = new ArrayList<>(this.pendingWrites.values());
+                this.pendingWrites.clear();
+                this.flushScheduled = false;
+            }
+            for (Runnable write : writes) {
+                try {
+                    write.run();
+                } catch (RuntimeException e) {
+                    System.out.println("Unable to save file: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Flushes every pending write and stops the background thread. Writes requested after
+     * closing are run straight away on the caller's thread.
+     */
+    public void close() {
+        synchronized (this) {
+            this.closed = true;
+        }
+        this.flush();
+        if (this.flusher != null) {
+            this.flusher.shutdown();
+        }
+        if (this.shutdownHook != null) {
+            try {
+                Runtime.getRuntime().removeShutdownHook(this.shutdownHook);
+            } catch (IllegalStateException e) {
+                // the program is already exiting, so the hook is running or has run
+            }
+            this.shutdownHook = null;
+        }
+    }
+
+    /**
+     * Returns the number of files with a write that has not run yet
+     *
+     * @return the number of pending writes
+     */
+    public synchronized int getNumOfPendingWrites() {
+        return this.pendingWrites.size();
+    }
+
+    /**
+     * Getter for the maxStalenessMillis instance variable
+     *
+     * @return the longest time in milliseconds a write may be delayed
+     */
+    public long getMaxStalenessMillis() {
+        return this.maxStalenessMillis;
+    }
+}
@@ -3,41 +3,82 @@ package backend;
 import java.util.ArrayList;
 import java.io.File;
 import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
+import java.util.Arrays;
 import java.util.regex.Pattern;
 import java.io.Serializable;
 
 /**
  * A picture
+ * <p>
+ * To keep the memory used by a large library small, a Picture does not hold its full data path. The
+ * directory part of the path is shared by every Picture in the same directory through a table of
+ * directories, and the Picture only keeps the id of its directory and its own file name. Tags are
+ * kept as their ids in the dictionary of tags owned by Tag, and the list of previous file names is only
+ * created once the Picture is renamed. A Picture is still serialized with the fields it had before, so existing .ser
+ * files can be read.
  */
 public class Picture implements Serializable {
 
     /**
-     * The directory that Picture is in with file name and extension
-     * ie/ C:/Users/Calvin/Documents/SomePicture @Person @Person2.jpeg (for windows)
+     * The version of the serialized form of Picture, which has not changed since the first release
      */
-    private String dataPath;
+    private static final long serialVersionUID = -1396616893376612991L;
+
+    /**
+     * The fields a Picture is serialized with
+     */
+    private static final ObjectStreamField[] serialPersistentFields = {
+            new ObjectStreamField("dataPath", String.class),
+            new ObjectStreamField("prevFileNames", ArrayList.class),
+            new ObjectStreamField("attachedTags", ArrayList.class),
+            new ObjectStreamField("name", String.class),
+            new ObjectStreamField("originalName", String.class)
+    };
+
+    /**
+     * The directories of all Pictures, each including its trailing separator
+     * ie/ C:/Users/Calvin/Documents/ (for windows)
+     */
+    private static final StringTable DIRECTORIES = new StringTable();
+
+    /**
+     * The tags of a Picture without tags
+     */
+    private static final int[] NO_TAGS = new int[0];
+
+    /**
+     * The id in DIRECTORIES of the directory that Picture is in. The data path of the Picture is this
+     * directory followed by name.
+     */
+    private transient int directoryId;
 
     /**
      * ArrayList of all previous file names (tags and extension included) for this Picture.
      * ie/ [Calvin Lu.png, Calvin Lu @canProgram.png]
+     * Null until the Picture has a previous file name.
      */
-    private ArrayList<String> prevFileNames = new ArrayList<>();
+    private transient ArrayList<String> prevFileNames;
 
     /**
-     * ArrayList of all tags currently attached to this Picture (all tags are unique)
+     * The ids (from Tag.getTagId) of all tags currently attached to this Picture (all tags are unique),
+     * in the order they were attached. The order is kept since the tags appear in name in that order.
      */
-    private ArrayList<String> attachedTags = new ArrayList<>();
+    private transient int[] attachedTagIds = NO_TAGS;
 
     /**
      * File name of the Picture object with tags and extension
      * ie/ bob @gg @ww @qq.jpeg
      */
-    private String name;
+    private transient String name;
 
     /**
-     * The original file name without the tags (includes extension)
+     * The original file name without the tags (includes extension). The same String as name
+     * while the Picture has its original name.
      */
-    private String originalName;
+    private transient String originalName;
 
     /**
      * Constructs a new Picture object.
@@ -45,18 +86,52 @@ public class Picture implements Serializable {
      * @param dataPath The data path that leads to the Picture file with file name and extension
      */
     public Picture(String dataPath) {
-        this.dataPath = dataPath;
-        this.name = extractName(dataPath);
+        this.setDataPath(dataPath);
         this.originalName = this.name;
     }
 
+    /**
+     * Constructs a Picture object whose file has already been renamed from its original name.
+     *
+     * @param dataPath     The data path that leads to the Picture file with file name and extension
+     * @param originalName The original file name without the tags (includes extension)
+     */
+    public Picture(String dataPath, String originalName) {
+        this.setDataPath(dataPath);
+        this.originalName = originalName.equals(this.name) ? this.name : originalName;
+    }
+
+    /**
+     * Constructs a Picture read from a picture store, whose Strings are already shared with the
+     * other Pictures read from the store
+     *
+     * @param directoryPrefix the directory the Picture is in, including its trailing separator
+     * @param name            the file name of the Picture with tags and extension
+     * @param originalName    the original file name without the tags (includes extension)
+     * @param attachedTags    the tags attached to the Picture, in the order they were attached
+     * @param prevFileNames   the previous file names of the Picture, or null if it has none
+     */
+    Picture(String directoryPrefix, String name, String originalName, String[] attachedTags,
+            ArrayList<String> prevFileNames) {
+        this.directoryId = DIRECTORIES.getId(directoryPrefix);
+        this.name = name;
+        this.originalName = originalName.equals(name) ? name : originalName;
+        if (attachedTags.length > 0) {
+            this.attachedTagIds = new int[attachedTags.length];
+            for (int i = 0; i < attachedTags.length; i++) {
+                this.attachedTagIds[i] = Tag.getTagId(attachedTags[i]);
+            }
+        }
+        this.prevFileNames = prevFileNames;
+    }
+
     /**
      * Getter for prevFileNames instance variable
      *
      * @return ArrayList of all previous file names this picture had (includes tags and extension)
      */
     public ArrayList<String> getPrevFileNames() {
-        return this.prevFileNames;
+        return (this.prevFileNames == null) ? new ArrayList<String>() : new ArrayList<>(this.prevFileNames);
     }
 
     /**
@@ -65,7 +140,40 @@ public class Picture implements Serializable {
      * @return ArrayList of tags currently attached to this Picture
      */
     public ArrayList<String> getAttachedTags() {
-        return this.attachedTags;
+        ArrayList<String> attachedTags = new ArrayList<>(this.attachedTagIds.length);
+        for (int id : this.attachedTagIds) {
+            attachedTags.add(Tag.getTagWithId(id));
+        }
+        return attachedTags;
+    }
+
+    /**
+     * Returns the ids (from Tag.getTagId) of the tags attached to this Picture, in the order they were
+     * attached. The array is shared with the Picture and must not be modified.
+     *
+     * @return the ids of the attached tags
+     */
+    int[] getAttachedTagIds() {
+        return this.attachedTagIds;
+    }
+
+    /**
+     * Returns whether tag is attached to this Picture, without building the list of attached tags
+     *
+     * @param tag the tag to look for
+     * @return true if tag is attached to this Picture
+     */
+    public boolean hasTag(String tag) {
+        return this.indexOfTag(Tag.findTagId(tag)) >= 0;
+    }
+
+    /**
+     * Returns the number of tags attached to this Picture
+     *
+     * @return number of attached tags
+     */
+    public int getNumOfAttachedTags() {
+        return this.attachedTagIds.length;
     }
 
     /**
@@ -74,7 +182,17 @@ public class Picture implements Serializable {
      * @return Data path for the current directory
      */
     public String getDataPath() {
-        return this.dataPath;
+        return DIRECTORIES.getString(this.directoryId) + this.name;
+    }
+
+    /**
+     * Returns the directory that the Picture is in, including its trailing separator
+     * ie/ C:/Users/Calvin/Documents/ (for windows)
+     *
+     * @return the data path of the Picture without its file name
+     */
+    String getDirectoryPrefix() {
+        return DIRECTORIES.getString(this.directoryId);
     }
 
     /**
@@ -96,7 +214,8 @@ public class Picture implements Serializable {
     }
 
     /**
-     * Setter for the name instance variable
+     * Setter for the name instance variable. Since the data path is the directory of the Picture
+     * followed by its name, this also changes the file name in the data path.
      *
      * @param newDataPath the new Picture file name along with the directory path
      */
@@ -105,12 +224,14 @@ public class Picture implements Serializable {
     }
 
     /**
-     * Setter for the dataPath instance variable
+     * Setter for the data path of the Picture, which sets both its directory and its name
      *
      * @param newDataPath the absolute directory to set to
      */
     public void setDataPath(String newDataPath) {
-        this.dataPath = newDataPath;
+        int nameStart = newDataPath.lastIndexOf(File.separatorChar) + 1;
+        this.directoryId = DIRECTORIES.getId(newDataPath.substring(0, nameStart));
+        this.name = newDataPath.substring(nameStart);
     }
 
     /**
@@ -119,6 +240,9 @@ public class Picture implements Serializable {
      * @param newPrevFileName a new previous file name to add
      */
     public void addNewPrevFileName(String newPrevFileName) {
+        if (this.prevFileNames == null) {
+            this.prevFileNames = new ArrayList<>(1);
+        }
         this.prevFileNames.add(newPrevFileName);
     }
 
@@ -129,20 +253,29 @@ public class Picture implements Serializable {
         this.prevFileNames.remove(this.prevFileNames.size() - 1);
     }
 
+    /**
+     * Clears all the entries in the prevFileNames instance variable
+     */
+    public void clearPrevFileNames() {
+        this.prevFileNames = null;
+    }
+
     /**
      * Adds a new attached tag to the attachedTags instance variable
      *
      * @param newAttachedTag a new attached tag to add
      */
     public void addNewAttachedTag(String newAttachedTag) {
-        this.attachedTags.add(newAttachedTag);
+        int[] newAttachedTagIds = Arrays.copyOf(this.attachedTagIds, this.attachedTagIds.length + 1);
+        newAttachedTagIds[this.attachedTagIds.length] = Tag.getTagId(newAttachedTag);
+        this.attachedTagIds = newAttachedTagIds;
     }
 
     /**
      * Clears all the entries in the attachedTags instance variable (clean start)
      */
     public void clearAttachedTags() {
-        this.attachedTags.clear();
+        this.attachedTagIds = NO_TAGS;
     }
 
     /**
@@ -151,7 +284,32 @@ public class Picture implements Serializable {
      * @param tagToDelete a tag to delete
      */
     public void removeAttachedTag(String tagToDelete) {
-        this.attachedTags.remove(tagToDelete);
+        int i = this.indexOfTag(Tag.findTagId(tagToDelete));
+        if (i < 0) {
+            return;
+        }
+        int[] newAttachedTagIds = new int[this.attachedTagIds.length - 1];
+        System.arraycopy(this.attachedTagIds, 0, newAttachedTagIds, 0, i);
+        System.arraycopy(this.attachedTagIds, i + 1, newAttachedTagIds, i, newAttachedTagIds.length - i);
+        this.attachedTagIds = (newAttachedTagIds.length == 0) ? NO_TAGS : newAttachedTagIds;
+    }
+
+    /**
+     * Returns the position of the tag with the given id among the attached tags
+     *
+     * @param id the id of a tag, or -1 for a tag not in the dictionary
+     * @return the position of the tag, or -1 if it is not attached
+     */
+    private int indexOfTag(int id) {
+        if (id < 0) {
+            return -1;
+        }
+        for (int i = 0; i < this.attachedTagIds.length; i++) {
+            if (this.attachedTagIds[i] == id) {
+                return i;
+            }
+        }
+        return -1;
     }
 
     /**
@@ -167,4 +325,47 @@ public class Picture implements Serializable {
         String[] dataPathComponents = dataPath.split(pathSplitRegex);
         return dataPathComponents[dataPathComponents.length - 1];
     }
+
+    /**
+     * Writes the Picture with the fields it has always been serialized with
+     *
+     * @param output the stream to write the Picture to
+     * @throws IOException when the Picture can not be written
+     */
+    private void writeObject(ObjectOutputStream output) throws IOException {
+        ObjectOutputStream.PutField fields = output.putFields();
+        fields.put("dataPath", this.getDataPath());
+        fields.put("prevFileNames", this.getPrevFileNames());
+        fields.put("attachedTags", this.getAttachedTags());
+        fields.put("name", this.name);
+        fields.put("originalName", this.originalName);
+        output.writeFields();
+    }
+
+    /**
+     * Reads a Picture written by writeObject (or by any earlier version of Picture)
+     *
+     * @param input the stream to read the Picture from
+     * @throws IOException            when the Picture can not be read
+     * @throws ClassNotFoundException when a class of a field is missing
+     */
+    @SuppressWarnings("unchecked")
+    private void readObject(ObjectInputStream input) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = input.readFields();
+        String dataPath = (String) fields.get("dataPath", null);
+        this.setDataPath(dataPath);
+        String originalName = (String) fields.get("originalName", null);
+        this.originalName = (originalName == null || originalName.equals(this.name)) ? this.name : originalName;
+        this.attachedTagIds = NO_TAGS;
+        ArrayList<String> attachedTags = (ArrayList<String>) fields.get("attachedTags", null);
+        if (attachedTags != null) {
+            for (String tag : attachedTags) {
+                this.addNewAttachedTag(tag);
+            }
+        }
+        ArrayList<String> prevFileNames = (ArrayList<String>) fields.get("prevFileNames", null);
+        if (prevFileNames != null && !prevFileNames.isEmpty()) {
+            this.prevFileNames = new ArrayList<>(prevFileNames);
+        }
+    }
 }
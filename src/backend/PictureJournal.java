@@ -0,0 +1,350 @@
+package backend;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An append-only journal of changes made to Pictures.
+ * <p>
+ * Instead of re-serializing every Picture each time one of them changes, PictureManager appends
+ * a small record holding the new state of the changed Picture to this journal and only writes a
+ * full checkpoint of all Pictures from time to time. On start up the latest checkpoint is read
+ * and the records in the journal are replayed on top of it.
+ * <p>
+ * Each record is written as its length followed by its contents, so a record that was only partly
+ * written when the program stopped is detected and cut off when the journal is replayed. A record
+ * with an empty data path means the Picture was removed because its file no longer exists.
+ */
+public class PictureJournal {
+
+    /**
+     * The directory to the journal file including file name and extension
+     */
+    private String pathName;
+
+    /**
+     * The number of records appended to the journal since it was last cleared
+     */
+    private int numOfRecords;
+
+    /**
+     * Creates a PictureJournal which stores its records in the file at pathName
+     *
+     * @param pathName the relative directory to the journal file
+     */
+    public PictureJournal(String pathName) {
+        this.pathName = pathName;
+    }
+
+    /**
+     * Appends a record of the current state of picture to the journal
+     *
+     * @param previousDataPath the data path picture had before the change (its current data path if
+     *                         picture was not renamed or moved, or if it is a new Picture)
+     * @param picture          the Picture that changed
+     * @return true if the record was written to disk
+     */
+    public boolean append(String previousDataPath, Picture picture) {
+        return this.append(Collections.singletonList(previousDataPath), Collections.singletonList(picture));
+    }
+
+    /**
+     * Appends a record of the current state of every Picture in pictures to the journal with a single write,
+     * and forces the records to disk
+     *
+     * @param previousDataPaths the data path each Picture had before the change
+     * @param pictures          the Pictures that changed
+     * @return true if the records were written to disk
+     */
+    public boolean append(List<String> previousDataPaths, List<Picture> pictures) {
+        try {
+            ByteArrayOutputStream records = new ByteArrayOutputStream();
+            DataOutputStream output = new DataOutputStream(records);
+            for (int i = 0; i < pictures.size(); i++) {
+                byte[] record = encodeRecord(previousDataPaths.get(i), pictures.get(i));
+                output.writeInt(record.length);
+                output.write(record);
+            }
+            output.close();
+
+            try (FileOutputStream file = new FileOutputStream(this.pathName, true)) {
+                records.writeTo(file);
+                file.getFD().sync();
+            }
+            this.numOfRecords += pictures.size();
+            return true;
+        } catch (IOException e) {
+            System.out.println("Unable to append to the journal, check pathname");
+            return false;
+        }
+    }
+
+    /**
+     * Appends a record for every data path in dataPaths saying that the Picture at that data path
+     * was removed, with a single write, and forces the records to disk
+     *
+     * @param dataPaths the data paths of the removed Pictures
+     * @return true if the records were written to disk
+     */
+    public boolean appendRemovals(List<String> dataPaths) {
+        try {
+            ByteArrayOutputStream records = new ByteArrayOutputStream();
+            DataOutputStream output = new DataOutputStream(records);
+            for (String dataPath : dataPaths) {
+                byte[] record = encodeRemoval(dataPath);
+                output.writeInt(record.length);
+                output.write(record);
+            }
+            output.close();
+
+            try (FileOutputStream file = new FileOutputStream(this.pathName, true)) {
+                records.writeTo(file);
+                file.getFD().sync();
+            }
+            this.numOfRecords += dataPaths.size();
+            return true;
+        } catch (IOException e) {
+            System.out.println("Unable to append to the journal, check pathname");
+            return false;
+        }
+    }
+
+    /**
+     * Reads and returns every complete record in the journal in the order they were appended.
+     * A trailing record that was only partly written (or is damaged) is cut off the journal, so the
+     * records appended after it can be read back.
+     *
+     * @return list of records in the journal
+     */
+    public ArrayList<Record> readRecords() {
+        ArrayList<Record> records = new ArrayList<>();
+        File file = new File(this.pathName);
+        if (!file.exists()) {
+            return records;
+        }
+        long fileLength = file.length();
+        // the length of the journal up to the end of the last complete record
+        long completeLength = 0;
+        try {
+            DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            try {
+                while (completeLength + 4 <= fileLength) {
+                    int length = input.readInt();
+                    if (length < 0 || length > fileLength - completeLength - 4) {
+                        // a length that was only partly written, or that runs past the end of the journal
+                        break;
+                    }
+                    byte[] record = new byte[length];
+                    input.readFully(record);
+                    records.add(decodeRecord(record));
+                    completeLength += 4 + length;
+                }
+            } catch (IOException e) {
+                // a record that was only partly written or can not be decoded
+            } finally {
+                input.close();
+            }
+            if (completeLength < fileLength) {
+                try (RandomAccessFile journal = new RandomAccessFile(file, "rw")) {
+                    journal.setLength(completeLength);
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("Cannot read from journal.");
+        }
+        this.numOfRecords = records.size();
+        return records;
+    }
+
+    /**
+     * Deletes every record in the journal. Called once all of the records are contained in a checkpoint.
+     */
+    public void clear() {
+        SerializableOperator.createFile(this.pathName, true);
+        this.numOfRecords = 0;
+    }
+
+    /**
+     * Getter for the number of records in the journal
+     *
+     * @return the number of records appended since the journal was last cleared
+     */
+    public int getNumOfRecords() {
+        return this.numOfRecords;
+    }
+
+    /**
+     * Encodes the state of picture into a record
+     *
+     * @param previousDataPath the data path picture had before the change
+     * @param picture          the Picture to encode
+     * @return the encoded record
+     * @throws IOException when the record can not be written
+     */
+    private static byte[] encodeRecord(String previousDataPath, Picture picture) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(bytes);
+        output.writeUTF(previousDataPath);
+        output.writeUTF(picture.getDataPath());
+        output.writeUTF(picture.getOriginalName());
+        output.writeInt(picture.getAttachedTags().size());
+        for (String tag : picture.getAttachedTags()) {
+            output.writeUTF(tag);
+        }
+        output.writeInt(picture.getPrevFileNames().size());
+        for (String prevFileName : picture.getPrevFileNames()) {
+            output.writeUTF(prevFileName);
+        }
+        output.close();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Encodes the removal of the Picture at dataPath into a record
+     *
+     * @param dataPath the data path of the removed Picture
+     * @return the encoded record
+     * @throws IOException when the record can not be written
+     */
+    private static byte[] encodeRemoval(String dataPath) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(bytes);
+        output.writeUTF(dataPath);
+        output.writeUTF("");
+        output.writeUTF("");
+        output.writeInt(0);
+        output.writeInt(0);
+        output.close();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Decodes a record created by encodeRecord or encodeRemoval
+     *
+     * @param record the encoded record
+     * @return the decoded record
+     * @throws IOException when the record is malformed
+     */
+    private static Record decodeRecord(byte[] record) throws IOException {
+        DataInputStream input = new DataInputStream(new ByteArrayInputStream(record));
+        String previousDataPath = input.readUTF();
+        String dataPath = input.readUTF();
+        String originalName = input.readUTF();
+        ArrayList<String> attachedTags = new ArrayList<>();
+        int numOfTags = input.readInt();
+        for (int i = 0; i < numOfTags; i++) {
+            attachedTags.add(input.readUTF());
+        }
+        ArrayList<String> prevFileNames = new ArrayList<>();
+        int numOfPrevFileNames = input.readInt();
+        for (int i = 0; i < numOfPrevFileNames; i++) {
+            prevFileNames.add(input.readUTF());
+        }
+        return new Record(previousDataPath, dataPath, originalName, attachedTags, prevFileNames);
+    }
+
+    /**
+     * A single journal record: the state of a Picture right after it changed
+     */
+    public static class Record {
+
+        /**
+         * The data path the Picture had before the change
+         */
+        private String previousDataPath;
+
+        /**
+         * The data path of the Picture after the change
+         */
+        private String dataPath;
+
+        /**
+         * The original file name of the Picture
+         */
+        private String originalName;
+
+        /**
+         * The tags attached to the Picture after the change
+         */
+        private ArrayList<String> attachedTags;
+
+        /**
+         * The previous file names of the Picture after the change
+         */
+        private ArrayList<String> prevFileNames;
+
+        /**
+         * Creates a new Record
+         *
+         * @param previousDataPath the data path the Picture had before the change
+         * @param dataPath         the data path of the Picture after the change
+         * @param originalName     the original file name of the Picture
+         * @param attachedTags     the tags attached to the Picture after the change
+         * @param prevFileNames    the previous file names of the Picture after the change
+         */
+        Record(String previousDataPath, String dataPath, String originalName,
+               ArrayList<String> attachedTags, ArrayList<String> prevFileNames) {
+            this.previousDataPath = previousDataPath;
+            this.dataPath = dataPath;
+            this.originalName = originalName;
+            this.attachedTags = attachedTags;
+            this.prevFileNames = prevFileNames;
+        }
+
+        /**
+         * Getter for the previousDataPath instance variable
+         *
+         * @return the data path the Picture had before the change
+         */
+        public String getPreviousDataPath() {
+            return this.previousDataPath;
+        }
+
+        /**
+         * Getter for the dataPath instance variable
+         *
+         * @return the data path of the Picture after the change
+         */
+        public String getDataPath() {
+            return this.dataPath;
+        }
+
+        /**
+         * Returns true iff this record says that the Picture was removed
+         *
+         * @return true iff the Picture at the previous data path was removed
+         */
+        public boolean isRemoval() {
+            return this.dataPath.isEmpty();
+        }
+
+        /**
+         * Getter for the originalName instance variable
+         *
+         * @return the original file name of the Picture
+         */
+        public String getOriginalName() {
+            return this.originalName;
+        }
+
+        /**
+         * Getter for the attachedTags instance variable
+         *
+         * @return the tags attached to the Picture after the change
+         */
+        public ArrayList<String> getAttachedTags() {
+            return this.attachedTags;
+        }
+
+        /**
+         * Getter for the prevFileNames instance variable
+         *
+         * @return the previous file names of the Picture after the change
+         */
+        public ArrayList<String> getPrevFileNames() {
+            return this.prevFileNames;
+        }
+    }
+}
@@ -2,12 +2,25 @@ package backend;
 
 import java.io.File;
 import java.io.IOException;
-import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 import java.util.regex.Pattern;
 
 /**
@@ -32,7 +45,7 @@ public class PictureManager {
     private ArrayList<Picture> allPictures = new ArrayList<>();
 
     /**
-     * The file path to the .ser file for PictureManager
+     * The file path to the .ser file for PictureManager, which is written by PictureStore
      */
     private String pathName;
 
@@ -42,7 +55,73 @@ public class PictureManager {
     private ArrayList<Picture> hiddenPictures = new ArrayList<>();
 
     /**
-     * Creates an instance of PictureManager
+     * The tags a Picture must have to be shown, from every call to hidePicturesWithoutTags since
+     * the hidden Pictures were last shown. Empty when Pictures are not filtered by their tags.
+     */
+    private ArrayList<String> requiredTags = new ArrayList<>();
+
+    /**
+     * Whether the Pictures in sub-directories of the viewing directory are hidden by hideSubdirectoryPictures
+     */
+    private boolean subdirectoryPicturesHidden = false;
+
+    /**
+     * A trie of directories holding the Pictures stored directly inside of each directory, which is
+     * also used to look up a Picture (or detect a name collision) by its data path
+     */
+    private DirectoryTrie directoryTrie = new DirectoryTrie();
+
+    /**
+     * Inverted index from each tag to the Pictures in allPictures that have the tag attached
+     */
+    private TagIndex tagIndex = new TagIndex();
+
+    /**
+     * Journal of changes made to Pictures since the .ser file was last written
+     */
+    private PictureJournal journal;
+
+    /**
+     * Whether changes to Pictures are appended to the journal (true) or saved by rewriting
+     * the whole .ser file every time (false)
+     */
+    private boolean journaled = true;
+
+    /**
+     * The number of journal records after which all Pictures are written to the .ser file
+     * and the journal is cleared
+     */
+    private int checkpointInterval = 1000;
+
+    /**
+     * Schedules the writes of the .ser file for PictureManager
+     */
+    private PersistenceScheduler scheduler;
+
+    /**
+     * The store file whose Pictures have not all been read yet, when the Pictures are
+     * read lazily; null once every Picture has been read or when they were all read on creation
+     */
+    private LazyPictureStore unreadPictures;
+
+    /**
+     * Journal of the files being moved by the current batch, so a batch cut short by a crash is finished
+     * or undone on startup
+     */
+    private RenameJournal renameJournal;
+
+    /**
+     * The number of files a batch renames at the same time (1 to rename them one at a time)
+     */
+    private int renameParallelism = 4;
+
+    /**
+     * The pool that renames the files of a batch in parallel. Created the first time it is needed.
+     */
+    private ExecutorService renamePool;
+
+    /**
+     * Creates an instance of PictureManager which writes its checkpoints to the .ser file straight away
      *
      * @param currentDir       the current directory that we are in
      * @param pictureDataPaths the list of data paths of all pictures in this directory and all sub directories
@@ -52,18 +131,103 @@ public class PictureManager {
      */
     public PictureManager(String currentDir, ArrayList<String> pictureDataPaths, String pathName)
             throws ClassNotFoundException, IOException {
+        this(currentDir, pictureDataPaths, pathName, PersistenceScheduler.IMMEDIATE, false);
+    }
+
+    /**
+     * Creates an instance of PictureManager
+     *
+     * @param currentDir       the current directory that we are in
+     * @param pictureDataPaths the list of data paths of all pictures in this directory and all sub directories
+     * @param pathName         the file path to the .ser file for this PictureManager
+     * @param scheduler        schedules the writes of the .ser file for this PictureManager
+     * @throws ClassNotFoundException when a class is missing
+     * @throws IOException            when the .ser file is not found
+     */
+    public PictureManager(String currentDir, ArrayList<String> pictureDataPaths, String pathName,
+                          PersistenceScheduler scheduler) throws ClassNotFoundException, IOException {
+        this(currentDir, pictureDataPaths, pathName, scheduler, false);
+    }
+
+    /**
+     * Creates an instance of PictureManager. If lazy is true, only the index of the .ser file is read and the
+     * Pictures of a directory are only read from it once they are needed, for example when the directory
+     * is viewed, so creating the PictureManager takes the same time however large the library is.
+     *
+     * @param currentDir       the current directory that we are in
+     * @param pictureDataPaths the list of data paths of all pictures in this directory and all sub directories
+     * @param pathName         the file path to the .ser file for this PictureManager
+     * @param scheduler        schedules the writes of the .ser file for this PictureManager
+     * @param lazy             whether to read the Pictures of each directory only when they are needed
+     * @throws ClassNotFoundException when a class is missing
+     * @throws IOException            when the .ser file is not found
+     */
+    public PictureManager(String currentDir, ArrayList<String> pictureDataPaths, String pathName,
+                          PersistenceScheduler scheduler, boolean lazy) throws ClassNotFoundException, IOException {
         this.viewingDir = currentDir;
         this.pathName = pathName;
+        this.scheduler = scheduler;
         boolean initializeResult = SerializableOperator.initializeFile(this.pathName);
         if (initializeResult) {
-            this.allPictures = (ArrayList<Picture>) SerializableOperator.readFile(pathName);
+            if (lazy) {
+                // null when the file is empty or an old .ser file, which are read in full below
+                this.unreadPictures = LazyPictureStore.open(pathName);
+            }
+            if (this.unreadPictures == null) {
+                this.allPictures = readStoreFile(pathName);
+            }
         } else {
             SerializableOperator.createFile(pathName, false);
         }
+        for (Picture picture : this.allPictures) {
+            this.indexPicture(picture);
+        }
+        // Replay the changes made since the .ser file was last written and then write them into it
+        this.journal = new PictureJournal(pathName + ".journal");
+        this.renameJournal = new RenameJournal(pathName + ".renames");
+        HashSet<String> movingFiles = new HashSet<>();
+        for (String[] move : this.renameJournal.readPending()) {
+            movingFiles.add(move[0]);
+            movingFiles.add(move[1]);
+        }
+        boolean replayed = false;
+        for (PictureJournal.Record record : this.journal.readRecords()) {
+            this.applyJournalRecord(record, movingFiles);
+            replayed = true;
+        }
+        // Finish or undo the moves of a batch that was cut short, so the files match the saved Pictures
+        this.recoverMoves();
+        // a lazily read store file is already up to date unless the journal held changes
+        if (this.unreadPictures == null || replayed) {
+            this.requestCheckpoint();
+        }
         updateAllPictures(pictureDataPaths);
         updateDirectoryPictures();
     }
 
+    /**
+     * Reads the Pictures in the store file at pathName. A file that can not be read is moved aside to
+     * pathName + ".corrupt", so it is kept for the user to recover and is never overwritten by a
+     * checkpoint, and an empty list is returned.
+     *
+     * @param pathName the path of the store file
+     * @return the Pictures in the file, or an empty list if it could not be read
+     * @throws IOException when the file can not be read and can not be moved aside either
+     */
+    private static ArrayList<Picture> readStoreFile(String pathName) throws IOException {
+        try {
+            return PictureStore.readFile(pathName);
+        } catch (IOException e) {
+            System.out.println("Cannot read from input: " + e.getMessage());
+            Path corruptFile = Paths.get(pathName + ".corrupt");
+            // refuses to start rather than overwrite the only copy of the library
+            Files.move(Paths.get(pathName), corruptFile, StandardCopyOption.REPLACE_EXISTING);
+            System.out.println("The damaged file was moved to " + corruptFile);
+            SerializableOperator.createFile(pathName, false);
+            return new ArrayList<>();
+        }
+    }
+
     /**
      * Adds a tag to the specified Picture (if possible) and returns the new
      * data path of the Picture if successful and empty string otherwise
@@ -73,11 +237,11 @@ public class PictureManager {
      * @return new Picture data path if the tag was added to the Picture
      * otherwise return the empty string
      */
-    public String addTagToPicture(String dataPath, String tagToAdd) throws IOException {
+    public synchronized String addTagToPicture(String dataPath, String tagToAdd) throws IOException {
         Picture pictureOfInterest = this.getPictureAtDataPath(dataPath);
 
         // Do this if the picture already has the tag attached
-        if (pictureOfInterest.getAttachedTags().contains(tagToAdd)) {
+        if (pictureOfInterest.hasTag(tagToAdd)) {
             return "";
         }
 
@@ -88,7 +252,12 @@ public class PictureManager {
         String newDataPath = tempDataPath[0] + " " + tagToAdd + "." + tempDataPath[1];
         // The if statement makes sure no other picture has the same name
         if (this.getPictureAtDataPath(newDataPath) == null) {
-            // 2) First update the prevFileNames list
+            // 2) First physically rename the file, leaving the Picture as it is if that fails
+            if (!this.moveFile(oldDataPath, newDataPath)) {
+                return "";
+            }
+            this.unindexPicture(pictureOfInterest);
+            // 2) Now update the prevFileNames list
             String tempPrevFile = pictureOfInterest.getName();
             pictureOfInterest.addNewPrevFileName(tempPrevFile);
 
@@ -100,10 +269,10 @@ public class PictureManager {
 
             // 5) Now update the name instance variable
             pictureOfInterest.setName(pictureOfInterest.getDataPath());
+            this.indexPicture(pictureOfInterest);
 
-            // 6) Now actually physically rename the file
-            this.changeActualFileName(oldDataPath, pictureOfInterest.getDataPath());
-            SerializableOperator.saveFile(this.pathName, this.allPictures);
+            // 6) Now save the changes
+            this.finishMoves(this.savePicture(oldDataPath, pictureOfInterest));
             return pictureOfInterest.getDataPath();
         }
         return "";
@@ -121,11 +290,11 @@ public class PictureManager {
      * otherwise return the empty string
      * @throws IOException when the .ser file for this PictureManager is not found
      */
-    public String removeTagFromPicture(String dataPath, String tagToBeRemoved) throws IOException {
+    public synchronized String removeTagFromPicture(String dataPath, String tagToBeRemoved) throws IOException {
         Picture pictureOfInterest = this.getPictureAtDataPath(dataPath);
 
         // 1) First check to see if the tag being removed is actually on the picture
-        if (!(pictureOfInterest.getAttachedTags().contains(tagToBeRemoved))) {
+        if (!(pictureOfInterest.hasTag(tagToBeRemoved))) {
             return "";
         }
         // 2) Now construct the new data path of the picture
@@ -151,7 +320,12 @@ public class PictureManager {
         // 3) Now check to see if another picture in the same directory has the same name
         // after the removal of the tag and act accordingly
         if (this.getPictureAtDataPath(newDataPath) == null) {
-            // Since no other picture will have the same name we continue
+            // Since no other picture will have the same name we continue, physically renaming the file
+            // first and leaving the Picture as it is if that fails
+            if (!this.moveFile(oldDataPath, newDataPath)) {
+                return "";
+            }
+            this.unindexPicture(pictureOfInterest);
             // 4) Update the prevFileNames instance variable
             String tempPrevFile = pictureOfInterest.getName();
             pictureOfInterest.addNewPrevFileName(tempPrevFile);
@@ -161,9 +335,9 @@ public class PictureManager {
             pictureOfInterest.setDataPath(newDataPath);
             // 7) Update the name instance variable
             pictureOfInterest.setName(pictureOfInterest.getDataPath());
-            // 8) change the actual file name and save the changes by serializing
-            this.changeActualFileName(oldDataPath, newDataPath);
-            SerializableOperator.saveFile(this.pathName, this.allPictures);
+            this.indexPicture(pictureOfInterest);
+            // 8) save the changes
+            this.finishMoves(this.savePicture(oldDataPath, pictureOfInterest));
             return pictureOfInterest.getDataPath();
         }
         // we can't remove the tag since it will cause two pictures to have the same name
@@ -181,7 +355,7 @@ public class PictureManager {
      * @param newName  The new name to change to
      * @return Whether or not the name was successfully changed
      */
-    public boolean changeFileName(String dataPath, String newName) {
+    public synchronized boolean changeFileName(String dataPath, String newName) {
         Picture pictureOfInterest = this.getPictureAtDataPath(dataPath);
 
         // 1) First construct the new data path that the picture will have
@@ -198,7 +372,12 @@ public class PictureManager {
 
         // 2) With the new data path check to see if another picture has the same file name
         if (this.getPictureAtDataPath(newDataPath) == null) {
-            // Since no other picture will have the same name we continue
+            // Since no other picture will have the same name we continue, physically renaming the file
+            // first and leaving the Picture as it is if that fails
+            if (!this.moveFile(oldDataPath, newDataPath)) {
+                return false;
+            }
+            this.unindexPicture(pictureOfInterest);
             // 4) Update the prevFileNames instance variable
             String tempPrevFile = pictureOfInterest.getName();
             pictureOfInterest.addNewPrevFileName(tempPrevFile);
@@ -220,9 +399,9 @@ public class PictureManager {
             pictureOfInterest.setDataPath(newDataPath);
             // 7) Update the name instance variable
             pictureOfInterest.setName(pictureOfInterest.getDataPath());
-            // 8) change the actual file name and save the changes by serializing
-            this.changeActualFileName(oldDataPath, newDataPath);
-            SerializableOperator.saveFile(this.pathName, this.allPictures);
+            this.indexPicture(pictureOfInterest);
+            // 8) save the changes
+            this.finishMoves(this.savePicture(oldDataPath, pictureOfInterest));
             return true;
         }
 
@@ -230,6 +409,300 @@ public class PictureManager {
         return false;
     }
 
+    /**
+     * Adds every tag in tagsToAdd that is not attached yet to each Picture in dataPaths. Every Picture is
+     * renamed at most once, the files are renamed in parallel, and the changes are saved with a single
+     * write, however many Pictures and tags there are.
+     *
+     * @param dataPaths the data paths of the Pictures to tag
+     * @param tagsToAdd the tags to add, in the order they are added to the file names
+     * @return what happened to each Picture, in the order of dataPaths
+     */
+    public BatchReport addTagsToPictures(List<String> dataPaths, List<String> tagsToAdd) {
+        return this.retagPictures(dataPaths, tagsToAdd, true);
+    }
+
+    /**
+     * Removes every tag in tagsToRemove that is attached to each Picture in dataPaths. Every Picture is
+     * renamed at most once, the files are renamed in parallel, and the changes are saved with a single
+     * write, however many Pictures and tags there are.
+     *
+     * @param dataPaths    the data paths of the Pictures to untag
+     * @param tagsToRemove the tags to remove
+     * @return what happened to each Picture, in the order of dataPaths
+     */
+    public BatchReport removeTagsFromPictures(List<String> dataPaths, List<String> tagsToRemove) {
+        return this.retagPictures(dataPaths, tagsToRemove, false);
+    }
+
+    /**
+     * Sets the number of files a batch renames at the same time
+     *
+     * @param renameParallelism the number of renames run at once (1 to rename one file at a time)
+     */
+    public synchronized void setRenameParallelism(int renameParallelism) {
+        this.renameParallelism = Math.max(1, renameParallelism);
+        if (this.renamePool != null) {
+            this.renamePool.shutdown();
+            this.renamePool = null;
+        }
+    }
+
+    /**
+     * Adds or removes tags from many Pictures. First the new data path of every Picture is worked out and
+     * checked for collisions, then the files are renamed in parallel, and finally the Pictures whose file
+     * was renamed are updated and saved together.
+     *
+     * @param dataPaths the data paths of the Pictures to change
+     * @param tags      the tags to add or remove
+     * @param adding    true to add the tags, false to remove them
+     * @return what happened to each Picture, in the order of dataPaths
+     */
+    private synchronized BatchReport retagPictures(List<String> dataPaths, List<String> tags, boolean adding) {
+        // 1) Work out the new data path of every Picture before any file is renamed
+        BatchReport.Status[] statuses = new BatchReport.Status[dataPaths.size()];
+        String[] newDataPaths = new String[dataPaths.size()];
+        ArrayList<Integer> renamedItems = new ArrayList<>();
+        ArrayList<ArrayList<String>> newTagLists = new ArrayList<>();
+        Set<Picture> seenPictures = Collections.newSetFromMap(new IdentityHashMap<Picture, Boolean>());
+        HashSet<String> claimedDataPaths = new HashSet<>();
+        for (int i = 0; i < dataPaths.size(); i++) {
+            newDataPaths[i] = dataPaths.get(i);
+            Picture picture = this.getPictureAtDataPath(dataPaths.get(i));
+            if (picture == null) {
+                statuses[i] = BatchReport.Status.NOT_FOUND;
+                continue;
+            }
+            ArrayList<String> newTags = picture.getAttachedTags();
+            for (String tag : tags) {
+                if (adding && !newTags.contains(tag)) {
+                    newTags.add(tag);
+                } else if (!adding) {
+                    newTags.remove(tag);
+                }
+            }
+            if (!seenPictures.add(picture) || newTags.equals(picture.getAttachedTags())) {
+                statuses[i] = BatchReport.Status.UNCHANGED;
+                continue;
+            }
+            String newDataPath = this.buildDataPath(picture, newTags);
+            if (this.directoryTrie.get(newDataPath) != null || new File(newDataPath).exists()
+                    || !claimedDataPaths.add(newDataPath)) {
+                statuses[i] = BatchReport.Status.NAME_TAKEN;
+                continue;
+            }
+            newDataPaths[i] = newDataPath;
+            renamedItems.add(i);
+            newTagLists.add(newTags);
+        }
+
+        // 2) Rename the files
+        ArrayList<String> oldPaths = new ArrayList<>();
+        ArrayList<String> newPaths = new ArrayList<>();
+        for (int i : renamedItems) {
+            oldPaths.add(dataPaths.get(i));
+            newPaths.add(newDataPaths[i]);
+        }
+        boolean[] renamed = this.moveFiles(oldPaths, newPaths, null);
+
+        // 3) Update the Pictures whose file was renamed and save them with a single write
+        ArrayList<String> previousDataPaths = new ArrayList<>();
+        ArrayList<Picture> changedPictures = new ArrayList<>();
+        for (int j = 0; j < renamedItems.size(); j++) {
+            int i = renamedItems.get(j);
+            if (!renamed[j]) {
+                statuses[i] = BatchReport.Status.FAILED;
+                newDataPaths[i] = dataPaths.get(i);
+                continue;
+            }
+            Picture picture = this.directoryTrie.get(dataPaths.get(i));
+            this.unindexPicture(picture);
+            picture.addNewPrevFileName(picture.getName());
+            picture.clearAttachedTags();
+            for (String tag : newTagLists.get(j)) {
+                picture.addNewAttachedTag(tag);
+            }
+            picture.setDataPath(newDataPaths[i]);
+            this.indexPicture(picture);
+            statuses[i] = BatchReport.Status.CHANGED;
+            previousDataPaths.add(dataPaths.get(i));
+            changedPictures.add(picture);
+        }
+        // with nothing to save, no file was moved and the rename journal can be cleared
+        boolean saved = changedPictures.isEmpty() || this.savePictures(previousDataPaths, changedPictures);
+        this.finishMoves(saved);
+
+        BatchReport report = new BatchReport();
+        for (int i = 0; i < dataPaths.size(); i++) {
+            report.add(dataPaths.get(i), newDataPaths[i], statuses[i]);
+        }
+        return report;
+    }
+
+    /**
+     * Returns the data path picture has with tags attached: its directory, then its original file name
+     * with the tags added before the extension
+     * ie/ C:/Pictures/bob @gg @ww.jpeg for the original name bob.jpeg and the tags [@gg, @ww]
+     *
+     * @param picture the Picture
+     * @param tags    the tags, in the order they appear in the file name
+     * @return the data path of picture with tags
+     */
+    private String buildDataPath(Picture picture, List<String> tags) {
+        String originalName = picture.getOriginalName();
+        int extensionStart = originalName.lastIndexOf('.');
+        if (extensionStart == -1) {
+            extensionStart = originalName.length();
+        }
+        StringBuilder dataPath = new StringBuilder(picture.getDirectoryPrefix());
+        dataPath.append(originalName, 0, extensionStart);
+        for (String tag : tags) {
+            dataPath.append(' ').append(tag);
+        }
+        dataPath.append(originalName.substring(extensionStart));
+        return dataPath.toString();
+    }
+
+    /**
+     * Moves the file at oldPath to newPath, recording the move in the rename journal first
+     *
+     * @param oldPath the current path of the file
+     * @param newPath the path to move the file to
+     * @return true if the file was moved
+     */
+    private boolean moveFile(String oldPath, String newPath) {
+        return this.moveFiles(Collections.singletonList(oldPath), Collections.singletonList(newPath), null)[0];
+    }
+
+    /**
+     * Moves the file at each path in oldPaths to the path at the same index in newPaths, running up to
+     * renameParallelism moves at the same time. The moves are recorded in the rename journal before any
+     * file is moved, and finishMoves must be called once the Pictures of the moved files are saved.
+     * No file is moved if the rename journal can not be written, or if the previous batch in it can not
+     * be saved.
+     *
+     * @param oldPaths   the current paths of the files
+     * @param newPaths   the paths to move the files to
+     * @param onProgress called on this thread with the number of files done so far and the number of
+     *                   files, as the moves finish; may be null
+     * @return whether each file was moved
+     */
+    private boolean[] moveFiles(List<String> oldPaths, List<String> newPaths,
+                                BiConsumer<Integer, Integer> onProgress) {
+        boolean[] renamed = new boolean[oldPaths.size()];
+        if (oldPaths.isEmpty()) {
+            return renamed;
+        }
+        if (!this.renameJournal.isEmpty()) {
+            // the Pictures of the previous batch are only saved by a checkpoint, which must come first
+            // since the rename journal holds one batch at a time
+            if (!this.checkpoint()) {
+                return renamed;
+            }
+        }
+        if (!this.renameJournal.begin(oldPaths, newPaths)) {
+            return renamed;
+        }
+        if (this.renameParallelism == 1 || oldPaths.size() <= 1) {
+            for (int i = 0; i < oldPaths.size(); i++) {
+                renamed[i] = RenameJournal.move(oldPaths.get(i), newPaths.get(i));
+                if (onProgress != null) {
+                    onProgress.accept(i + 1, oldPaths.size());
+                }
+            }
+            return renamed;
+        }
+        ArrayList<Future<Boolean>> renames = new ArrayList<>();
+        for (int i = 0; i < oldPaths.size(); i++) {
+            String oldPath = oldPaths.get(i);
+            String newPath = newPaths.get(i);
+            renames.add(this.getRenamePool().submit(() -> RenameJournal.move(oldPath, newPath)));
+        }
+        boolean interrupted = false;
+        for (int i = 0; i < renames.size(); i++) {
+            // wait for every rename, since a rename that is still running may yet succeed
+            while (true) {
+                try {
+                    renamed[i] = renames.get(i).get();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    break;
+                }
+            }
+            if (onProgress != null) {
+                onProgress.accept(i + 1, renames.size());
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        return renamed;
+    }
+
+    /**
+     * Clears the rename journal once the Pictures of the moved files are saved. When they were not
+     * written to the journal they are only saved by the next checkpoint, which clears the rename
+     * journal instead.
+     *
+     * @param saved whether the Pictures of the moved files were written to the journal
+     */
+    private void finishMoves(boolean saved) {
+        if (saved) {
+            this.renameJournal.clear();
+        }
+    }
+
+    /**
+     * Moves the files listed in the rename journal by a batch that was cut short to where the saved
+     * Pictures say they are: a move whose Picture was saved is finished and a move whose Picture was
+     * not saved is undone. Then clears the rename journal.
+     */
+    private void recoverMoves() {
+        for (String[] move : this.renameJournal.readPending()) {
+            String oldPath = move[0];
+            String newPath = move[1];
+            // a copy to another file system that was not finished
+            new File(RenameJournal.getCopyPath(newPath).toString()).delete();
+            if (this.getPictureAtDataPath(newPath) != null) {
+                if (!new File(newPath).exists() && new File(oldPath).exists()) {
+                    RenameJournal.move(oldPath, newPath);
+                }
+            } else if (this.getPictureAtDataPath(oldPath) != null) {
+                File oldFile = new File(oldPath);
+                File newFile = new File(newPath);
+                if (!oldFile.exists() && newFile.exists()) {
+                    RenameJournal.move(newPath, oldPath);
+                } else if (oldFile.exists() && newFile.exists() && oldFile.length() == newFile.length()) {
+                    // a move to another file system stopped after the copy was put in place but before
+                    // the file at oldPath was deleted, so the copy is dropped
+                    newFile.delete();
+                }
+            }
+        }
+        this.renameJournal.clear();
+    }
+
+    /**
+     * Returns the pool used to rename files in parallel, creating it if needed
+     *
+     * @return the pool of renameParallelism threads
+     */
+    private ExecutorService getRenamePool() {
+        if (this.renamePool == null) {
+            this.renamePool = Executors.newFixedThreadPool(this.renameParallelism, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "picture-renamer");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return this.renamePool;
+    }
+
     /**
      * Physically renames a file name for a picture with respect to
      * its full directory including the file name and extension
@@ -237,11 +710,10 @@ public class PictureManager {
      *
      * @param oldPath the data path of the picture right now
      * @param newPath the data path of the picture we want it to have
+     * @return true if the file was renamed, false if it was not
      */
-    public void changeActualFileName(String oldPath, String newPath) {
-        File oldName = new File(oldPath);
-        File newName = new File(newPath);
-        oldName.renameTo(newName);
+    public boolean changeActualFileName(String oldPath, String newPath) {
+        return RenameJournal.move(oldPath, newPath);
     }
 
     /**
@@ -250,13 +722,118 @@ public class PictureManager {
      * @param dataPath the data path that we are looking for a picture at
      * @return Picture object with the specified data path, if it exists. Otherwise, return null.
      */
-    public Picture getPictureAtDataPath(String dataPath) {
-        for (int i = 0; i < this.getAllPictures().size(); i++) {
-            if (this.getAllPictures().get(i).getDataPath().equals(dataPath)) {
-                return this.getAllPictures().get(i);
+    public synchronized Picture getPictureAtDataPath(String dataPath) {
+        if (this.unreadPictures != null) {
+            String directory = dataPath.substring(0, dataPath.lastIndexOf(File.separatorChar) + 1);
+            this.addReadPictures(this.unreadPictures.readDirectory(directory));
+        }
+        return this.directoryTrie.get(dataPath);
+    }
+
+    /**
+     * Returns the Pictures stored directly inside of directory, i.e., not including Pictures
+     * in sub-directories of directory
+     *
+     * @param directory the absolute path of the directory
+     * @return list of Pictures directly inside of directory (empty if there are none)
+     */
+    public synchronized ArrayList<Picture> getPicturesInDirectory(String directory) {
+        if (this.unreadPictures != null) {
+            this.addReadPictures(this.unreadPictures.readDirectory(directory));
+        }
+        return this.directoryTrie.getPicturesIn(directory);
+    }
+
+    /**
+     * Returns up to k of the tags attached to the most Pictures in and under directory, most used
+     * first and ties in alphabetical order. The counts are kept up to date as tags are added, removed
+     * and renamed, so no Picture is visited.
+     *
+     * @param directory the absolute path of the directory, or the empty String for the whole library
+     * @param k         the largest number of tags to return
+     * @return the most used tags in directory
+     */
+    public synchronized ArrayList<String> getMostUsedTags(String directory, int k) {
+        this.readPicturesUnder(directory);
+        return this.directoryTrie.getMostUsedTags(directory, k);
+    }
+
+    /**
+     * Returns the number of Pictures in and under directory that tag is attached to
+     *
+     * @param directory the absolute path of the directory, or the empty String for the whole library
+     * @param tag       the tag
+     * @return the number of Pictures with tag in directory
+     */
+    public synchronized int getTagCount(String directory, String tag) {
+        this.readPicturesUnder(directory);
+        return this.directoryTrie.getTagCount(directory, tag);
+    }
+
+    /**
+     * Reads the Pictures in and under directory that have not been read from the store file yet
+     *
+     * @param directory the absolute path of the directory, or the empty String for the whole library
+     */
+    private void readPicturesUnder(String directory) {
+        if (directory.isEmpty()) {
+            this.readAllPictures();
+        } else if (this.unreadPictures != null) {
+            this.addReadPictures(this.unreadPictures.readDirectoriesUnder(directory));
+        }
+    }
+
+    /**
+     * Adds Pictures read from the store file to allPictures and the indexes. A Picture whose
+     * data path already has a Picture is skipped, since the Picture in memory is the newer one.
+     *
+     * @param readPictures the Pictures read from the store file
+     */
+    private void addReadPictures(ArrayList<Picture> readPictures) {
+        for (Picture picture : readPictures) {
+            if (this.directoryTrie.get(picture.getDataPath()) == null) {
+                this.allPictures.add(picture);
+                this.indexPicture(picture);
             }
         }
-        return null;
+        if (this.unreadPictures != null && this.unreadPictures.isFullyRead()) {
+            this.unreadPictures = null;
+        }
+    }
+
+    /**
+     * Reads every Picture that has not been read from the store file yet
+     *
+     * @return true if every Picture has been read, false if some could not be read
+     */
+    private boolean readAllPictures() {
+        if (this.unreadPictures != null) {
+            this.addReadPictures(this.unreadPictures.readAll());
+        }
+        return this.unreadPictures == null;
+    }
+
+    /**
+     * Adds picture to the directory trie and the tag index under its current data path
+     * and attached tags. Must be called again whenever the data path or attached tags of
+     * picture change, after a matching call to unindexPicture made before the change.
+     *
+     * @param picture the Picture to index
+     */
+    private void indexPicture(Picture picture) {
+        this.directoryTrie.add(picture);
+        this.tagIndex.addPicture(picture);
+    }
+
+    /**
+     * Removes picture from the directory trie and the tag index. Must be called while
+     * picture still has the data path and attached tags it was indexed under.
+     *
+     * @param picture the Picture to remove from the indexes
+     */
+    private void unindexPicture(Picture picture) {
+        this.directoryTrie.remove(picture);
+        this.tagIndex.removePicture(picture);
     }
 
     /**
@@ -266,44 +843,356 @@ public class PictureManager {
      * @param dataPaths ArrayList<String> containing dataPaths of all Picture files in this directory (including
      *                  sub-directories)
      */
-    public void updateAllPictures(ArrayList<String> dataPaths) throws IOException {
-        HashMap<String, Picture> dataPathMap = new HashMap<String, Picture>();
-        for (int i = 0; i < this.allPictures.size(); i++) {
-            dataPathMap.put(this.allPictures.get(i).getDataPath(), this.allPictures.get(i));
+    public synchronized void updateAllPictures(ArrayList<String> dataPaths) throws IOException {
+        this.addPictures(dataPaths);
+    }
+
+    /**
+     * Updates the allPictures instance variable by creating new Picture objects for the data paths
+     * produced by dataPaths that don't already have a Picture. dataPaths is consumed in batches of
+     * batchSize, and each batch is added (and saved) as soon as it is complete, so Pictures become
+     * visible while dataPaths is still producing data paths.
+     *
+     * @param dataPaths data paths of Picture files in this directory (including sub-directories)
+     * @param batchSize the number of data paths to add at a time
+     * @param onBatch   called after each batch with the new Pictures that are in the viewing directory
+     *                  (not called for a batch without any); may be null
+     */
+    public void updateAllPictures(Iterator<String> dataPaths, int batchSize, Consumer<ArrayList<Picture>> onBatch) {
+        ArrayList<String> batch = new ArrayList<>(batchSize);
+        while (dataPaths.hasNext()) {
+            batch.add(dataPaths.next());
+            if (batch.size() >= batchSize || !dataPaths.hasNext()) {
+                ArrayList<Picture> newDirectoryPictures = this.addPictures(batch);
+                if (onBatch != null && newDirectoryPictures.size() > 0) {
+                    onBatch.accept(newDirectoryPictures);
+                }
+                batch.clear();
+            }
         }
+    }
+
+    /**
+     * Creates and saves a new Picture object for every data path in dataPaths that doesn't already
+     * have one. New Pictures in the viewing directory are also added to directoryPictures, or to
+     * hiddenPictures if the filters applied to the viewing directory hide them.
+     *
+     * @param dataPaths data paths of Picture files
+     * @return the new Pictures that are in the viewing directory and are shown
+     */
+    synchronized ArrayList<Picture> addPictures(List<String> dataPaths) {
+        ArrayList<Picture> newPictures = new ArrayList<>();
+        ArrayList<String> newDataPaths = new ArrayList<>();
+        ArrayList<Picture> newDirectoryPictures = new ArrayList<>();
         for (int i = 0; i < dataPaths.size(); i++) {
-            if (dataPathMap.get(dataPaths.get(i)) == null) {
+            if (this.getPictureAtDataPath(dataPaths.get(i)) == null) {
                 Picture newPicture = new Picture(dataPaths.get(i));
                 this.allPictures.add(newPicture);
+                this.indexPicture(newPicture);
+                newPictures.add(newPicture);
+                newDataPaths.add(newPicture.getDataPath());
+                if (this.isHidden(newPicture)) {
+                    this.hiddenPictures.add(newPicture);
+                } else if (this.isInViewingDir(newPicture.getDataPath())) {
+                    this.directoryPictures.add(newPicture);
+                    newDirectoryPictures.add(newPicture);
+                }
             }
         }
-        SerializableOperator.saveFile(this.pathName, this.allPictures);
+        if (newPictures.size() > 0) {
+            this.savePictures(newDataPaths, newPictures);
+        }
+        return newDirectoryPictures;
+    }
+
+    /**
+     * Removes the Pictures at the data paths in dataPaths, whose files no longer exist. Data paths
+     * without a Picture are ignored.
+     *
+     * @param dataPaths data paths of deleted Picture files
+     * @return the number of removed Pictures that were in the viewing directory
+     */
+    synchronized int removePictures(List<String> dataPaths) {
+        ArrayList<Picture> removedPictures = new ArrayList<>();
+        for (String dataPath : dataPaths) {
+            Picture picture = this.getPictureAtDataPath(dataPath);
+            if (picture != null) {
+                removedPictures.add(picture);
+            }
+        }
+        return this.discardPictures(removedPictures, true);
+    }
+
+    /**
+     * Removes every Picture in or under directory, which no longer exists
+     *
+     * @param directory the path of the deleted directory
+     * @return the number of removed Pictures that were in the viewing directory
+     */
+    synchronized int removePicturesUnder(String directory) {
+        if (this.unreadPictures != null) {
+            this.addReadPictures(this.unreadPictures.readDirectoriesUnder(directory));
+        }
+        return this.discardPictures(this.directoryTrie.getPicturesUnder(directory), true);
+    }
+
+    /**
+     * Makes the Pictures stored directly in directory match dataPaths, which were found by listing
+     * directory again: Pictures whose data path is not in dataPaths are removed and data paths
+     * without a Picture get a new one.
+     *
+     * @param directory the directory that was listed
+     * @param dataPaths data paths of the Picture files directly inside of directory
+     * @return true iff a Picture in the viewing directory was added or removed
+     */
+    synchronized boolean reconcileDirectory(String directory, List<String> dataPaths) {
+        HashSet<String> existingDataPaths = new HashSet<>(dataPaths);
+        ArrayList<Picture> removedPictures = new ArrayList<>();
+        for (Picture picture : this.getPicturesInDirectory(directory)) {
+            if (!existingDataPaths.contains(picture.getDataPath())) {
+                removedPictures.add(picture);
+            }
+        }
+        int numOfRemoved = this.discardPictures(removedPictures, true);
+        return this.addPictures(dataPaths).size() > 0 || numOfRemoved > 0;
+    }
+
+    /**
+     * Removes every Picture in removedPictures from allPictures, directoryPictures, hiddenPictures
+     * and the indexes, and saves the removal if save is true
+     *
+     * @param removedPictures the Pictures to remove
+     * @param save            whether to save the removal
+     * @return the number of removed Pictures that were in the viewing directory
+     */
+    private int discardPictures(List<Picture> removedPictures, boolean save) {
+        if (removedPictures.isEmpty()) {
+            return 0;
+        }
+        Set<Picture> removed = Collections.newSetFromMap(new IdentityHashMap<Picture, Boolean>());
+        ArrayList<String> removedDataPaths = new ArrayList<>();
+        int numInViewingDir = 0;
+        for (Picture picture : removedPictures) {
+            if (removed.add(picture)) {
+                removedDataPaths.add(picture.getDataPath());
+                if (this.isInViewingDir(picture.getDataPath())) {
+                    numInViewingDir++;
+                }
+                this.unindexPicture(picture);
+                this.tagIndex.forgetPicture(picture);
+            }
+        }
+        // remove in one pass over each list instead of one search per Picture
+        this.allPictures.removeIf(removed::contains);
+        this.directoryPictures.removeIf(removed::contains);
+        this.hiddenPictures.removeIf(removed::contains);
+        if (save) {
+            if (this.journaled) {
+                if (!this.journal.appendRemovals(removedDataPaths)
+                        || this.journal.getNumOfRecords() >= this.checkpointInterval) {
+                    this.requestCheckpoint();
+                }
+            } else {
+                this.requestCheckpoint();
+            }
+        }
+        return numInViewingDir;
+    }
+
+    /**
+     * Saves the changes made to a single Picture
+     *
+     * @param previousDataPath the data path picture had before the change
+     * @param picture          the Picture that changed
+     * @return true if the change was written to the journal
+     */
+    private boolean savePicture(String previousDataPath, Picture picture) {
+        return this.savePictures(Collections.singletonList(previousDataPath), Collections.singletonList(picture));
+    }
+
+    /**
+     * Saves the changes made to picture that did not change its data path, for example
+     * a change to its previous file names
+     *
+     * @param picture the Picture that changed
+     */
+    public synchronized void savePicture(Picture picture) {
+        this.savePicture(picture.getDataPath(), picture);
+    }
+
+    /**
+     * Saves the changes made to pictures. When journaled, a record for each Picture is appended
+     * to the journal and the .ser file is only rewritten once the journal holds checkpointInterval
+     * records. Otherwise (or if the journal can not be written) the .ser file is rewritten straight away.
+     *
+     * @param previousDataPaths the data path each Picture had before the change
+     * @param pictures          the Pictures that changed
+     * @return true if the changes were written to the journal, false if they are left to the checkpoint
+     */
+    private boolean savePictures(List<String> previousDataPaths, List<Picture> pictures) {
+        if (!this.journaled) {
+            this.requestCheckpoint();
+            return false;
+        }
+        boolean appended = this.journal.append(previousDataPaths, pictures);
+        if (!appended || this.journal.getNumOfRecords() >= this.checkpointInterval) {
+            this.requestCheckpoint();
+        }
+        return appended;
+    }
+
+    /**
+     * Asks the scheduler to write a checkpoint. Until it is written the changes stay in the journal
+     * (or, when not journaled, only in memory for at most the scheduler's maximum staleness).
+     */
+    private void requestCheckpoint() {
+        this.scheduler.markDirty(this.pathName, this::checkpoint);
+    }
+
+    /**
+     * Writes all Pictures to the .ser file and clears the journal, since every record
+     * in it is now contained in the .ser file. If the .ser file can not be written the journals
+     * are kept, so the changes are still replayed on the next start up.
+     *
+     * @return true if the .ser file was written
+     */
+    public synchronized boolean checkpoint() {
+        // the store file is about to be replaced, so every Picture still in it must be read first
+        if (!this.readAllPictures()) {
+            System.out.println("Unable to save file, the Pictures in it could not all be read");
+            return false;
+        }
+        if (!PictureStore.saveFile(this.pathName, this.allPictures)) {
+            return false;
+        }
+        this.journal.clear();
+        this.renameJournal.clear();
+        return true;
+    }
+
+    /**
+     * Applies a record read from the journal to the Picture it describes, creating the Picture
+     * if it does not exist yet. Applying a record that the .ser file already contains changes nothing.
+     *
+     * @param record      the journal record to apply
+     * @param movingFiles the old and new paths of the files moved by a batch that was cut short, which
+     *                    may not be where the record says they are until the batch is recovered
+     */
+    private void applyJournalRecord(PictureJournal.Record record, Set<String> movingFiles) {
+        Picture picture = this.getPictureAtDataPath(record.getPreviousDataPath());
+        if (picture == null && !record.isRemoval()) {
+            // the record may already be in the .ser file if the program stopped after writing a checkpoint
+            // but before clearing the journal, in which case the Picture is at its new data path
+            picture = this.getPictureAtDataPath(record.getDataPath());
+        }
+        if (record.isRemoval()) {
+            if (picture != null) {
+                this.discardPictures(Collections.singletonList(picture), false);
+            }
+            return;
+        }
+        if (picture == null) {
+            if (!new File(record.getDataPath()).exists() && !movingFiles.contains(record.getDataPath())) {
+                // the file was renamed by a later record (which holds the whole state of the Picture) or
+                // the Picture was already renamed in the .ser file, so creating it here would duplicate it
+                return;
+            }
+            picture = new Picture(record.getDataPath(), record.getOriginalName());
+            this.allPictures.add(picture);
+        } else {
+            this.unindexPicture(picture);
+            picture.setDataPath(record.getDataPath());
+            picture.setName(record.getDataPath());
+        }
+        picture.clearAttachedTags();
+        for (String tag : record.getAttachedTags()) {
+            picture.addNewAttachedTag(tag);
+        }
+        picture.clearPrevFileNames();
+        for (String prevFileName : record.getPrevFileNames()) {
+            picture.addNewPrevFileName(prevFileName);
+        }
+        this.indexPicture(picture);
+    }
+
+    /**
+     * Sets whether changes to Pictures are appended to a journal (the default) or saved by
+     * rewriting the whole .ser file after every change
+     *
+     * @param journaled true to journal changes, false to rewrite the .ser file after every change
+     */
+    public synchronized void setJournaled(boolean journaled) {
+        if (this.journaled && !journaled) {
+            this.requestCheckpoint();
+        }
+        this.journaled = journaled;
+    }
+
+    /**
+     * Sets the number of journal records after which all Pictures are written to the .ser file
+     *
+     * @param checkpointInterval the number of records the journal may hold before a checkpoint
+     */
+    public void setCheckpointInterval(int checkpointInterval) {
+        this.checkpointInterval = checkpointInterval;
     }
 
     /**
      * Clears the directoryPictures instance variable and
      * creates a new ArrayList of Picture objects from pictures
-     * that are in this directory and subsequent sub-directories
+     * that are in this directory and subsequent sub-directories.
+     * Only the part of the directory trie under the viewing directory is visited.
      */
-    public void updateDirectoryPictures() {
-        this.directoryPictures.clear();
+    public synchronized void updateDirectoryPictures() {
+        if (this.unreadPictures != null) {
+            this.addReadPictures(this.unreadPictures.readDirectoriesUnder(this.viewingDir));
+        }
         this.hiddenPictures.clear();
-        String pathSplitRegex = Pattern.quote(File.separator);
-        String[] viewingDirPieces = this.viewingDir.split(pathSplitRegex);
-        String[] pictureDirPieces;
-        boolean okToAdd;
-        for (int i = 0; i < this.allPictures.size(); i++) {
-            pictureDirPieces = this.allPictures.get(i).getDataPath().split(pathSplitRegex);
-            okToAdd = true;
-            for (int index=0; index < viewingDirPieces.length; index++){
-                if (!(pictureDirPieces[index].equals(viewingDirPieces[index]))){
-                    okToAdd = false;
-                }
-            }
-            if (okToAdd){
-                this.directoryPictures.add(this.allPictures.get(i));
+        this.requiredTags.clear();
+        this.subdirectoryPicturesHidden = false;
+        this.directoryPictures = this.directoryTrie.getPicturesUnder(this.viewingDir);
+    }
+
+    /**
+     * Returns true iff picture is in the viewing directory but is hidden by the filters applied by
+     * hidePicturesWithoutTags and hideSubdirectoryPictures
+     *
+     * @param picture a Picture
+     * @return true iff picture belongs in hiddenPictures
+     */
+    private boolean isHidden(Picture picture) {
+        if (!this.isInViewingDir(picture.getDataPath())) {
+            return false;
+        }
+        for (String tag : this.requiredTags) {
+            if (!picture.hasTag(tag)) {
+                return true;
             }
         }
+        return this.subdirectoryPicturesHidden && !DirectoryTrie.isDirectlyIn(this.viewingDir, picture.getDataPath());
+    }
+
+    /**
+     * Returns true iff the file at dataPath is in the viewing directory or one of its sub-directories
+     *
+     * @param dataPath the data path of a file
+     * @return true iff the file is in or under the viewing directory
+     */
+    private boolean isInViewingDir(String dataPath) {
+        return DirectoryTrie.isUnder(this.viewingDir, dataPath);
+    }
+
+    /**
+     * Returns the data paths of the Pictures in directoryPictures
+     *
+     * @return list of data paths of the Pictures in this directory (and sub-directories) that are not hidden
+     */
+    public synchronized ArrayList<String> getDirectoryPictureDataPaths() {
+        ArrayList<String> dataPaths = new ArrayList<>();
+        for (Picture picture : this.directoryPictures) {
+            dataPaths.add(picture.getDataPath());
+        }
+        return dataPaths;
     }
 
     /**
@@ -311,17 +1200,19 @@ public class PictureManager {
      *
      * @return ArrayList of all Picture objects that the program has created thus far
      */
-    public ArrayList<Picture> getAllPictures() {
+    public synchronized ArrayList<Picture> getAllPictures() {
+        this.readAllPictures();
         return this.allPictures;
     }
 
     /**
-     * Getter for directoryPictures instance variable
+     * Getter for directoryPictures instance variable. Returns a copy, since Pictures may be added
+     * to directoryPictures by a directory search running on another thread.
      *
      * @return list of all Picture objects that are in this directory (and sub-directories)
      */
-    public ArrayList<Picture> getDirectoryPictures() {
-        return this.directoryPictures;
+    public synchronized ArrayList<Picture> getDirectoryPictures() {
+        return new ArrayList<>(this.directoryPictures);
     }
 
     /**
@@ -329,7 +1220,7 @@ public class PictureManager {
      *
      * @return The current value of this PictureManager's viewingDir
      */
-    public String getViewingDir() {
+    public synchronized String getViewingDir() {
         return this.viewingDir;
     }
 
@@ -338,10 +1229,95 @@ public class PictureManager {
      *
      * @param newDir the new directory that viewingDir will be set to
      */
-    public void setViewingDir(String newDir) {
+    public synchronized void setViewingDir(String newDir) {
         this.viewingDir = newDir;
     }
 
+    /**
+     * Moves every Picture in dataPaths into newDir, keeping its file name. Within one file system each
+     * file is moved in one atomic step; across file systems the files are copied in parallel and then
+     * deleted. The Pictures whose file was moved are updated and saved together, and the Pictures of the
+     * viewing directory are updated once for the whole batch.
+     *
+     * @param dataPaths  the data paths of the Pictures to move
+     * @param newDir     the directory to move the Pictures into
+     * @param onProgress called with the number of files moved so far and the number of files to move,
+     *                   as the moves finish; may be null
+     * @return what happened to each Picture, in the order of dataPaths
+     */
+    public synchronized BatchReport movePictures(List<String> dataPaths, String newDir,
+                                                 BiConsumer<Integer, Integer> onProgress) {
+        // 1) Work out the new data path of every Picture before any file is moved
+        String directoryPrefix = newDir.endsWith(File.separator) ? newDir : newDir + File.separator;
+        BatchReport.Status[] statuses = new BatchReport.Status[dataPaths.size()];
+        String[] newDataPaths = new String[dataPaths.size()];
+        ArrayList<Integer> movedItems = new ArrayList<>();
+        Set<Picture> seenPictures = Collections.newSetFromMap(new IdentityHashMap<Picture, Boolean>());
+        HashSet<String> claimedDataPaths = new HashSet<>();
+        for (int i = 0; i < dataPaths.size(); i++) {
+            newDataPaths[i] = dataPaths.get(i);
+            Picture picture = this.getPictureAtDataPath(dataPaths.get(i));
+            if (picture == null) {
+                statuses[i] = BatchReport.Status.NOT_FOUND;
+                continue;
+            }
+            String newDataPath = directoryPrefix + picture.getName();
+            if (!seenPictures.add(picture) || newDataPath.equals(picture.getDataPath())) {
+                statuses[i] = BatchReport.Status.UNCHANGED;
+                continue;
+            }
+            if (this.getPictureAtDataPath(newDataPath) != null || new File(newDataPath).exists()
+                    || !claimedDataPaths.add(newDataPath)) {
+                statuses[i] = BatchReport.Status.NAME_TAKEN;
+                continue;
+            }
+            newDataPaths[i] = newDataPath;
+            movedItems.add(i);
+        }
+
+        // 2) Move the files
+        ArrayList<String> oldPaths = new ArrayList<>();
+        ArrayList<String> newPaths = new ArrayList<>();
+        for (int i : movedItems) {
+            oldPaths.add(dataPaths.get(i));
+            newPaths.add(newDataPaths[i]);
+        }
+        boolean[] moved = this.moveFiles(oldPaths, newPaths, onProgress);
+
+        // 3) Update the Pictures whose file was moved and save them with a single write
+        ArrayList<String> previousDataPaths = new ArrayList<>();
+        ArrayList<Picture> movedPictures = new ArrayList<>();
+        boolean viewingDirChanged = false;
+        for (int j = 0; j < movedItems.size(); j++) {
+            int i = movedItems.get(j);
+            if (!moved[j]) {
+                statuses[i] = BatchReport.Status.FAILED;
+                newDataPaths[i] = dataPaths.get(i);
+                continue;
+            }
+            Picture picture = this.directoryTrie.get(dataPaths.get(i));
+            this.unindexPicture(picture);
+            picture.setDataPath(newDataPaths[i]);
+            this.indexPicture(picture);
+            statuses[i] = BatchReport.Status.CHANGED;
+            previousDataPaths.add(dataPaths.get(i));
+            movedPictures.add(picture);
+            viewingDirChanged |= this.isInViewingDir(dataPaths.get(i)) || this.isInViewingDir(newDataPaths[i]);
+        }
+        // with nothing to save, no file was moved and the rename journal can be cleared
+        boolean saved = movedPictures.isEmpty() || this.savePictures(previousDataPaths, movedPictures);
+        this.finishMoves(saved);
+        if (viewingDirChanged) {
+            this.updateDirectoryPictures();
+        }
+
+        BatchReport report = new BatchReport();
+        for (int i = 0; i < dataPaths.size(); i++) {
+            report.add(dataPaths.get(i), newDataPaths[i], statuses[i]);
+        }
+        return report;
+    }
+
     /**
      * Changes the directory of the photo with the current location of dataPath
      * For example, suppose we have a Picture object with data path:
@@ -353,23 +1329,21 @@ public class PictureManager {
      * @param newDir  new directory to move photo into
      * @return message describing the result of this method
      */
-    public String changeDirectoryOfPicture(Picture picture, String newDir) {
-        try {
-            Path currentDirectory = Paths.get(picture.getDataPath());
-            //Creates a Path object with absolute directory of picture.getDataPath.
-            String newDataPath = newDir + File.separator + picture.getName();
-            Path newDirectory = Paths.get(newDataPath);
-            Files.move(currentDirectory, newDirectory);  //moves file at currentDirectory to newDirectory
-            //Files.move(...) will throw a FileAlreadyExistsException if the method fails due to a file with the
-            // same name already existing at newDirectory
-            picture.setDataPath(newDataPath);
-            SerializableOperator.saveFile(this.pathName, this.allPictures);
-            return ("File movement was successful");
-        } catch (FileAlreadyExistsException e1) {
+    public synchronized String changeDirectoryOfPicture(Picture picture, String newDir) {
+        String oldDataPath = picture.getDataPath();
+        String newDataPath = newDir + File.separator + picture.getName();
+        if (new File(newDataPath).exists()) {
             return ("File already exists at target directory!");
-        } catch (IOException e2) {
+        }
+        // move the file first, leaving the Picture as it is if that fails
+        if (!this.moveFile(oldDataPath, newDataPath)) {
             return ("File movement was unsuccessful");
         }
+        this.unindexPicture(picture);
+        picture.setDataPath(newDataPath);
+        this.indexPicture(picture);
+        this.finishMoves(this.savePicture(oldDataPath, picture));
+        return ("File movement was successful");
     }
 
     /**
@@ -379,60 +1353,48 @@ public class PictureManager {
      *
      * @param tagsOfInterest List containing tags that the pictures should contain
      */
-    void hidePicturesWithoutTags(ArrayList<String> tagsOfInterest) {
+    synchronized void hidePicturesWithoutTags(ArrayList<String> tagsOfInterest) {
         // 1) Check if there are any tags that we want to filter pictures by
         if (tagsOfInterest.size() == 0) {
             return;
         }
 
-        // 2) For every tag in the tagsOfInterest, check every Picture in the
-        //    directoryPictures attribute to see if it contains the tag. If it
-        //    doesn't, add that Picture object to the hiddenPictures attribute
-        //    and remove it from directoryPictures.
-        for (String currentTag : tagsOfInterest) {
-            ArrayList<Picture> updatedDirectoryPictures = new ArrayList<>();
+        // 2) Intersect the tag bitmaps of every tag in tagsOfInterest to get the
+        //    Pictures that contain all of the tags
+        this.requiredTags.addAll(tagsOfInterest);
+        BitSet picturesWithAllTags = this.tagIndex.getPicturesWithAllTags(tagsOfInterest);
 
-            for (int i = 0; i < this.directoryPictures.size(); i++) {
-                if (this.directoryPictures.get(i).getAttachedTags().contains(currentTag)) {
-                    updatedDirectoryPictures.add(this.directoryPictures.get(i));
-                } else {
-                    this.hiddenPictures.add(this.directoryPictures.get(i));
-                }
+        // 3) Check every Picture in the directoryPictures attribute against the
+        //    intersection. If it isn't in it, add that Picture object to the
+        //    hiddenPictures attribute and remove it from directoryPictures.
+        ArrayList<Picture> updatedDirectoryPictures = new ArrayList<>();
+        for (int i = 0; i < this.directoryPictures.size(); i++) {
+            int ordinal = this.tagIndex.getOrdinal(this.directoryPictures.get(i));
+            if (picturesWithAllTags.get(ordinal)) {
+                updatedDirectoryPictures.add(this.directoryPictures.get(i));
+            } else {
+                this.hiddenPictures.add(this.directoryPictures.get(i));
             }
-            this.directoryPictures = updatedDirectoryPictures;
         }
+        this.directoryPictures = updatedDirectoryPictures;
     }
 
     /**
      * Modifies the directoryPictures attribute so that it only contains Pictures directly
      * in the current viewing directory, i.e., no pictures from subdirectories.
-     * <p>
-     * Lines 410-411 was adapted from a post by Jon Skeet on 20120426 to a stackoverflow forum here:
-     * https://stackoverflow.com/questions/10336293/splitting-filenames-using-system-file-separator-symbol
      */
-    void hideSubdirectoryPictures() {
+    synchronized void hideSubdirectoryPictures() {
+        this.subdirectoryPicturesHidden = true;
         ArrayList<Picture> updatedDirectoryPictures = new ArrayList<>();
 
-        for (int i = 0; i < this.directoryPictures.size(); i++) {
-            // Get the exact directory that the Picture object is stored in and store it in
-            // pictureDirectory. For example, if the data path to a picture is:
-            // C:/Users/Somebody/Pictures/subdirectory/chicken.png
-            // then, pictureDirectory = "C:/Users/Somebody/Pictures/subdirectory".
-            String regex = Pattern.quote(System.getProperty("file.separator"));
-            String[] dataPathComponents = this.directoryPictures.get(i).getDataPath().split(regex);
-            String pictureDirectory = "";
-            for (int index = 0; index < dataPathComponents.length - 1; index++) {
-                if (index < dataPathComponents.length - 2) {
-                    pictureDirectory += dataPathComponents[index] + File.separator;
-                } else {
-                    pictureDirectory += dataPathComponents[index];
-                }
-            }
+        // The Pictures stored directly in viewingDir, looked up from the bucket of its node in the
+        // directory trie. For example, C:/Users/Somebody/Pictures/chicken.png is one of them when viewingDir
+        // is C:/Users/Somebody/Pictures, but C:/Users/Somebody/Pictures/subdirectory/chicken.png is not.
+        Set<Picture> directChildren = Collections.newSetFromMap(new IdentityHashMap<Picture, Boolean>());
+        directChildren.addAll(this.directoryTrie.getPicturesIn(this.viewingDir));
 
-            // Checks to see if the pictureDirectory matches the viewingDir attribute completely via
-            // String.equals() comparison. If pictureDirectory is a subdirectory of viewingDir, then
-            // the if statement on the following line will be false.
-            if (pictureDirectory.equals(this.viewingDir)) {
+        for (int i = 0; i < this.directoryPictures.size(); i++) {
+            if (directChildren.contains(this.directoryPictures.get(i))) {
                 updatedDirectoryPictures.add(this.directoryPictures.get(i));
             } else {
                 this.hiddenPictures.add(this.directoryPictures.get(i));
@@ -446,11 +1408,13 @@ public class PictureManager {
      * the hiddenPictures attribute are added to the directoryPictures list
      * attribute.
      */
-    void showHiddenPictures() {
+    synchronized void showHiddenPictures() {
         for (int i = 0; i < this.hiddenPictures.size(); i++) {
             this.directoryPictures.add(this.hiddenPictures.get(i));
         }
         this.hiddenPictures.clear();
+        this.requiredTags.clear();
+        this.subdirectoryPicturesHidden = false;
     }
 }
 
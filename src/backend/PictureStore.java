@@ -0,0 +1,497 @@
+package backend;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads and writes the Pictures of a PictureManager in a compact binary format, in place of Java
+ * serialization, which writes the class and field names of every object and is slow to read back.
+ * <p>
+ * A store file is laid out as:
+ * <pre>
+ * header:       the magic bytes "PICS", the format version
+ * string table: the number of Strings, then each String (every directory and tag, written once)
+ * groups:       for every directory, its String id and number of Pictures, then each of its Pictures:
+ *               name, original name (0 when it is the name), tag ids, previous file names
+ * footer:       the number of groups, then the String id, number of Pictures and file offset of each group
+ * trailer:      the file offset of the footer as 8 bytes
+ * </pre>
+ * Every number except the trailer is an unsigned varint and every String is its UTF-8 length followed
+ * by its UTF-8 bytes. Files written by Java serialization (the .ser files of earlier versions) are still
+ * read, and are rewritten in this format the next time the Pictures are saved.
+ */
+public class PictureStore {
+
+    /**
+     * The first bytes of every store file
+     */
+    private static final byte[] MAGIC = {'P', 'I', 'C', 'S'};
+
+    /**
+     * The version of the format written by saveFile
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * The first two bytes of a file written by Java serialization
+     */
+    private static final int SERIALIZATION_MAGIC = 0xACED;
+
+    /**
+     * Reads the Pictures in the store file at pathName, which may also be a .ser file written by Java
+     * serialization. Returns an empty ArrayList if the file is empty.
+     *
+     * @param pathName the path of the store file
+     * @return the Pictures in the file
+     * @throws IOException when the file can not be read or is not a complete store or .ser file
+     */
+    public static ArrayList<Picture> readFile(String pathName) throws IOException {
+        File file = new File(pathName);
+        if (file.length() < 2) {
+            return new ArrayList<>();
+        }
+        try {
+            if (isSerializedFile(file)) {
+                return readSerializedFile(file);
+            }
+            if (file.length() > Integer.MAX_VALUE) {
+                // too large for one buffer, so read it one directory at a time
+                LazyPictureStore store = LazyPictureStore.open(pathName);
+                ArrayList<Picture> pictures = (store == null) ? null : store.readAll();
+                if (store == null || !store.isFullyRead()) {
+                    throw new IOException("The store file " + pathName + " is damaged");
+                }
+                return pictures;
+            }
+            return readPictures(readBytes(file));
+        } catch (RuntimeException e) {
+            // a store file cut short or corrupted is read past its end or to a wrong offset
+            throw new IOException("The store file " + pathName + " is damaged", e);
+        }
+    }
+
+    /**
+     * Writes pictures to the store file at pathName. The file is written next to the old one and then
+     * moved over it, so the old file is kept whole if writing fails.
+     *
+     * @param pathName the path of the store file
+     * @param pictures the Pictures to write
+     * @return true if the file was written, false if it could not be and the old file is unchanged
+     */
+    public static boolean saveFile(String pathName, List<Picture> pictures) {
+        File file = new File(pathName);
+        File tempFile = new File(pathName + ".tmp");
+        try {
+            try (FileOutputStream stream = new FileOutputStream(tempFile);
+                 CountingOutputStream counter = new CountingOutputStream(new BufferedOutputStream(stream, 1 << 16));
+                 DataOutputStream output = new DataOutputStream(counter)) {
+                writePictures(output, counter, pictures);
+                output.flush();
+                // the file must be on disk before it replaces the old one
+                stream.getFD().sync();
+            }
+            try {
+                Files.move(tempFile.toPath(), file.toPath(),
+                        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            return true;
+        } catch (IOException e) {
+            System.out.println("Unable to save file, check pathname");
+            tempFile.delete();
+            return false;
+        }
+    }
+
+    /**
+     * Returns true iff the file at pathName is a store file written by saveFile, rather than an empty
+     * file or a .ser file written by Java serialization
+     *
+     * @param pathName the path of the file
+     * @return true iff the file starts with the magic bytes of a store file
+     */
+    public static boolean isStoreFile(String pathName) {
+        try (InputStream input = new FileInputStream(pathName)) {
+            for (byte magicByte : MAGIC) {
+                if (input.read() != magicByte) {
+                    return false;
+                }
+            }
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Returns true iff file was written by Java serialization
+     *
+     * @param file the file to check
+     * @return true iff file starts with the Java serialization magic number
+     * @throws IOException when file can not be read
+     */
+    private static boolean isSerializedFile(File file) throws IOException {
+        try (InputStream input = new FileInputStream(file)) {
+            return ((input.read() << 8) | input.read()) == SERIALIZATION_MAGIC;
+        }
+    }
+
+    /**
+     * Reads the Pictures in a .ser file written by Java serialization
+     *
+     * @param file the .ser file
+     * @return the Pictures in file
+     * @throws IOException when file can not be read or does not hold a list of Pictures
+     */
+    private static ArrayList<Picture> readSerializedFile(File file) throws IOException {
+        try (ObjectInputStream input = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            ArrayList<Picture> pictures = new ArrayList<>();
+            for (Object picture : (ArrayList<?>) input.readObject()) {
+                pictures.add((Picture) picture);
+            }
+            return pictures;
+        } catch (ClassNotFoundException | ClassCastException e) {
+            throw new IOException("The .ser file " + file.getPath() + " does not hold Pictures", e);
+        }
+    }
+
+    /**
+     * Reads the whole of file into a buffer
+     *
+     * @param file the file to read
+     * @return a buffer holding the contents of file
+     * @throws IOException when file can not be read
+     */
+    private static ByteBuffer readBytes(File file) throws IOException {
+        try (FileChannel channel = new FileInputStream(file).getChannel()) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("The store file " + file.getPath() + " is too large to read at once");
+            }
+            ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+            while (buffer.hasRemaining() && channel.read(buffer) != -1) {
+                // keep reading until the buffer is full
+            }
+            buffer.flip();
+            return buffer;
+        }
+    }
+
+    /**
+     * Writes pictures to output in the store format
+     *
+     * @param output   the stream to write to
+     * @param counter  the stream output writes through, which counts the bytes written so far
+     * @param pictures the Pictures to write
+     * @throws IOException when output can not be written to
+     */
+    private static void writePictures(DataOutputStream output, CountingOutputStream counter, List<Picture> pictures)
+            throws IOException {
+        // group the Pictures by directory and give every directory and tag an id in the string table
+        LinkedHashMap<String, ArrayList<Picture>> groups = new LinkedHashMap<>();
+        HashMap<String, Integer> stringIds = new HashMap<>();
+        ArrayList<String> strings = new ArrayList<>();
+        for (Picture picture : pictures) {
+            String directory = picture.getDirectoryPrefix();
+            ArrayList<Picture> group = groups.get(directory);
+            if (group == null) {
+                group = new ArrayList<>();
+                groups.put(directory, group);
+                addString(directory, stringIds, strings);
+            }
+            group.add(picture);
+            for (String tag : picture.getAttachedTags()) {
+                addString(tag, stringIds, strings);
+            }
+        }
+
+        output.write(MAGIC);
+        writeVarint(output, VERSION);
+        writeVarint(output, strings.size());
+        for (String string : strings) {
+            writeString(output, string);
+        }
+
+        long[] groupOffsets = new long[groups.size()];
+        int groupNumber = 0;
+        for (Map.Entry<String, ArrayList<Picture>> group : groups.entrySet()) {
+            // DataOutputStream.size stops counting at 2GB, so the offsets are counted as longs
+            groupOffsets[groupNumber] = counter.getCount();
+            groupNumber++;
+            writeVarint(output, stringIds.get(group.getKey()));
+            writeVarint(output, group.getValue().size());
+            for (Picture picture : group.getValue()) {
+                writeString(output, picture.getName());
+                if (picture.getOriginalName().equals(picture.getName())) {
+                    writeVarint(output, 0);
+                } else {
+                    byte[] originalName = picture.getOriginalName().getBytes(StandardCharsets.UTF_8);
+                    writeVarint(output, originalName.length + 1);
+                    output.write(originalName);
+                }
+                ArrayList<String> attachedTags = picture.getAttachedTags();
+                writeVarint(output, attachedTags.size());
+                for (String tag : attachedTags) {
+                    writeVarint(output, stringIds.get(tag));
+                }
+                ArrayList<String> prevFileNames = picture.getPrevFileNames();
+                writeVarint(output, prevFileNames.size());
+                for (String prevFileName : prevFileNames) {
+                    writeString(output, prevFileName);
+                }
+            }
+        }
+
+        long footerOffset = counter.getCount();
+        writeVarint(output, groups.size());
+        groupNumber = 0;
+        for (Map.Entry<String, ArrayList<Picture>> group : groups.entrySet()) {
+            writeVarint(output, stringIds.get(group.getKey()));
+            writeVarint(output, group.getValue().size());
+            writeVarint(output, groupOffsets[groupNumber]);
+            groupNumber++;
+        }
+        output.writeLong(footerOffset);
+    }
+
+    /**
+     * Reads the Pictures in buffer, which holds a whole store file
+     *
+     * @param buffer the contents of a store file
+     * @return the Pictures in the file
+     * @throws IOException when buffer does not hold a store file this version can read
+     */
+    private static ArrayList<Picture> readPictures(ByteBuffer buffer) throws IOException {
+        String[] strings = readHeader(buffer);
+
+        // the footer gives the number of Pictures up front, so the list is only allocated once
+        int bodyStart = buffer.position();
+        buffer.position((int) buffer.getLong(buffer.limit() - 8));
+        long numOfGroups = readVarint(buffer);
+        int numOfPictures = 0;
+        for (long i = 0; i < numOfGroups; i++) {
+            readVarint(buffer);
+            numOfPictures += (int) readVarint(buffer);
+            readVarint(buffer);
+        }
+        buffer.position(bodyStart);
+
+        ArrayList<Picture> pictures = new ArrayList<>(numOfPictures);
+        for (long i = 0; i < numOfGroups; i++) {
+            String directory = strings[(int) readVarint(buffer)];
+            long groupSize = readVarint(buffer);
+            for (long j = 0; j < groupSize; j++) {
+                pictures.add(readPicture(buffer, directory, strings));
+            }
+        }
+        return pictures;
+    }
+
+    /**
+     * Reads the header and string table at the start of buffer, leaving buffer positioned at the first group
+     *
+     * @param buffer the contents of a store file
+     * @return the string table of the file
+     * @throws IOException when buffer does not hold a store file this version can read
+     */
+    static String[] readHeader(ByteBuffer buffer) throws IOException {
+        for (byte magicByte : MAGIC) {
+            if (buffer.get() != magicByte) {
+                throw new IOException("not a picture store file");
+            }
+        }
+        int version = (int) readVarint(buffer);
+        if (version > VERSION) {
+            throw new IOException("picture store version " + version + " is newer than " + VERSION);
+        }
+        String[] strings = new String[(int) readVarint(buffer)];
+        for (int i = 0; i < strings.length; i++) {
+            strings[i] = readString(buffer);
+        }
+        return strings;
+    }
+
+    /**
+     * Reads one Picture of a group
+     *
+     * @param buffer    the contents of a store file, positioned at the Picture
+     * @param directory the directory of the group
+     * @param strings   the string table of the file
+     * @return the Picture
+     */
+    static Picture readPicture(ByteBuffer buffer, String directory, String[] strings) {
+        String name = readString(buffer);
+        int originalNameLength = (int) readVarint(buffer);
+        String originalName = name;
+        if (originalNameLength > 0) {
+            originalName = readString(buffer, originalNameLength - 1);
+        }
+        String[] attachedTags = new String[(int) readVarint(buffer)];
+        for (int i = 0; i < attachedTags.length; i++) {
+            attachedTags[i] = strings[(int) readVarint(buffer)];
+        }
+        int numOfPrevFileNames = (int) readVarint(buffer);
+        ArrayList<String> prevFileNames = null;
+        if (numOfPrevFileNames > 0) {
+            prevFileNames = new ArrayList<>(numOfPrevFileNames);
+            for (int i = 0; i < numOfPrevFileNames; i++) {
+                prevFileNames.add(readString(buffer));
+            }
+        }
+        return new Picture(directory, name, originalName, attachedTags, prevFileNames);
+    }
+
+    /**
+     * Adds string to the string table if it is not in it yet
+     *
+     * @param string    the String to add
+     * @param stringIds the id of every String in the table
+     * @param strings   the Strings in the table, in order of id
+     */
+    private static void addString(String string, HashMap<String, Integer> stringIds, ArrayList<String> strings) {
+        if (!stringIds.containsKey(string)) {
+            stringIds.put(string, strings.size());
+            strings.add(string);
+        }
+    }
+
+    /**
+     * Writes value as an unsigned varint: seven bits per byte, lowest first, with the high bit
+     * set on every byte but the last
+     *
+     * @param output the stream to write to
+     * @param value  a value that is not negative
+     * @throws IOException when output can not be written to
+     */
+    private static void writeVarint(DataOutputStream output, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            output.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        output.write((int) value);
+    }
+
+    /**
+     * Reads an unsigned varint written by writeVarint
+     *
+     * @param buffer the buffer to read from
+     * @return the value read
+     */
+    static long readVarint(ByteBuffer buffer) {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return value;
+    }
+
+    /**
+     * Writes string as its UTF-8 length followed by its UTF-8 bytes
+     *
+     * @param output the stream to write to
+     * @param string the String to write
+     * @throws IOException when output can not be written to
+     */
+    private static void writeString(DataOutputStream output, String string) throws IOException {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        writeVarint(output, bytes.length);
+        output.write(bytes);
+    }
+
+    /**
+     * Reads a String written by writeString
+     *
+     * @param buffer the buffer to read from
+     * @return the String read
+     */
+    static String readString(ByteBuffer buffer) {
+        return readString(buffer, (int) readVarint(buffer));
+    }
+
+    /**
+     * Reads a String of length UTF-8 bytes
+     *
+     * @param buffer the buffer to read from
+     * @param length the number of bytes in the String
+     * @return the String read
+     */
+    private static String readString(ByteBuffer buffer, int length) {
+        String string;
+        if (buffer.hasArray()) {
+            string = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length,
+                    StandardCharsets.UTF_8);
+        } else {
+            byte[] bytes = new byte[length];
+            buffer.duplicate().get(bytes);
+            string = new String(bytes, StandardCharsets.UTF_8);
+        }
+        buffer.position(buffer.position() + length);
+        return string;
+    }
+
+    /**
+     * An OutputStream that counts the bytes written through it as a long, since the count of
+     * DataOutputStream stops at Integer.MAX_VALUE
+     */
+    private static class CountingOutputStream extends FilterOutputStream {
+
+        /**
+         * The number of bytes written so far
+         */
+        private long count = 0;
+
+        /**
+         * Creates a CountingOutputStream writing to output
+         *
+         * @param output the stream to write to
+         */
+        private CountingOutputStream(OutputStream output) {
+            super(output);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            this.out.write(b);
+            this.count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            this.out.write(b, off, len);
+            this.count += len;
+        }
+
+        /**
+         * Returns the number of bytes written so far
+         *
+         * @return number of bytes written
+         */
+        private long getCount() {
+            return this.count;
+        }
+    }
+}
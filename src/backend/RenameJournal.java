@@ -0,0 +1,179 @@
+package backend;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A journal of the files a batch is about to rename or move, so a batch cut short by a crash can be
+ * finished or undone when the program starts again.
+ * <p>
+ * Before the first file of a batch is renamed, every rename of the batch is written to the journal and
+ * forced to disk. Once the Pictures of the batch are saved the journal is cleared. A journal that is not
+ * empty on startup therefore lists the only files that may disagree with the saved Pictures: for each of
+ * them, the file is moved to wherever the saved Picture says it is, which replays the renames that were
+ * saved and undoes the ones that were not. A journal whose writing was cut short is ignored, since no
+ * file is renamed before it is complete.
+ */
+public class RenameJournal {
+
+    /**
+     * The file the journal is kept in
+     */
+    private File file;
+
+    /**
+     * Opens the journal kept in the file at pathName, which is created when a batch begins
+     *
+     * @param pathName the path of the journal file
+     */
+    public RenameJournal(String pathName) {
+        this.file = new File(pathName);
+    }
+
+    /**
+     * Records that the file at each path in oldPaths is about to be moved to the path at the same index
+     * in newPaths, replacing any batch recorded before, and forces the record to disk
+     *
+     * @param oldPaths the current paths of the files
+     * @param newPaths the paths the files will be moved to
+     * @return true if the batch was recorded, false if the journal could not be written
+     */
+    public boolean begin(List<String> oldPaths, List<String> newPaths) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream output = new DataOutputStream(bytes);
+            output.writeInt(oldPaths.size());
+            for (int i = 0; i < oldPaths.size(); i++) {
+                output.writeUTF(oldPaths.get(i));
+                output.writeUTF(newPaths.get(i));
+            }
+            output.close();
+
+            try (FileOutputStream journal = new FileOutputStream(this.file)) {
+                bytes.writeTo(journal);
+                journal.getFD().sync();
+            }
+            return true;
+        } catch (IOException e) {
+            System.out.println("Unable to write the rename journal, check pathname");
+            return false;
+        }
+    }
+
+    /**
+     * Returns the renames of the batch recorded by begin that has not been cleared yet
+     *
+     * @return each rename as {old path, new path}, empty if there is no complete batch in the journal
+     */
+    public ArrayList<String[]> readPending() {
+        ArrayList<String[]> renames = new ArrayList<>();
+        if (!this.file.exists()) {
+            return renames;
+        }
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(this.file)))) {
+            int numOfRenames = input.readInt();
+            for (int i = 0; i < numOfRenames; i++) {
+                renames.add(new String[]{input.readUTF(), input.readUTF()});
+            }
+        } catch (EOFException e) {
+            // the batch was not completely recorded, so none of its files were moved
+            renames.clear();
+        } catch (IOException e) {
+            System.out.println("Cannot read from the rename journal");
+            renames.clear();
+        }
+        return renames;
+    }
+
+    /**
+     * Returns whether there is no batch in the journal
+     *
+     * @return true if the journal has been cleared since the last batch began
+     */
+    public boolean isEmpty() {
+        return !this.file.exists();
+    }
+
+    /**
+     * Clears the journal, once the Pictures of the batch have been saved
+     */
+    public void clear() {
+        if (this.file.exists() && !this.file.delete()) {
+            System.out.println("Unable to clear the rename journal, check pathname");
+        }
+    }
+
+    /**
+     * Moves the file at oldPath to newPath. Within one file system the file is renamed in one atomic step.
+     * Across file systems it is streamed to a temporary file next to newPath, which is renamed to newPath
+     * once it is complete, and then the file at oldPath is deleted, so newPath never holds part of a file.
+     * Never replaces a file already at newPath.
+     *
+     * @param oldPath the current path of the file
+     * @param newPath the path to move the file to
+     * @return true if the file was moved, false if it was not
+     */
+    public static boolean move(String oldPath, String newPath) {
+        Path source = Paths.get(oldPath);
+        Path target = Paths.get(newPath);
+        try {
+            // an atomic move may replace an existing file on some systems, so check first
+            if (Files.exists(target)) {
+                return false;
+            }
+            try {
+                Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+                return true;
+            } catch (AtomicMoveNotSupportedException e) {
+                // the target is on another file system, so the file has to be copied
+            }
+            Path copy = getCopyPath(newPath);
+            Files.copy(source, copy, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+            try {
+                Files.move(copy, target, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(copy, target);
+            }
+            try {
+                Files.delete(source);
+            } catch (IOException e) {
+                // keep the file where it was rather than having it in both places
+                Files.delete(target);
+                return false;
+            }
+            return true;
+        } catch (IOException | SecurityException e) {
+            try {
+                Files.deleteIfExists(getCopyPath(newPath));
+            } catch (IOException | SecurityException e2) {
+                System.out.println("Unable to delete the partial copy of " + newPath);
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Returns the path of the temporary file a file being moved to newPath from another file system is
+     * copied to
+     *
+     * @param newPath the path the file is being moved to
+     * @return the path of the temporary copy
+     */
+    static Path getCopyPath(String newPath) {
+        return Paths.get(newPath + ".moving");
+    }
+}
@@ -0,0 +1,192 @@
+package backend;
+
+import java.io.File;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Set;
+
+/**
+ * A cache of directory listings used by FileSearcher, saved to a .ser file so it survives restarts.
+ * <p>
+ * For every directory searched, the cache stores the directory's last-modified time together with the
+ * names of the pictures and sub-directories directly inside of it. Adding, removing or renaming an entry
+ * of a directory changes its last-modified time, so as long as that time is unchanged the cached names can
+ * be used instead of listing the directory again. Only the directories whose time changed are listed.
+ */
+public class ScanCache {
+
+    /**
+     * The directory to the .ser file for ScanCache including file name and extension
+     */
+    private String pathName;
+
+    /**
+     * Schedules the writes of the .ser file for ScanCache
+     */
+    private PersistenceScheduler scheduler;
+
+    /**
+     * Maps the path of a directory to its cached listing
+     */
+    private HashMap<String, Entry> entries = new HashMap<>();
+
+    /**
+     * Constructs a new ScanCache object
+     *
+     * @param pathName  the relative directory to the .ser file for this ScanCache
+     * @param scheduler schedules the writes of the .ser file for this ScanCache
+     */
+    public ScanCache(String pathName, PersistenceScheduler scheduler) {
+        this.pathName = pathName;
+        this.scheduler = scheduler;
+        boolean initializeResult = SerializableOperator.initializeFile(this.pathName);
+        if (initializeResult) {
+            for (Object entry : SerializableOperator.readFile(pathName)) {
+                Entry cachedEntry = (Entry) entry;
+                this.entries.put(cachedEntry.directory, cachedEntry);
+            }
+        } else {
+            SerializableOperator.createFile(pathName, false);
+        }
+    }
+
+    /**
+     * Returns the cached listing of directory if directory has not been modified since it was cached
+     *
+     * @param directory    the path of the directory
+     * @param lastModified the current last-modified time of the directory
+     * @return the cached listing, or null if there is none or directory has been modified since
+     */
+    public synchronized Entry get(String directory, long lastModified) {
+        Entry entry = this.entries.get(directory);
+        if (entry == null || entry.lastModified != lastModified) {
+            return null;
+        }
+        return entry;
+    }
+
+    /**
+     * Caches the listing of directory. The last-modified time must have been read before the
+     * directory was listed, so that a change made while listing it is noticed the next time.
+     *
+     * @param directory         the path of the directory
+     * @param lastModified      the last-modified time of the directory read before listing it
+     * @param pictureNames      the names of the pictures directly inside of directory
+     * @param subdirectoryNames the names of the sub-directories directly inside of directory
+     */
+    public synchronized void put(String directory, long lastModified, ArrayList<String> pictureNames,
+                                 ArrayList<String> subdirectoryNames) {
+        this.entries.put(directory, new Entry(directory, lastModified, pictureNames, subdirectoryNames));
+    }
+
+    /**
+     * Called when a search of the directory root is complete. Removes the cached listings of directories
+     * under root that were not reached by the search (they no longer exist) and saves the cache. Each
+     * search keeps its own set of the directories it reached, so searches that overlap, such as one started
+     * by a change in a watched directory while another is running, do not remove each other's listings.
+     *
+     * @param root                the directory that was searched
+     * @param searchedDirectories the paths of every directory the search reached
+     */
+    public synchronized void finishSearch(String root, Set<String> searchedDirectories) {
+        String rootPrefix = root.endsWith(File.separator) ? root : root + File.separator;
+        Iterator<String> directories = this.entries.keySet().iterator();
+        while (directories.hasNext()) {
+            String directory = directories.next();
+            boolean underRoot = directory.equals(root) || directory.startsWith(rootPrefix);
+            if (underRoot && !searchedDirectories.contains(directory)) {
+                directories.remove();
+            }
+        }
+        this.save();
+    }
+
+    /**
+     * Returns the number of directories in the cache
+     *
+     * @return number of cached directory listings
+     */
+    public synchronized int size() {
+        return this.entries.size();
+    }
+
+    /**
+     * Asks the scheduler to write the current state of the cache to the .ser file
+     */
+    private void save() {
+        this.scheduler.markDirty(this.pathName, () -> {
+            ArrayList<Entry> snapshot;
+            synchronized (this) {
+                snapshot = new ArrayList<>(this.entries.values());
+            }
+            SerializableOperator.saveFile(this.pathName, snapshot);
+        });
+    }
+
+    /**
+     * The cached listing of a single directory. Entries are never modified once created.
+     */
+    public static class Entry implements Serializable {
+
+        /**
+         * The version of the serialized form of Entry, which has not changed since the cache was added
+         */
+        private static final long serialVersionUID = -1749564976537826821L;
+
+        /**
+         * The path of the directory
+         */
+        private String directory;
+
+        /**
+         * The last-modified time of the directory when it was listed
+         */
+        private long lastModified;
+
+        /**
+         * The names of the pictures directly inside of the directory
+         */
+        private ArrayList<String> pictureNames;
+
+        /**
+         * The names of the sub-directories directly inside of the directory
+         */
+        private ArrayList<String> subdirectoryNames;
+
+        /**
+         * Creates a new Entry
+         *
+         * @param directory         the path of the directory
+         * @param lastModified      the last-modified time of the directory when it was listed
+         * @param pictureNames      the names of the pictures directly inside of the directory
+         * @param subdirectoryNames the names of the sub-directories directly inside of the directory
+         */
+        Entry(String directory, long lastModified, ArrayList<String> pictureNames,
+              ArrayList<String> subdirectoryNames) {
+            this.directory = directory;
+            this.lastModified = lastModified;
+            this.pictureNames = pictureNames;
+            this.subdirectoryNames = subdirectoryNames;
+        }
+
+        /**
+         * Getter for the pictureNames instance variable
+         *
+         * @return the names of the pictures directly inside of the directory
+         */
+        public ArrayList<String> getPictureNames() {
+            return this.pictureNames;
+        }
+
+        /**
+         * Getter for the subdirectoryNames instance variable
+         *
+         * @return the names of the sub-directories directly inside of the directory
+         */
+        public ArrayList<String> getSubdirectoryNames() {
+            return this.subdirectoryNames;
+        }
+    }
+}
@@ -0,0 +1,368 @@
+package backend;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * An append-only file of records split into numbered segments kept in one directory.
+ * <p>
+ * Records are only ever appended to the newest segment, so appending costs the same however many
+ * records were written before. Once the newest segment grows past a maximum size, or has been written
+ * to for longer than a maximum time, it is compressed with gzip and a new segment is started. Every
+ * segment starts with the time it was started, and each record is written as its length followed by its
+ * contents, so a record that was only partly written when the program stopped is detected and cut off.
+ */
+public class SegmentedLogFile {
+
+    /**
+     * The ending of the name of the segment being appended to
+     */
+    private static final String ACTIVE_SUFFIX = ".log";
+
+    /**
+     * The ending of the name of a compressed segment
+     */
+    private static final String ARCHIVED_SUFFIX = ".log.gz";
+
+    /**
+     * The number of bytes at the start of every segment, which hold the time the segment was started
+     */
+    private static final int HEADER_BYTES = 8;
+
+    /**
+     * The number of bytes read at a time from a long record of a compressed segment
+     */
+    private static final int CHUNK_BYTES = 1 << 16;
+
+    /**
+     * The directory holding the segments
+     */
+    private File directory;
+
+    /**
+     * The number of the segment being appended to. Segments are numbered from 0 in the order they were started.
+     */
+    private int activeSequence;
+
+    /**
+     * The time in milliseconds at which the segment being appended to was started
+     */
+    private long activeStartMillis;
+
+    /**
+     * The size in bytes of the segment being appended to
+     */
+    private long activeBytes;
+
+    /**
+     * The size in bytes after which the segment being appended to is compressed and a new one started
+     */
+    private long maxSegmentBytes = 1 << 20;
+
+    /**
+     * The time in milliseconds after which the segment being appended to is compressed and a new one started
+     */
+    private long maxSegmentMillis = 24 * 60 * 60 * 1000L;
+
+    /**
+     * Opens the segments in the directory at directoryPath, creating the directory and the first
+     * segment if they do not exist yet
+     *
+     * @param directoryPath the path of the directory holding the segments
+     */
+    public SegmentedLogFile(String directoryPath) {
+        this.directory = new File(directoryPath);
+        this.directory.mkdirs();
+        // a segment that was compressed but not yet deleted when the program stopped is already archived
+        for (File segment : this.listSegments()) {
+            if (segment.getName().endsWith(ARCHIVED_SUFFIX)) {
+                new File(this.directory, getSegmentName(getSequence(segment), ACTIVE_SUFFIX)).delete();
+            }
+        }
+        File[] segments = this.listSegments();
+        if (segments.length == 0) {
+            this.startSegment(0);
+            return;
+        }
+        File newest = segments[segments.length - 1];
+        this.activeSequence = getSequence(newest);
+        if (newest.getName().endsWith(ARCHIVED_SUFFIX)) {
+            this.startSegment(this.activeSequence + 1);
+        } else {
+            this.repairActiveSegment();
+        }
+    }
+
+    /**
+     * Appends every record in records to the newest segment with a single write, first starting a new
+     * segment if the newest one is full or too old
+     *
+     * @param records the records to append
+     */
+    public synchronized void append(List<byte[]> records) {
+        if (records.isEmpty()) {
+            return;
+        }
+        if (this.activeBytes > HEADER_BYTES && (this.activeBytes >= this.maxSegmentBytes
+                || System.currentTimeMillis() - this.activeStartMillis >= this.maxSegmentMillis)) {
+            this.rotate();
+        }
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream output = new DataOutputStream(bytes);
+            for (byte[] record : records) {
+                output.writeInt(record.length);
+                output.write(record);
+            }
+            output.close();
+
+            OutputStream file = new FileOutputStream(this.getActiveSegment(), true);
+            bytes.writeTo(file);
+            file.close();
+            this.activeBytes += bytes.size();
+        } catch (IOException e) {
+            System.out.println("Unable to append to the log, check pathname");
+        }
+    }
+
+    /**
+     * Reads every complete record in every segment, oldest first
+     *
+     * @return list of the records
+     */
+    public synchronized ArrayList<byte[]> readRecords() {
+        ArrayList<byte[]> records = new ArrayList<>();
+        for (File segment : this.listSegments()) {
+            try (InputStream file = new FileInputStream(segment)) {
+                boolean archived = segment.getName().endsWith(ARCHIVED_SUFFIX);
+                InputStream input = archived ? new GZIPInputStream(file) : file;
+                // the size of a compressed segment is not known until it is read
+                readSegment(new DataInputStream(new BufferedInputStream(input)), archived ? -1 : segment.length(),
+                        records);
+            } catch (IOException e) {
+                System.out.println("Cannot read from log segment " + segment.getName());
+            }
+        }
+        return records;
+    }
+
+    /**
+     * Compresses the segment being appended to and starts a new one
+     */
+    public synchronized void rotate() {
+        File active = this.getActiveSegment();
+        File archived = new File(this.directory, getSegmentName(this.activeSequence, ARCHIVED_SUFFIX));
+        File tempFile = new File(this.directory, archived.getName() + ".tmp");
+        try {
+            try (OutputStream output = new GZIPOutputStream(new FileOutputStream(tempFile))) {
+                Files.copy(active.toPath(), output);
+            }
+            Files.move(tempFile.toPath(), archived.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            Files.delete(active.toPath());
+        } catch (IOException e) {
+            // keep appending to the uncompressed segment rather than losing it
+            System.out.println("Unable to compress the log segment " + active.getName());
+            return;
+        }
+        this.startSegment(this.activeSequence + 1);
+    }
+
+    /**
+     * Returns the number of segments, including the one being appended to
+     *
+     * @return number of segments
+     */
+    public synchronized int getNumOfSegments() {
+        return this.listSegments().length;
+    }
+
+    /**
+     * Sets the size in bytes after which the segment being appended to is compressed and a new one started
+     *
+     * @param maxSegmentBytes the largest size of a segment
+     */
+    public synchronized void setMaxSegmentBytes(long maxSegmentBytes) {
+        this.maxSegmentBytes = maxSegmentBytes;
+    }
+
+    /**
+     * Sets the time in milliseconds after which the segment being appended to is compressed and a new one started
+     *
+     * @param maxSegmentMillis the longest time a segment is appended to
+     */
+    public synchronized void setMaxSegmentMillis(long maxSegmentMillis) {
+        this.maxSegmentMillis = maxSegmentMillis;
+    }
+
+    /**
+     * Creates a new empty segment numbered sequence and makes it the segment being appended to
+     *
+     * @param sequence the number of the new segment
+     */
+    private void startSegment(int sequence) {
+        this.activeSequence = sequence;
+        this.activeStartMillis = System.currentTimeMillis();
+        try (DataOutputStream output = new DataOutputStream(new FileOutputStream(this.getActiveSegment()))) {
+            output.writeLong(this.activeStartMillis);
+        } catch (IOException e) {
+            System.out.println("Unable to create a new log segment, check pathname");
+        }
+        this.activeBytes = HEADER_BYTES;
+    }
+
+    /**
+     * Reads the start time and size of the segment being appended to, cutting off a record at its end
+     * that was only partly written so that new records are appended after the last complete one
+     */
+    private void repairActiveSegment() {
+        File active = this.getActiveSegment();
+        long segmentBytes = active.length();
+        long completeBytes = HEADER_BYTES;
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(active)))) {
+            this.activeStartMillis = input.readLong();
+            while (true) {
+                int length = input.readInt();
+                readRecord(input, length, segmentBytes - completeBytes - 4);
+                completeBytes += 4 + length;
+            }
+        } catch (EOFException e) {
+            // reached the end of the segment (or a record that was only partly written)
+        } catch (IOException e) {
+            System.out.println("Cannot read from log segment " + active.getName());
+        }
+        if (active.length() < HEADER_BYTES) {
+            // not even the header was written
+            this.startSegment(this.activeSequence);
+            return;
+        }
+        if (active.length() > completeBytes) {
+            try (RandomAccessFile file = new RandomAccessFile(active, "rw")) {
+                file.setLength(completeBytes);
+            } catch (IOException e) {
+                System.out.println("Unable to repair log segment " + active.getName());
+            }
+        }
+        this.activeBytes = completeBytes;
+    }
+
+    /**
+     * Returns the segment being appended to
+     *
+     * @return the file of the newest segment
+     */
+    private File getActiveSegment() {
+        return new File(this.directory, getSegmentName(this.activeSequence, ACTIVE_SUFFIX));
+    }
+
+    /**
+     * Returns every segment in the directory, oldest first
+     *
+     * @return the files of the segments
+     */
+    private File[] listSegments() {
+        File[] segments = this.directory.listFiles((dir, name) ->
+                name.endsWith(ACTIVE_SUFFIX) || name.endsWith(ARCHIVED_SUFFIX));
+        if (segments == null) {
+            return new File[0];
+        }
+        // the names start with the zero-padded number of the segment, so they sort oldest first
+        Arrays.sort(segments);
+        return segments;
+    }
+
+    /**
+     * Reads every complete record of a segment after its header and adds it to records
+     *
+     * @param input        the contents of the segment
+     * @param segmentBytes the size of the segment in bytes, or -1 if it is not known
+     * @param records      the list to add the records to
+     * @throws IOException when the segment can not be read
+     */
+    private static void readSegment(DataInputStream input, long segmentBytes, ArrayList<byte[]> records)
+            throws IOException {
+        long readBytes = HEADER_BYTES;
+        try {
+            input.readLong();
+            while (true) {
+                int length = input.readInt();
+                records.add(readRecord(input, length, (segmentBytes < 0) ? -1 : segmentBytes - readBytes - 4));
+                readBytes += 4 + length;
+            }
+        } catch (EOFException e) {
+            // reached the end of the segment (or a record that was only partly written)
+        }
+    }
+
+    /**
+     * Reads a record of length bytes. A length that is negative or longer than the rest of the segment
+     * was only partly written (or is damaged), so it is treated like the end of the segment.
+     *
+     * @param input          the contents of the segment, positioned after the length of the record
+     * @param length         the length written before the record
+     * @param remainingBytes the number of bytes left in the segment, or -1 if it is not known
+     * @return the record
+     * @throws EOFException when the record is not complete
+     * @throws IOException  when the segment can not be read
+     */
+    private static byte[] readRecord(DataInputStream input, int length, long remainingBytes) throws IOException {
+        if (length < 0 || (remainingBytes >= 0 && length > remainingBytes)) {
+            throw new EOFException("The length of a log record runs past the end of its segment");
+        }
+        if (remainingBytes >= 0 || length <= CHUNK_BYTES) {
+            byte[] record = new byte[length];
+            input.readFully(record);
+            return record;
+        }
+        // a long record of a compressed segment is read a chunk at a time, so a damaged length
+        // fails at the end of the segment instead of allocating all of it up front
+        ByteArrayOutputStream record = new ByteArrayOutputStream(CHUNK_BYTES);
+        byte[] chunk = new byte[CHUNK_BYTES];
+        while (record.size() < length) {
+            int read = input.read(chunk, 0, Math.min(chunk.length, length - record.size()));
+            if (read == -1) {
+                throw new EOFException("The log segment ends inside a record");
+            }
+            record.write(chunk, 0, read);
+        }
+        return record.toByteArray();
+    }
+
+    /**
+     * Returns the name of the segment numbered sequence
+     *
+     * @param sequence the number of the segment
+     * @param suffix   the ending of the name
+     * @return the file name of the segment
+     */
+    private static String getSegmentName(int sequence, String suffix) {
+        return String.format("%08d%s", sequence, suffix);
+    }
+
+    /**
+     * Returns the number of a segment from its file name
+     *
+     * @param segment the file of the segment
+     * @return the number of the segment
+     */
+    private static int getSequence(File segment) {
+        String name = segment.getName();
+        return Integer.parseInt(name.substring(0, name.indexOf('.')));
+    }
+}
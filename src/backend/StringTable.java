@@ -0,0 +1,97 @@
+package backend;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A table which gives each distinct String a small int id, so that objects which would each hold
+ * their own copy of a common String (for example the directory of thousands of Pictures) can hold
+ * its id or the one shared copy instead. Strings are never removed from the table.
+ */
+public class StringTable {
+
+    /**
+     * Maps each String in the table to its id
+     */
+    private ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+
+    /**
+     * The Strings in the table, indexed by id. Replaced by a larger copy when full.
+     */
+    private volatile String[] strings = new String[16];
+
+    /**
+     * The number of Strings in the table
+     */
+    private int size = 0;
+
+    /**
+     * Returns the id of string, adding string to the table if it is not in it yet
+     *
+     * @param string the String we want the id of
+     * @return the id of string
+     */
+    public int getId(String string) {
+        Integer id = this.ids.get(string);
+        if (id != null) {
+            return id;
+        }
+        synchronized (this) {
+            id = this.ids.get(string);
+            if (id == null) {
+                String[] table = this.strings;
+                if (this.size == table.length) {
+                    String[] larger = new String[table.length * 2];
+                    System.arraycopy(table, 0, larger, 0, table.length);
+                    table = larger;
+                }
+                id = this.size;
+                table[id] = string;
+                this.size++;
+                // publish the new String before its id can be seen by other threads
+                this.strings = table;
+                this.ids.put(string, id);
+            }
+            return id;
+        }
+    }
+
+    /**
+     * Returns the id of string without adding it to the table
+     *
+     * @param string the String we want the id of
+     * @return the id of string, or -1 if string is not in the table
+     */
+    public int findId(String string) {
+        Integer id = this.ids.get(string);
+        return (id == null) ? -1 : id;
+    }
+
+    /**
+     * Returns the String with the given id
+     *
+     * @param id an id returned by getId
+     * @return the String with that id
+     */
+    public String getString(int id) {
+        return this.strings[id];
+    }
+
+    /**
+     * Returns the copy of string held by the table, adding string to the table if it is not in it yet
+     *
+     * @param string a String
+     * @return a String equal to string that is shared by every caller
+     */
+    public String intern(String string) {
+        return this.getString(this.getId(string));
+    }
+
+    /**
+     * Returns the number of Strings in the table
+     *
+     * @return number of distinct Strings
+     */
+    public synchronized int size() {
+        return this.size;
+    }
+}
@@ -2,38 +2,90 @@ package backend;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashSet;
 
 /**
  * Tag class which keeps track of all currently available tags.
+ * <p>
+ * Besides the list of tags in the order they are shown, the tags are kept in a hash set, so checking
+ * whether a tag exists does not scan the list, in a prefix trie used to complete a tag as it is typed,
+ * and in a trigram index used to find the tags closest to a misspelled one.
+ * <p>
+ * Tag also owns the dictionary that gives every tag ever attached to a Picture a small int id. Pictures
+ * hold the ids of their tags instead of their own copies of the tags, so a tag attached to thousands of
+ * Pictures is kept once, and checking whether a Picture has a tag compares ints instead of Strings.
  */
 public class Tag {
 
+    /**
+     * Gives each tag attached to any Picture its id. Tags are never removed, so an id always means the same tag.
+     */
+    private static final StringTable DICTIONARY = new StringTable();
+
     /**
      * An ArrayList of tags the user can select and apply to Pictures
      */
     private ArrayList<String> tags = new ArrayList<>();
 
+    /**
+     * The tags in tags, for checking whether a tag exists
+     */
+    private HashSet<String> tagSet = new HashSet<>();
+
+    /**
+     * The tags in tags, for completing a tag from its first characters
+     */
+    private TagTrie tagTrie = new TagTrie();
+
+    /**
+     * The tags in tags, for finding the tags closest to a misspelled one
+     */
+    private TrigramIndex trigramIndex = new TrigramIndex();
+
     /**
      * The directory to the .ser file for Tag including file name and extension
      */
     private String pathName;
 
     /**
-     * Constructs a new Tag object
+     * Schedules the writes of the .ser file for Tag
+     */
+    private PersistenceScheduler scheduler;
+
+    /**
+     * Constructs a new Tag object which saves its .ser file straight away after every change
      *
      * @param pathName the relative directory to the .ser file for this Tag
      * @throws ClassNotFoundException Thrown when the class is not found
      * @throws IOException            Thrown when the file is not found
      */
     public Tag(String pathName) throws ClassNotFoundException, IOException {
+        this(pathName, PersistenceScheduler.IMMEDIATE);
+    }
+
+    /**
+     * Constructs a new Tag object
+     *
+     * @param pathName  the relative directory to the .ser file for this Tag
+     * @param scheduler schedules the writes of the .ser file for this Tag
+     * @throws ClassNotFoundException Thrown when the class is not found
+     * @throws IOException            Thrown when the file is not found
+     */
+    public Tag(String pathName, PersistenceScheduler scheduler) throws ClassNotFoundException, IOException {
         this.pathName = pathName;
+        this.scheduler = scheduler;
         boolean initializeResult = SerializableOperator.initializeFile(this.pathName);
         if (initializeResult) {
             this.tags = (ArrayList<String>) SerializableOperator.readFile(pathName);
         } else {
             SerializableOperator.createFile(pathName, false);
         }
-        SerializableOperator.saveFile(this.pathName, this.tags);
+        for (String tag : this.tags) {
+            this.tagSet.add(tag);
+            this.tagTrie.add(tag);
+            this.trigramIndex.add(tag);
+        }
+        this.save();
     }
 
     /**
@@ -41,7 +93,7 @@ public class Tag {
      *
      * @return the ArrayList of available tags
      */
-    public ArrayList<String> getTags() {
+    public synchronized ArrayList<String> getTags() {
         return this.tags;
     }
 
@@ -54,7 +106,7 @@ public class Tag {
      * @param newTag The tag to be added to the current ArrayList of tags.
      * @return a message saying if the tag was added or not
      */
-    public String addTag(String newTag) throws IOException {
+    public synchronized String addTag(String newTag) throws IOException {
         // Checks to see if newTag contains any illegal characters
         if (newTag.contains(".")) {
             return "Tag was not added as it contains \".\"";
@@ -88,10 +140,12 @@ public class Tag {
         }
 
         //Checks to see if the tag already exists (Case sensitive)
-        if (this.tags.indexOf(newTag) == -1) {
+        if (this.tagSet.add(newTag)) {
             this.tags.add(newTag);
+            this.tagTrie.add(newTag);
+            this.trigramIndex.add(newTag);
             // We write to the .ser file to save the current state of tags (the ArrayList)
-            SerializableOperator.saveFile(this.pathName, this.tags);
+            this.save();
             return "The tag was added successfully";
         } else {
             return "The Tag already exist and was not added";
@@ -104,10 +158,14 @@ public class Tag {
      * @param deletedTag The tag to be deleted from the current ArrayList of tags.
      * @return a message saying if the tag was deleted or not
      */
-    public String removeTag(String deletedTag) throws IOException {
-        this.tags.remove(deletedTag); //Removes first occurrence of deletedTag
+    public synchronized String removeTag(String deletedTag) throws IOException {
+        if (this.tagSet.remove(deletedTag)) {
+            this.tags.remove(deletedTag); //Removes first occurrence of deletedTag
+            this.tagTrie.remove(deletedTag);
+            this.trigramIndex.remove(deletedTag);
+        }
         // We write to the .ser file to save the current state of tags (the ArrayList)
-        SerializableOperator.saveFile(this.pathName, this.tags);
+        this.save();
         // Note that it will always be successfully since we are forcing the user to select
         // a tag from a list of existing tags
         return "Successfully removed the tag";
@@ -119,28 +177,105 @@ public class Tag {
      * @param tagToCheck the tag we want to know if it is in this set of tags
      * @return true if the tagToCheck is in this set of Tags, false otherwise
      */
-    public boolean containsTag(String tagToCheck) {
-        return this.tags.contains(tagToCheck);
+    public synchronized boolean containsTag(String tagToCheck) {
+        return this.tagSet.contains(tagToCheck);
     }
 
     /**
      * Sorts this list of usable tags with respect to a keyword.
      * Words that contain the keyword will be position closer to the front
-     * of the list
+     * of the list, the last matching word first
      *
      * @param keyword the keyword we are searching for in tags to sort them
      */
-    public void sortTagsByKeyword(String keyword) {
-        ArrayList<String> sortedVersion = new ArrayList<>();
-        for (int index = 0; index < this.tags.size(); index++) {
-            if (this.tags.get(index).contains(keyword)) {
-                // add tag to front since it matched
-                sortedVersion.add(0, this.tags.get(index));
+    public synchronized void sortTagsByKeyword(String keyword) {
+        ArrayList<String> matches = new ArrayList<>();
+        ArrayList<String> others = new ArrayList<>();
+        for (String tag : this.tags) {
+            if (tag.contains(keyword)) {
+                matches.add(tag);
             } else {
-                // add tag to back of list since not match
-                sortedVersion.add(this.tags.get(index));
+                others.add(tag);
             }
         }
+        // matching tags go to the front in reverse, the order they had when each was moved to the front in turn
+        ArrayList<String> sortedVersion = new ArrayList<>(this.tags.size());
+        for (int index = matches.size() - 1; index >= 0; index--) {
+            sortedVersion.add(matches.get(index));
+        }
+        sortedVersion.addAll(others);
         this.tags = sortedVersion;
     }
+
+    /**
+     * Returns up to k tags that start with prefix, ignoring case, in alphabetical order. A prefix
+     * without the leading @ is completed as if it had one.
+     * ie/ "ti" and "@Ti" both complete to "@Tiger"
+     *
+     * @param prefix the first characters of the tag being typed
+     * @param k      the largest number of tags to return
+     * @return the tags starting with prefix
+     */
+    public synchronized ArrayList<String> autocomplete(String prefix, int k) {
+        if (!prefix.startsWith("@")) {
+            prefix = "@" + prefix;
+        }
+        return this.tagTrie.complete(prefix, k);
+    }
+
+    /**
+     * Returns up to k tags closest to query, which may be misspelled, the closest first. Tags are ranked
+     * by their edit distance to query, ignoring case and the leading @.
+     * ie/ "@Tigre" finds "@Tiger"
+     *
+     * @param query the tag to look for
+     * @param k     the largest number of tags to return
+     * @return the tags closest to query
+     */
+    public synchronized ArrayList<String> fuzzySearch(String query, int k) {
+        return this.trigramIndex.search(query, k);
+    }
+
+    /**
+     * Returns the id of tag in the dictionary of tags, adding tag to the dictionary if it is not in it yet
+     *
+     * @param tag the tag we want the id of
+     * @return the id of tag
+     */
+    static int getTagId(String tag) {
+        return DICTIONARY.getId(tag);
+    }
+
+    /**
+     * Returns the id of tag in the dictionary of tags without adding it to the dictionary
+     *
+     * @param tag the tag we want the id of
+     * @return the id of tag, or -1 if no Picture has ever had tag
+     */
+    static int findTagId(String tag) {
+        return DICTIONARY.findId(tag);
+    }
+
+    /**
+     * Returns the tag with the given id in the dictionary of tags
+     *
+     * @param id an id returned by getTagId
+     * @return the tag with that id
+     */
+    static String getTagWithId(int id) {
+        return DICTIONARY.getString(id);
+    }
+
+    /**
+     * Asks the scheduler to write the current state of tags to the .ser file
+     */
+    private void save() {
+        this.scheduler.markDirty(this.pathName, () -> {
+            ArrayList<String> snapshot;
+            synchronized (this) {
+                snapshot = new ArrayList<>(this.tags);
+            }
+            SerializableOperator.saveFile(this.pathName, snapshot);
+        });
+    }
 }
@@ -0,0 +1,135 @@
+package backend;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.TreeSet;
+
+/**
+ * Counts how many Pictures each tag is attached to.
+ * <p>
+ * Besides a map from each tag id to its count, the counts are kept in a set ordered from the most used
+ * tag to the least used (ties in alphabetical order), so changing a count takes O(log n) and the k most
+ * used tags are found in O(k + log n) for n counted tags, without looking at any Picture.
+ */
+public class TagCounter {
+
+    /**
+     * Maps the id of each counted tag to its count
+     */
+    private HashMap<Integer, Count> counts = new HashMap<>();
+
+    /**
+     * The counts of the counted tags, most used first
+     */
+    private TreeSet<Count> ranking = new TreeSet<>();
+
+    /**
+     * Adds one to the count of the tag with the given id
+     *
+     * @param tagId the id of the tag (from Tag.getTagId)
+     */
+    public void increment(int tagId) {
+        Count count = this.counts.get(tagId);
+        if (count == null) {
+            count = new Count(tagId);
+            this.counts.put(tagId, count);
+        } else {
+            this.ranking.remove(count);
+        }
+        count.count++;
+        this.ranking.add(count);
+    }
+
+    /**
+     * Subtracts one from the count of the tag with the given id, no longer counting the tag once
+     * its count is 0
+     *
+     * @param tagId the id of the tag (from Tag.getTagId)
+     */
+    public void decrement(int tagId) {
+        Count count = this.counts.get(tagId);
+        if (count == null) {
+            return;
+        }
+        this.ranking.remove(count);
+        count.count--;
+        if (count.count > 0) {
+            this.ranking.add(count);
+        } else {
+            this.counts.remove(tagId);
+        }
+    }
+
+    /**
+     * Returns the number of Pictures tag is attached to
+     *
+     * @param tag the tag
+     * @return the count of tag, or 0 if it is not counted
+     */
+    public int getCount(String tag) {
+        Count count = this.counts.get(Tag.findTagId(tag));
+        return (count == null) ? 0 : count.count;
+    }
+
+    /**
+     * Returns up to k of the most used tags, most used first and ties in alphabetical order
+     *
+     * @param k the largest number of tags to return
+     * @return the most used tags
+     */
+    public ArrayList<String> getMostUsed(int k) {
+        ArrayList<String> mostUsed = new ArrayList<>();
+        Iterator<Count> counts = this.ranking.iterator();
+        while (mostUsed.size() < k && counts.hasNext()) {
+            mostUsed.add(Tag.getTagWithId(counts.next().tagId));
+        }
+        return mostUsed;
+    }
+
+    /**
+     * Returns whether no tag is counted
+     *
+     * @return true if every count is 0
+     */
+    public boolean isEmpty() {
+        return this.counts.isEmpty();
+    }
+
+    /**
+     * The count of one tag
+     */
+    private static class Count implements Comparable<Count> {
+
+        /**
+         * The id of the tag
+         */
+        private final int tagId;
+
+        /**
+         * The number of Pictures the tag is attached to
+         */
+        private int count;
+
+        /**
+         * Creates a Count of 0 for the tag with the given id
+         *
+         * @param tagId the id of the tag
+         */
+        private Count(int tagId) {
+            this.tagId = tagId;
+        }
+
+        @Override
+        public int compareTo(Count other) {
+            if (this.count != other.count) {
+                return Integer.compare(other.count, this.count);
+            }
+            if (this.tagId == other.tagId) {
+                return 0;
+            }
+            int order = Tag.getTagWithId(this.tagId).compareTo(Tag.getTagWithId(other.tagId));
+            return (order != 0) ? order : Integer.compare(this.tagId, other.tagId);
+        }
+    }
+}
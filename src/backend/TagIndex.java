@@ -0,0 +1,145 @@
+package backend;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+
+/**
+ * An inverted index from each tag to the Pictures that the tag is attached to.
+ * <p>
+ * Every indexed Picture is given a small integer ordinal, so the Pictures carrying a tag are
+ * stored as a set of ordinals and filtering by several tags is an intersection of those sets
+ * instead of a scan over every Picture's attached tags. The set of a rare tag is a sorted array
+ * and only the set of a common tag is a bitmap (see OrdinalSet), so a large vocabulary of rarely
+ * used tags does not cost a bitmap as long as the largest ordinal for every tag.
+ */
+public class TagIndex {
+
+    /**
+     * Maps a tag to the set of ordinals of the Pictures that have the tag attached
+     */
+    private HashMap<String, OrdinalSet> tagOrdinals = new HashMap<>();
+
+    /**
+     * Maps each indexed Picture to its ordinal. An ordinal stays with its Picture until the Picture
+     * is forgotten, even while the Picture is temporarily unindexed for a rename.
+     */
+    private IdentityHashMap<Picture, Integer> ordinals = new IdentityHashMap<>();
+
+    /**
+     * The ordinal that the next new Picture will be given when there is no free ordinal
+     */
+    private int nextOrdinal = 0;
+
+    /**
+     * Ordinals released by forgetPicture, given to new Pictures before nextOrdinal so the
+     * bitmaps do not keep growing as Pictures are removed and added
+     */
+    private ArrayDeque<Integer> freeOrdinals = new ArrayDeque<>();
+
+    /**
+     * Returns the ordinal of picture, giving it a new one if it does not have one yet
+     *
+     * @param picture the Picture we want the ordinal of
+     * @return the ordinal of picture
+     */
+    public int getOrdinal(Picture picture) {
+        Integer ordinal = this.ordinals.get(picture);
+        if (ordinal == null) {
+            if (this.freeOrdinals.isEmpty()) {
+                ordinal = this.nextOrdinal;
+                this.nextOrdinal++;
+            } else {
+                ordinal = this.freeOrdinals.pop();
+            }
+            this.ordinals.put(picture, ordinal);
+        }
+        return ordinal;
+    }
+
+    /**
+     * Records every tag currently attached to picture in this index
+     *
+     * @param picture the Picture to index
+     */
+    public void addPicture(Picture picture) {
+        int ordinal = this.getOrdinal(picture);
+        for (String tag : picture.getAttachedTags()) {
+            OrdinalSet picturesWithTag = this.tagOrdinals.get(tag);
+            if (picturesWithTag == null) {
+                picturesWithTag = new OrdinalSet();
+                this.tagOrdinals.put(tag, picturesWithTag);
+            }
+            picturesWithTag.add(ordinal);
+        }
+    }
+
+    /**
+     * Removes every tag currently attached to picture from this index. Must be called
+     * before the attached tags of picture change, with a matching call to addPicture after.
+     *
+     * @param picture the Picture to remove from the index
+     */
+    public void removePicture(Picture picture) {
+        Integer ordinal = this.ordinals.get(picture);
+        if (ordinal == null) {
+            return;
+        }
+        for (String tag : picture.getAttachedTags()) {
+            OrdinalSet picturesWithTag = this.tagOrdinals.get(tag);
+            if (picturesWithTag != null) {
+                picturesWithTag.remove(ordinal);
+                if (picturesWithTag.size() == 0) {
+                    this.tagOrdinals.remove(tag);
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes picture from this index for good and releases its ordinal so it can be given to
+     * another Picture. Called when the file of picture no longer exists.
+     *
+     * @param picture the Picture to forget
+     */
+    public void forgetPicture(Picture picture) {
+        this.removePicture(picture);
+        Integer ordinal = this.ordinals.remove(picture);
+        if (ordinal != null) {
+            this.freeOrdinals.push(ordinal);
+        }
+    }
+
+    /**
+     * Returns the bitmap of ordinals of the Pictures that have every tag in tags attached.
+     * The returned bitmap is a copy and may be modified by the caller.
+     *
+     * @param tags the tags the Pictures must have
+     * @return bitmap of ordinals of the Pictures with all of the tags
+     */
+    public BitSet getPicturesWithAllTags(Collection<String> tags) {
+        ArrayList<OrdinalSet> sets = new ArrayList<>();
+        for (String tag : tags) {
+            OrdinalSet picturesWithTag = this.tagOrdinals.get(tag);
+            if (picturesWithTag == null) {
+                // no Picture has this tag, so no Picture can have all of the tags
+                return new BitSet();
+            }
+            sets.add(picturesWithTag);
+        }
+        if (sets.isEmpty()) {
+            return new BitSet();
+        }
+        // start from the smallest set, so the result never has more ordinals than it
+        sets.sort(Comparator.comparingInt(OrdinalSet::size));
+        BitSet result = sets.get(0).toBitSet();
+        for (int i = 1; i < sets.size() && !result.isEmpty(); i++) {
+            sets.get(i).retainIn(result);
+        }
+        return result;
+    }
+}
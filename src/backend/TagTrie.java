@@ -0,0 +1,212 @@
+package backend;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.TreeMap;
+
+/**
+ * A prefix trie of tags used to complete a tag from its first few characters.
+ * <p>
+ * Tags are found by their characters ignoring case, so "@ti" completes to "@Tiger". Every node keeps the
+ * first MAX_CACHED_COMPLETIONS tags below it (in alphabetical order ignoring case), so completing a prefix
+ * walks down one node per character and copies at most that many tags, however many tags there are.
+ * Adding or removing a tag updates the cached completions of the nodes along its path.
+ */
+public class TagTrie {
+
+    /**
+     * The number of completions cached at every node
+     */
+    static final int MAX_CACHED_COMPLETIONS = 16;
+
+    /**
+     * The order of completions: alphabetical ignoring case, ties broken by case
+     */
+    private static final Comparator<String> ORDER =
+            String.CASE_INSENSITIVE_ORDER.thenComparing(Comparator.naturalOrder());
+
+    /**
+     * The node of the empty prefix
+     */
+    private Node root = new Node();
+
+    /**
+     * The number of tags in the trie
+     */
+    private int size = 0;
+
+    /**
+     * Adds tag to the trie
+     *
+     * @param tag the tag to add
+     */
+    public void add(String tag) {
+        ArrayList<Node> path = new ArrayList<>(tag.length() + 1);
+        Node node = this.root;
+        path.add(node);
+        for (int i = 0; i < tag.length(); i++) {
+            char key = Character.toLowerCase(tag.charAt(i));
+            Node child = node.children.get(key);
+            if (child == null) {
+                child = new Node();
+                node.children.put(key, child);
+            }
+            node = child;
+            path.add(node);
+        }
+        if (node.tags.contains(tag)) {
+            return;
+        }
+        node.tags.add(tag);
+        node.tags.sort(ORDER);
+        this.size++;
+        for (Node onPath : path) {
+            onPath.cacheCompletion(tag);
+        }
+    }
+
+    /**
+     * Removes tag from the trie, along with any node that no longer leads to a tag
+     *
+     * @param tag the tag to remove
+     */
+    public void remove(String tag) {
+        ArrayList<Node> path = new ArrayList<>(tag.length() + 1);
+        Node node = this.root;
+        path.add(node);
+        for (int i = 0; i < tag.length(); i++) {
+            node = node.children.get(Character.toLowerCase(tag.charAt(i)));
+            if (node == null) {
+                return;
+            }
+            path.add(node);
+        }
+        if (!node.tags.remove(tag)) {
+            return;
+        }
+        this.size--;
+        // rebuild the cached completions from the deepest node up, since each is built from its children
+        for (int i = path.size() - 1; i >= 0; i--) {
+            Node onPath = path.get(i);
+            if (i > 0 && onPath.tags.isEmpty() && onPath.children.isEmpty()) {
+                path.get(i - 1).children.remove(Character.toLowerCase(tag.charAt(i - 1)));
+            } else if (Arrays.asList(onPath.completions).contains(tag)) {
+                onPath.rebuildCompletions();
+            }
+        }
+    }
+
+    /**
+     * Returns up to k tags starting with prefix (ignoring case), in alphabetical order ignoring case.
+     * Takes time proportional to the length of prefix plus k when k is at most MAX_CACHED_COMPLETIONS.
+     *
+     * @param prefix the first characters of the tags
+     * @param k      the largest number of tags to return
+     * @return the tags starting with prefix
+     */
+    public ArrayList<String> complete(String prefix, int k) {
+        ArrayList<String> completions = new ArrayList<>();
+        Node node = this.root;
+        for (int i = 0; i < prefix.length() && node != null; i++) {
+            node = node.children.get(Character.toLowerCase(prefix.charAt(i)));
+        }
+        if (node == null || k <= 0) {
+            return completions;
+        }
+        if (k <= node.completions.length || node.completions.length < MAX_CACHED_COMPLETIONS) {
+            // the cache holds every completion there is, or as many as were asked for
+            for (int i = 0; i < Math.min(k, node.completions.length); i++) {
+                completions.add(node.completions[i]);
+            }
+            return completions;
+        }
+        // more completions were asked for than are cached, so visit the nodes below in order
+        ArrayDeque<Node> nodesToVisit = new ArrayDeque<>();
+        nodesToVisit.push(node);
+        while (!nodesToVisit.isEmpty() && completions.size() < k) {
+            Node visited = nodesToVisit.pop();
+            for (String tag : visited.tags) {
+                if (completions.size() < k) {
+                    completions.add(tag);
+                }
+            }
+            // push in reverse so the children are visited in order
+            Iterator<Node> children = visited.children.descendingMap().values().iterator();
+            while (children.hasNext()) {
+                nodesToVisit.push(children.next());
+            }
+        }
+        return completions;
+    }
+
+    /**
+     * Returns the number of tags in the trie
+     *
+     * @return number of tags
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * A prefix in the trie
+     */
+    private static class Node {
+
+        /**
+         * The nodes of the prefixes one character longer, by that character in lower case
+         */
+        private TreeMap<Character, Node> children = new TreeMap<>();
+
+        /**
+         * The tags that are exactly this prefix (ignoring case)
+         */
+        private ArrayList<String> tags = new ArrayList<>(1);
+
+        /**
+         * The first MAX_CACHED_COMPLETIONS tags starting with this prefix, in order
+         */
+        private String[] completions = new String[0];
+
+        /**
+         * Adds tag to the cached completions if it is among the first MAX_CACHED_COMPLETIONS
+         *
+         * @param tag a tag starting with this prefix
+         */
+        private void cacheCompletion(String tag) {
+            int index = Arrays.binarySearch(this.completions, tag, ORDER);
+            if (index >= 0) {
+                return;
+            }
+            index = -index - 1;
+            if (index >= MAX_CACHED_COMPLETIONS) {
+                return;
+            }
+            int newLength = Math.min(this.completions.length + 1, MAX_CACHED_COMPLETIONS);
+            String[] newCompletions = new String[newLength];
+            System.arraycopy(this.completions, 0, newCompletions, 0, index);
+            newCompletions[index] = tag;
+            System.arraycopy(this.completions, index, newCompletions, index + 1, newLength - index - 1);
+            this.completions = newCompletions;
+        }
+
+        /**
+         * Rebuilds the cached completions from the tags of this node and the cached completions of its
+         * children, which must be up to date
+         */
+        private void rebuildCompletions() {
+            this.completions = new String[0];
+            for (String tag : this.tags) {
+                this.cacheCompletion(tag);
+            }
+            for (Node child : this.children.values()) {
+                for (String tag : child.completions) {
+                    this.cacheCompletion(tag);
+                }
+            }
+        }
+    }
+}
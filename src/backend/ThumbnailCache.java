@@ -0,0 +1,344 @@
+package backend;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A cache of downscaled copies of pictures, stored as image files in a cache directory.
+ * <p>
+ * Decoding a full size picture only to show it 200 pixels wide uses a lot of memory, so each picture is
+ * decoded once (reading only every n-th pixel of it) into a small thumbnail, and the thumbnail is
+ * what the grid shows. A thumbnail is keyed by the path of the picture, the thumbnail size and the
+ * last-modified time of the picture, so a picture that is changed gets a new thumbnail. When the
+ * thumbnails take more than maxCacheBytes, the least recently used ones are deleted. Which thumbnails
+ * were used recently is only kept in memory, so showing a thumbnail never writes to the disk.
+ * <p>
+ * Several threads may create the same thumbnail at once, so a thumbnail is written to a temporary file
+ * and moved into place in one step, and a thumbnail file is never seen half written. A thumbnail that is
+ * being read by a caller of acquireThumbnail is not deleted until it is released.
+ * <p>
+ * The cache directory holds a marker file named MARKER_NAME, so a FileSearcher searching a directory
+ * the cache is under does not take the thumbnails for pictures.
+ */
+public class ThumbnailCache {
+
+    /**
+     * The name of the file marking a directory as a thumbnail cache
+     */
+    public static final String MARKER_NAME = ".thumbnail_cache";
+
+    /**
+     * The extension of the temporary files thumbnails are written to before they are moved into place
+     */
+    private static final String TEMPORARY_EXTENSION = ".tmp";
+
+    /**
+     * The directory the thumbnail files are stored in
+     */
+    private File cacheDirectory;
+
+    /**
+     * The width in pixels of a thumbnail, the height is scaled to keep the picture's proportions
+     */
+    private int thumbnailWidth;
+
+    /**
+     * The most bytes the thumbnail files may take before the least recently used ones are deleted
+     */
+    private long maxCacheBytes;
+
+    /**
+     * The number of bytes the thumbnail files take
+     */
+    private long cacheBytes = 0;
+
+    /**
+     * Maps the file name of each thumbnail to its size in bytes, least recently used first
+     */
+    private LinkedHashMap<String, Long> thumbnails = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * Maps the file name of each thumbnail that is being read to the number of callers reading it
+     */
+    private HashMap<String, Integer> pins = new HashMap<>();
+
+    /**
+     * Creates a ThumbnailCache which stores its thumbnails in cacheDirectory. Thumbnails already in
+     * cacheDirectory are reused, the most recently created ones counted as the most recently used.
+     *
+     * @param cacheDirectory the relative directory the thumbnails are stored in
+     * @param thumbnailWidth the width in pixels of a thumbnail
+     * @param maxCacheBytes  the most bytes the thumbnails may take
+     */
+    public ThumbnailCache(String cacheDirectory, int thumbnailWidth, long maxCacheBytes) {
+        this.cacheDirectory = new File(cacheDirectory);
+        this.thumbnailWidth = thumbnailWidth;
+        this.maxCacheBytes = maxCacheBytes;
+        if (!this.cacheDirectory.isDirectory() && !this.cacheDirectory.mkdirs()) {
+            System.out.println("Unable to create the thumbnail directory, check pathname");
+        }
+        File marker = new File(this.cacheDirectory, MARKER_NAME);
+        try {
+            marker.createNewFile();
+        } catch (IOException e) {
+            System.out.println("Unable to mark the thumbnail directory, check pathname");
+        }
+        File[] files = this.cacheDirectory.listFiles();
+        if (files != null) {
+            Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+            for (File file : files) {
+                if (file.getName().equals(MARKER_NAME)) {
+                    continue;
+                }
+                if (file.getName().endsWith(TEMPORARY_EXTENSION)) {
+                    // left by a thumbnail that was being written when the program stopped
+                    file.delete();
+                    continue;
+                }
+                this.thumbnails.put(file.getName(), file.length());
+                this.cacheBytes += file.length();
+            }
+        }
+        this.evict();
+    }
+
+    /**
+     * Returns the path of the thumbnail of the picture at imagePath, creating the thumbnail if it does
+     * not exist yet. Returns imagePath itself if the picture can not be read. The thumbnail may be deleted
+     * as soon as other thumbnails are created, so a caller that reads it should use acquireThumbnail.
+     *
+     * @param imagePath the path of the picture
+     * @return the path of a file with the thumbnail of the picture
+     */
+    public String getThumbnail(String imagePath) {
+        return this.getThumbnail(imagePath, false);
+    }
+
+    /**
+     * Returns the path of the thumbnail of the picture at imagePath like getThumbnail, and keeps the
+     * thumbnail from being deleted until releaseThumbnail is called with the path
+     *
+     * @param imagePath the path of the picture
+     * @return the path of a file with the thumbnail of the picture
+     */
+    public String acquireThumbnail(String imagePath) {
+        return this.getThumbnail(imagePath, true);
+    }
+
+    /**
+     * Lets the thumbnail at thumbnailPath, returned by acquireThumbnail, be deleted again
+     *
+     * @param thumbnailPath the path returned by acquireThumbnail
+     */
+    public synchronized void releaseThumbnail(String thumbnailPath) {
+        String name = new File(thumbnailPath).getName();
+        Integer readers = this.pins.get(name);
+        if (readers == null) {
+            // acquireThumbnail returned the picture itself
+            return;
+        }
+        if (readers > 1) {
+            this.pins.put(name, readers - 1);
+        } else {
+            this.pins.remove(name);
+            this.evict();
+        }
+    }
+
+    /**
+     * Returns the path of the thumbnail of the picture at imagePath, creating the thumbnail if it does
+     * not exist yet, and pins the thumbnail if pin is true
+     *
+     * @param imagePath the path of the picture
+     * @param pin       whether to keep the thumbnail from being deleted until it is released
+     * @return the path of a file with the thumbnail of the picture, or imagePath if it can not be read
+     */
+    private String getThumbnail(String imagePath, boolean pin) {
+        File image = new File(imagePath);
+        String key = this.getKey(image);
+        synchronized (this) {
+            for (String extension : new String[]{".jpg", ".png"}) {
+                if (this.thumbnails.get(key + extension) != null) {
+                    // the lookup moved the thumbnail to the most recently used end of thumbnails
+                    File thumbnail = new File(this.cacheDirectory, key + extension);
+                    if (thumbnail.exists()) {
+                        if (pin) {
+                            this.pin(thumbnail.getName());
+                        }
+                        return thumbnail.getPath();
+                    }
+                    this.cacheBytes -= this.thumbnails.remove(key + extension);
+                }
+            }
+        }
+
+        // decode outside of the lock, so other thumbnails can be looked up meanwhile
+        BufferedImage thumbnailImage = this.createThumbnail(image);
+        if (thumbnailImage == null) {
+            return imagePath;
+        }
+        boolean hasAlpha = thumbnailImage.getColorModel().hasAlpha();
+        File thumbnail = new File(this.cacheDirectory, key + (hasAlpha ? ".png" : ".jpg"));
+        File temporary = null;
+        try {
+            // another thread may be creating the same thumbnail, so each writes its own file
+            temporary = File.createTempFile(key, TEMPORARY_EXTENSION, this.cacheDirectory);
+            ImageIO.write(thumbnailImage, hasAlpha ? "png" : "jpg", temporary);
+            try {
+                Files.move(temporary.toPath(), thumbnail.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                        StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporary.toPath(), thumbnail.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException | SecurityException e) {
+            System.out.println("Unable to save thumbnail, check pathname");
+            if (temporary != null) {
+                temporary.delete();
+            }
+            return imagePath;
+        }
+        synchronized (this) {
+            Long previousBytes = this.thumbnails.put(thumbnail.getName(), thumbnail.length());
+            if (previousBytes != null) {
+                this.cacheBytes -= previousBytes;
+            }
+            this.cacheBytes += thumbnail.length();
+            if (pin) {
+                this.pin(thumbnail.getName());
+            }
+            this.evict();
+        }
+        return thumbnail.getPath();
+    }
+
+    /**
+     * Adds one to the number of callers reading the thumbnail with the given file name
+     *
+     * @param name the file name of the thumbnail
+     */
+    private void pin(String name) {
+        Integer readers = this.pins.get(name);
+        this.pins.put(name, (readers == null) ? 1 : readers + 1);
+    }
+
+    /**
+     * Returns the number of bytes the thumbnail files take
+     *
+     * @return number of bytes in the cache
+     */
+    public synchronized long getCacheBytes() {
+        return this.cacheBytes;
+    }
+
+    /**
+     * Returns the number of thumbnails in the cache
+     *
+     * @return number of thumbnails
+     */
+    public synchronized int size() {
+        return this.thumbnails.size();
+    }
+
+    /**
+     * Deletes the least recently used thumbnails that are not being read until they take no more
+     * than maxCacheBytes
+     */
+    private void evict() {
+        Iterator<Map.Entry<String, Long>> entries = this.thumbnails.entrySet().iterator();
+        while (this.cacheBytes > this.maxCacheBytes && entries.hasNext()) {
+            Map.Entry<String, Long> eldest = entries.next();
+            if (this.pins.containsKey(eldest.getKey())) {
+                continue;
+            }
+            new File(this.cacheDirectory, eldest.getKey()).delete();
+            this.cacheBytes -= eldest.getValue();
+            entries.remove();
+        }
+    }
+
+    /**
+     * Returns the key of the thumbnail of image, made from its path, the thumbnail size and its last-modified time
+     *
+     * @param image the picture file
+     * @return the key of the thumbnail, which is used as its file name without the extension
+     */
+    private String getKey(File image) {
+        String identity = image.getAbsolutePath() + "|" + this.thumbnailWidth + "|" + image.lastModified();
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            StringBuilder key = new StringBuilder();
+            for (byte b : digest.digest(identity.getBytes(StandardCharsets.UTF_8))) {
+                key.append(String.format("%02x", b));
+            }
+            return key.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform has SHA-1, but fall back to the hash code just in case
+            return Integer.toHexString(identity.hashCode());
+        }
+    }
+
+    /**
+     * Decodes image into a thumbnail that is thumbnailWidth pixels wide. Only every n-th
+     * pixel of a large picture is read, so the full size picture is never held in memory.
+     *
+     * @param image the picture file
+     * @return the thumbnail, or null if the picture can not be read
+     */
+    private BufferedImage createThumbnail(File image) {
+        BufferedImage decoded = null;
+        try (ImageInputStream input = ImageIO.createImageInputStream(image)) {
+            if (input == null) {
+                return null;
+            }
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                // read at no less than twice the thumbnail width, and scale the rest of the way smoothly
+                int subsampling = Math.max(1, reader.getWidth(0) / (2 * this.thumbnailWidth));
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                decoded = reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        } catch (IOException | RuntimeException e) {
+            System.out.println("Unable to create thumbnail of " + image.getPath());
+            return null;
+        }
+
+        double scale = Math.min(1.0, (double) this.thumbnailWidth / decoded.getWidth());
+        int width = Math.max(1, (int) Math.round(decoded.getWidth() * scale));
+        int height = Math.max(1, (int) Math.round(decoded.getHeight() * scale));
+        boolean hasAlpha = decoded.getColorModel().hasAlpha();
+        BufferedImage thumbnail = new BufferedImage(width, height,
+                hasAlpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = thumbnail.createGraphics();
+        graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        graphics.drawImage(decoded, 0, 0, width, height, null);
+        graphics.dispose();
+        return thumbnail;
+    }
+}
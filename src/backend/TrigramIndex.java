@@ -0,0 +1,219 @@
+package backend;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+/**
+ * An index from the trigrams (runs of three characters) of tags to the tags containing them, used to find
+ * the tags closest to a misspelled one.
+ * <p>
+ * A misspelled tag still shares most of its trigrams with the tag that was meant, so the tags sharing the
+ * most trigrams with the query are the candidates, and only the best MAX_CANDIDATES of them (ties going to
+ * the tags closest in length to the query, then alphabetically) are ranked by their edit distance to the query. Trigrams ignore case and the leading @, and every tag is padded with
+ * a space at each end so its first and last characters count as much as the ones in the middle.
+ */
+public class TrigramIndex {
+
+    /**
+     * The number of candidates ranked by edit distance for a query
+     */
+    static final int MAX_CANDIDATES = 200;
+
+    /**
+     * Maps each trigram to the tags containing it
+     */
+    private HashMap<String, HashSet<String>> postings = new HashMap<>();
+
+    /**
+     * Adds tag to the index
+     *
+     * @param tag the tag to add
+     */
+    public void add(String tag) {
+        for (String trigram : getTrigrams(tag)) {
+            HashSet<String> tags = this.postings.get(trigram);
+            if (tags == null) {
+                tags = new HashSet<>();
+                this.postings.put(trigram, tags);
+            }
+            tags.add(tag);
+        }
+    }
+
+    /**
+     * Removes tag from the index
+     *
+     * @param tag the tag to remove
+     */
+    public void remove(String tag) {
+        for (String trigram : getTrigrams(tag)) {
+            HashSet<String> tags = this.postings.get(trigram);
+            if (tags != null) {
+                tags.remove(tag);
+                if (tags.isEmpty()) {
+                    this.postings.remove(trigram);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns up to k tags closest to query, the closest first. Tags are ranked by their edit distance
+     * to query ignoring case, then by the number of trigrams they share with query, then alphabetically.
+     * Only tags sharing at least one trigram with query are returned.
+     *
+     * @param query the tag to look for, possibly misspelled
+     * @param k     the largest number of tags to return
+     * @return the closest tags
+     */
+    public ArrayList<String> search(String query, int k) {
+        // count the trigrams each tag shares with query
+        HashMap<String, int[]> sharedTrigrams = new HashMap<>();
+        for (String trigram : getTrigrams(query)) {
+            HashSet<String> tags = this.postings.get(trigram);
+            if (tags == null) {
+                continue;
+            }
+            for (String tag : tags) {
+                int[] count = sharedTrigrams.get(tag);
+                if (count == null) {
+                    sharedTrigrams.put(tag, new int[]{1});
+                } else {
+                    count[0]++;
+                }
+            }
+        }
+
+        // rank the tags sharing the most trigrams by edit distance
+        ArrayList<Candidate> candidates = new ArrayList<>(sharedTrigrams.size());
+        for (Map.Entry<String, int[]> tag : sharedTrigrams.entrySet()) {
+            candidates.add(new Candidate(tag.getKey(), tag.getValue()[0]));
+        }
+        String normalizedQuery = normalize(query);
+        if (candidates.size() > MAX_CANDIDATES) {
+            // break ties by closeness in length, then by name, so the same tags are kept on every run
+            int queryLength = normalizedQuery.length();
+            candidates.sort((first, second) -> {
+                if (first.sharedTrigrams != second.sharedTrigrams) {
+                    return Integer.compare(second.sharedTrigrams, first.sharedTrigrams);
+                }
+                int firstLengthDifference = Math.abs(normalize(first.tag).length() - queryLength);
+                int secondLengthDifference = Math.abs(normalize(second.tag).length() - queryLength);
+                if (firstLengthDifference != secondLengthDifference) {
+                    return Integer.compare(firstLengthDifference, secondLengthDifference);
+                }
+                return first.tag.compareTo(second.tag);
+            });
+            candidates.subList(MAX_CANDIDATES, candidates.size()).clear();
+        }
+        for (Candidate candidate : candidates) {
+            candidate.distance = editDistance(normalizedQuery, normalize(candidate.tag));
+        }
+        Collections.sort(candidates);
+
+        ArrayList<String> closest = new ArrayList<>();
+        for (int i = 0; i < Math.min(k, candidates.size()); i++) {
+            closest.add(candidates.get(i).tag);
+        }
+        return closest;
+    }
+
+    /**
+     * Returns the trigrams of tag, ignoring case and the leading @
+     * ie/ "@Tree" has the trigrams " tr", "tre", "ree" and "ee "
+     *
+     * @param tag the tag
+     * @return the distinct trigrams of tag
+     */
+    static HashSet<String> getTrigrams(String tag) {
+        String padded = " " + normalize(tag) + " ";
+        HashSet<String> trigrams = new HashSet<>();
+        for (int i = 0; i + 3 <= padded.length(); i++) {
+            trigrams.add(padded.substring(i, i + 3));
+        }
+        return trigrams;
+    }
+
+    /**
+     * Returns tag in lower case without its leading @
+     *
+     * @param tag the tag
+     * @return the part of tag that is compared
+     */
+    private static String normalize(String tag) {
+        return (tag.startsWith("@") ? tag.substring(1) : tag).toLowerCase();
+    }
+
+    /**
+     * Returns the Levenshtein distance between first and second: the smallest number of characters
+     * that must be inserted, deleted or replaced to turn one into the other
+     *
+     * @param first  a String
+     * @param second another String
+     * @return the edit distance between first and second
+     */
+    static int editDistance(String first, String second) {
+        int[] previous = new int[second.length() + 1];
+        int[] current = new int[second.length() + 1];
+        for (int j = 0; j <= second.length(); j++) {
+            previous[j] = j;
+        }
+        for (int i = 1; i <= first.length(); i++) {
+            current[0] = i;
+            for (int j = 1; j <= second.length(); j++) {
+                int replace = previous[j - 1] + (first.charAt(i - 1) == second.charAt(j - 1) ? 0 : 1);
+                current[j] = Math.min(replace, Math.min(previous[j], current[j - 1]) + 1);
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return previous[second.length()];
+    }
+
+    /**
+     * A tag being ranked for a query
+     */
+    private static class Candidate implements Comparable<Candidate> {
+
+        /**
+         * The tag
+         */
+        private String tag;
+
+        /**
+         * The number of trigrams the tag shares with the query
+         */
+        private int sharedTrigrams;
+
+        /**
+         * The edit distance between the tag and the query
+         */
+        private int distance;
+
+        /**
+         * Creates a Candidate
+         *
+         * @param tag            the tag
+         * @param sharedTrigrams the number of trigrams the tag shares with the query
+         */
+        private Candidate(String tag, int sharedTrigrams) {
+            this.tag = tag;
+            this.sharedTrigrams = sharedTrigrams;
+        }
+
+        @Override
+        public int compareTo(Candidate other) {
+            if (this.distance != other.distance) {
+                return Integer.compare(this.distance, other.distance);
+            }
+            if (this.sharedTrigrams != other.sharedTrigrams) {
+                return Integer.compare(other.sharedTrigrams, this.sharedTrigrams);
+            }
+            return this.tag.compareTo(other.tag);
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package benchmarks;
+
+import backend.FileSearcher;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+
+/**
+ * Measures how FileSearcher.getFileNames scales with the number of threads used to search a
+ * synthetic directory tree.
+ * <p>
+ * Usage: java benchmarks.FileSearcherBenchmark [fanOut] [depth] [picturesPerDirectory] [runs] [maxThreads]
+ * <p>
+ * The tree has fanOut sub-directories in every directory down to depth levels, and every directory
+ * holds picturesPerDirectory empty .jpg files and as many other files. The default of 6 6 5 builds
+ * about 56k directories. Thread counts are doubled from 1 up to maxThreads, which defaults to the number
+ * of available cores (more threads than cores can still help on network storage, where most of the
+ * time is spent waiting). The tree is deleted when the benchmark ends.
+ */
+public class FileSearcherBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        int fanOut = args.length > 0 ? Integer.parseInt(args[0]) : 6;
+        int depth = args.length > 1 ? Integer.parseInt(args[1]) : 6;
+        int picturesPerDirectory = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+        int runs = args.length > 3 ? Integer.parseInt(args[3]) : 5;
+        int maxThreads = args.length > 4 ? Integer.parseInt(args[4]) : Runtime.getRuntime().availableProcessors();
+
+        ArrayList<String> extensions = new ArrayList<>();
+        extensions.add("jpg");
+
+        Path root = Files.createTempDirectory("file-searcher-benchmark");
+        try {
+            System.out.println("Building synthetic tree in " + root);
+            int numOfDirectories = buildTree(root, fanOut, depth, picturesPerDirectory);
+            System.out.println(numOfDirectories + " directories, "
+                    + (numOfDirectories * picturesPerDirectory) + " pictures");
+
+            HashSet<String> expected = new HashSet<>(new FileSearcher(extensions).getFileNames(root.toString()));
+            double sequentialMillis = 0;
+            for (int threads = 1; threads <= maxThreads; threads *= 2) {
+                FileSearcher searcher = new FileSearcher(extensions, threads);
+                // warm up the file system cache and the JIT before timing
+                searcher.getFileNames(root.toString());
+
+                long totalNanos = 0;
+                for (int run = 0; run < runs; run++) {
+                    long start = System.nanoTime();
+                    ArrayList<String> found = searcher.getFileNames(root.toString());
+                    totalNanos += System.nanoTime() - start;
+                    if (!expected.equals(new HashSet<>(found))) {
+                        throw new IllegalStateException("Search with " + threads + " threads found different files");
+                    }
+                }
+                double averageMillis = totalNanos / (runs * 1e6);
+                if (threads == 1) {
+                    sequentialMillis = averageMillis;
+                }
+                System.out.printf("threads=%-3d average=%9.1f ms  speed up=%.2fx%n",
+                        threads, averageMillis, sequentialMillis / averageMillis);
+            }
+        } finally {
+            deleteTree(root.toFile());
+        }
+    }
+
+    /**
+     * Builds a tree of directories and files under directory and returns the number of directories in it
+     */
+    private static int buildTree(Path directory, int fanOut, int depth, int picturesPerDirectory)
+            throws IOException {
+        for (int i = 0; i < picturesPerDirectory; i++) {
+            Files.createFile(directory.resolve("picture" + i + ".jpg"));
+            Files.createFile(directory.resolve("notes" + i + ".txt"));
+        }
+        int numOfDirectories = 1;
+        if (depth > 0) {
+            for (int i = 0; i < fanOut; i++) {
+                Path subdirectory = Files.createDirectory(directory.resolve("dir" + i));
+                numOfDirectories += buildTree(subdirectory, fanOut, depth - 1, picturesPerDirectory);
+            }
+        }
+        return numOfDirectories;
+    }
+
+    /**
+     * Deletes file and everything under it
+     */
+    private static void deleteTree(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteTree(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,102 @@
+package benchmarks;
+
+import backend.Picture;
+
+import java.io.File;
+import java.util.ArrayList;
+
+/**
+ * Measures the heap used per Picture, comparing the compact Picture with a copy of its previous layout
+ * that held the full data path, name and original name as separate Strings and an ArrayList of tags.
+ * <p>
+ * Usage: java benchmarks.PictureMemoryBenchmark [numOfDirectories] [picturesPerDirectory] [tagsPerPicture]
+ * <p>
+ * Every path is built as a new String, the way FileSearcher produces them, so nothing is shared by
+ * accident. The heap is measured after a garbage collection with everything still reachable, so run
+ * it with a heap large enough to hold both layouts, e.g. -Xmx4g for the default of 1000 1000 2.
+ */
+public class PictureMemoryBenchmark {
+
+    public static void main(String[] args) {
+        int numOfDirectories = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int picturesPerDirectory = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        int tagsPerPicture = args.length > 2 ? Integer.parseInt(args[2]) : 2;
+        int numOfPictures = numOfDirectories * picturesPerDirectory;
+        System.out.println(numOfPictures + " pictures in " + numOfDirectories + " directories, "
+                + tagsPerPicture + " tags each");
+
+        long before = usedHeap();
+        ArrayList<LegacyPicture> legacyPictures = new ArrayList<>(numOfPictures);
+        for (int d = 0; d < numOfDirectories; d++) {
+            for (int p = 0; p < picturesPerDirectory; p++) {
+                LegacyPicture picture = new LegacyPicture(buildPath(d, p, tagsPerPicture));
+                for (int t = 0; t < tagsPerPicture; t++) {
+                    picture.attachedTags.add(new String("@tag" + ((p + t) % 50)));
+                }
+                legacyPictures.add(picture);
+            }
+        }
+        long legacyBytes = usedHeap() - before;
+        System.out.printf("previous layout: %6.1f bytes per picture%n", (double) legacyBytes / numOfPictures);
+        legacyPictures = null;
+
+        before = usedHeap();
+        ArrayList<Picture> pictures = new ArrayList<>(numOfPictures);
+        for (int d = 0; d < numOfDirectories; d++) {
+            for (int p = 0; p < picturesPerDirectory; p++) {
+                Picture picture = new Picture(buildPath(d, p, tagsPerPicture));
+                for (int t = 0; t < tagsPerPicture; t++) {
+                    picture.addNewAttachedTag(new String("@tag" + ((p + t) % 50)));
+                }
+                pictures.add(picture);
+            }
+        }
+        long compactBytes = usedHeap() - before;
+        System.out.printf("compact layout:  %6.1f bytes per picture%n", (double) compactBytes / numOfPictures);
+        System.out.printf("saved %.0f%%%n", 100.0 * (legacyBytes - compactBytes) / legacyBytes);
+        // keep the Pictures reachable until they have been measured
+        System.out.println(pictures.size() + " pictures kept");
+    }
+
+    /**
+     * Builds a new data path String for picture p of directory d
+     */
+    private static String buildPath(int d, int p, int tagsPerPicture) {
+        StringBuilder path = new StringBuilder();
+        path.append(File.separator).append("home").append(File.separator).append("user")
+                .append(File.separator).append("Pictures").append(File.separator).append("album").append(d)
+                .append(File.separator).append("IMG_").append(p);
+        for (int t = 0; t < tagsPerPicture; t++) {
+            path.append(" @tag").append((p + t) % 50);
+        }
+        return path.append(".jpg").toString();
+    }
+
+    /**
+     * Returns the number of bytes in use on the heap after collecting garbage
+     */
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * The fields of Picture before it was made compact
+     */
+    private static class LegacyPicture {
+        private String dataPath;
+        private ArrayList<String> prevFileNames = new ArrayList<>();
+        private ArrayList<String> attachedTags = new ArrayList<>();
+        private String name;
+        private String originalName;
+
+        private LegacyPicture(String dataPath) {
+            this.dataPath = dataPath;
+            this.name = dataPath.substring(dataPath.lastIndexOf(File.separatorChar) + 1);
+            this.originalName = this.name;
+        }
+    }
+}
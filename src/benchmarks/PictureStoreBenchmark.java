@@ -0,0 +1,112 @@
+package benchmarks;
+
+import backend.LazyPictureStore;
+import backend.Picture;
+import backend.PictureStore;
+import backend.SerializableOperator;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+
+/**
+ * Compares how long it takes to save and load a library of Pictures with PictureStore and with Java
+ * serialization through SerializableOperator, and how large the files are. Also times opening the store
+ * with LazyPictureStore and reading the Pictures of a single directory, which is what a lazily reading
+ * PictureManager does before the first directory can be shown.
+ * <p>
+ * Usage: java benchmarks.PictureStoreBenchmark [numOfDirectories] [picturesPerDirectory] [tagsPerPicture] [runs]
+ * <p>
+ * The default of 1000 1000 2 builds 1M Pictures with two tags each, a tenth of which have been renamed
+ * once; run it with a heap of a few gigabytes, e.g. -Xmx4g. Each format is saved and loaded once to warm
+ * up the JIT before the timed runs. The files are deleted when the benchmark ends.
+ */
+public class PictureStoreBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        int numOfDirectories = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int picturesPerDirectory = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        int tagsPerPicture = args.length > 2 ? Integer.parseInt(args[2]) : 2;
+        int runs = args.length > 3 ? Integer.parseInt(args[3]) : 3;
+
+        ArrayList<Picture> pictures = new ArrayList<>();
+        for (int d = 0; d < numOfDirectories; d++) {
+            String directory = directoryOf(d) + File.separator;
+            for (int p = 0; p < picturesPerDirectory; p++) {
+                StringBuilder name = new StringBuilder("IMG_").append(p);
+                for (int t = 0; t < tagsPerPicture; t++) {
+                    name.append(" @tag").append((p + t) % 50);
+                }
+                Picture picture = new Picture(directory + name.append(".jpg"), "IMG_" + p + ".jpg");
+                for (int t = 0; t < tagsPerPicture; t++) {
+                    picture.addNewAttachedTag("@tag" + ((p + t) % 50));
+                }
+                if (p % 10 == 0) {
+                    picture.addNewPrevFileName("IMG_" + p + ".jpg");
+                }
+                pictures.add(picture);
+            }
+        }
+        System.out.println(pictures.size() + " pictures in " + numOfDirectories + " directories, "
+                + tagsPerPicture + " tags each");
+
+        File serFile = File.createTempFile("picture-store-benchmark", ".ser");
+        File storeFile = File.createTempFile("picture-store-benchmark", ".pics");
+        try {
+            long[] serialization = new long[2];
+            long[] store = new long[2];
+            long lazyOpen = 0;
+            for (int run = 0; run <= runs; run++) {
+                long start = System.nanoTime();
+                SerializableOperator.saveFile(serFile.getPath(), pictures);
+                long saved = System.nanoTime();
+                int serializedSize = SerializableOperator.readFile(serFile.getPath()).size();
+                long loaded = System.nanoTime();
+                if (run > 0) {
+                    serialization[0] += saved - start;
+                    serialization[1] += loaded - saved;
+                }
+
+                start = System.nanoTime();
+                PictureStore.saveFile(storeFile.getPath(), pictures);
+                saved = System.nanoTime();
+                int storedSize = PictureStore.readFile(storeFile.getPath()).size();
+                loaded = System.nanoTime();
+                if (run > 0) {
+                    store[0] += saved - start;
+                    store[1] += loaded - saved;
+                }
+
+                start = System.nanoTime();
+                LazyPictureStore lazyStore = LazyPictureStore.open(storeFile.getPath());
+                int firstDirectorySize = lazyStore.readDirectoriesUnder(directoryOf(0)).size();
+                if (run > 0) {
+                    lazyOpen += System.nanoTime() - start;
+                }
+                if (firstDirectorySize != picturesPerDirectory) {
+                    throw new IllegalStateException("Lazy read did not find the first directory");
+                }
+                if (serializedSize != pictures.size() || storedSize != pictures.size()) {
+                    throw new IllegalStateException("A format did not load every picture");
+                }
+            }
+            System.out.printf("serialization: save %7.1f ms  load %7.1f ms  %6.1f MB%n",
+                    serialization[0] / (runs * 1e6), serialization[1] / (runs * 1e6), serFile.length() / 1e6);
+            System.out.printf("picture store: save %7.1f ms  load %7.1f ms  %6.1f MB%n",
+                    store[0] / (runs * 1e6), store[1] / (runs * 1e6), storeFile.length() / 1e6);
+            System.out.printf("lazy store:    open and read one directory %7.1f ms%n", lazyOpen / (runs * 1e6));
+        } finally {
+            Files.deleteIfExists(serFile.toPath());
+            Files.deleteIfExists(storeFile.toPath());
+        }
+    }
+
+    /**
+     * Returns the path of the directory holding the Pictures of album d
+     */
+    private static String directoryOf(int d) {
+        return File.separator + "home" + File.separator + "user" + File.separator
+                + "Pictures" + File.separator + "album" + d;
+    }
+}